@@ -0,0 +1,63 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.data.ConsumptionRecordParser;
+import org.example.invoiceapp.data.CustomerUsage;
+import org.example.invoiceapp.data.SyntheticReadings;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures usage aggregation over 10k, 1M and 10M readings: the list-based `calculateMonthlyUsage`,
+ * the streaming accumulator over the mapped file, and the fork-join path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class AggregationBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int readings;
+
+    @Param({"1000"})
+    public int customers;
+
+    private Path file;
+    private List<String> lines;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = SyntheticReadings.write(Files.createTempFile("readings", ".txt"), readings, customers, SyntheticReadings.SEED);
+        lines = SyntheticReadings.lines(readings, customers, SyntheticReadings.SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Map<String, CustomerUsage> calculateMonthlyUsage() {
+        return MonthlyUsageCalculator.calculateMonthlyUsage(lines);
+    }
+
+    @Benchmark
+    public UsageStore streamingAccumulator() throws IOException {
+        MonthlyUsageCalculator.UsageAccumulator accumulator = new MonthlyUsageCalculator.UsageAccumulator();
+        ConsumptionRecordParser.parse(file, accumulator);
+        return accumulator.getStore();
+    }
+
+    @Benchmark
+    public UsageStore parallel() throws IOException {
+        return MonthlyUsageCalculator.calculateMonthlyUsageParallel(file, Runtime.getRuntime().availableProcessors(), line -> { });
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.invoiceapp.billing;
+
+import com.itextpdf.text.DocumentException;
+import org.example.invoiceapp.data.CustomerUsage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering a single bill as text and as PDF (laid out or stamped onto a form), in memory, without file or database I/O.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    private final CustomerUsage usage = new CustomerUsage(12_345, 6_789);
+    private final LocalDate periodStart = LocalDate.of(2023, 1, 1);
+    private final LocalDate periodEnd = LocalDate.of(2023, 1, 31);
+    // Reused like the render buffers of the bill generator
+    private final StringBuilder txtBuffer = new StringBuilder(1024);
+
+    @Benchmark
+    public int renderTxt() {
+        txtBuffer.setLength(0);
+        TxtBillTemplate.DEFAULT.render(txtBuffer, "123", "Gerard Kelley", usage, "0.10", "0.05", 1234.5, 339.45, 1573.95, periodStart, periodEnd);
+        return txtBuffer.length();
+    }
+
+    @Benchmark
+    public int renderPdf() throws DocumentException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        BillGeneratorTxtAndPDF.writePdfBill(out, "123", "Gerard Kelley", usage, "0.10", "0.05", 1234.5, 339.45, 1573.95, "2023", "01.02.2023", periodStart, periodEnd);
+        return out.size();
+    }
+
+    @Benchmark
+    public int renderPdfForm() throws DocumentException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        BillGeneratorTxtAndPDF.writePdfBillForm(out, "123", "Gerard Kelley", usage, "0.10", "0.05", 1234.5, 339.45, 1573.95, "2023", "01.02.2023", periodStart, periodEnd);
+        return out.size();
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.invoiceapp.data;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding consumption records, from a mapped file and from already split lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1000000"})
+    public int readings;
+
+    private Path file;
+    private List<String> lines;
+    private final ConsumptionRecord record = new ConsumptionRecord();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = SyntheticReadings.write(Files.createTempFile("readings", ".txt"), readings, 1000, SyntheticReadings.SEED);
+        lines = SyntheticReadings.lines(readings, 1000, SyntheticReadings.SEED);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public long parseFile(Blackhole blackhole) throws IOException {
+        return ConsumptionRecordParser.parse(file, parsed -> blackhole.consume(parsed.isWellFormed() ? parsed.usage1() : 0));
+    }
+
+    @Benchmark
+    public void parseLines(Blackhole blackhole) {
+        for (String line : lines) {
+            record.reset(line);
+            blackhole.consume(record.isWellFormed() ? record.usage1() : 0);
+        }
+    }
+}
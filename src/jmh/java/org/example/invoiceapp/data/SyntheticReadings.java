@@ -0,0 +1,100 @@
+package org.example.invoiceapp.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Generates reproducible consumption data for the benchmarks.
+ *
+ * <p>
+ * Readings are spread round-robin over the given number of customers, one day per round, starting on
+ * 01.01.2023. About 5% of the readings are invalid (a zero usage with a meter tamper alarm, or an unknown
+ * quality flag), like the real input files. The same seed always produces the same lines.
+ * </p>
+ */
+public class SyntheticReadings {
+
+    public static final long SEED = 20230101L;
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final LocalDate FIRST_DAY = LocalDate.of(2023, 1, 1);
+
+    /**
+     * Generates consumption lines.
+     *
+     * @param count     the number of readings
+     * @param customers the number of distinct customers
+     * @param seed      the random seed
+     * @return the lines, in the format of the consumption input file
+     */
+    public static List<String> lines(int count, int customers, long seed) {
+        List<String> lines = new ArrayList<>(count);
+        generate(count, customers, seed, lines::add);
+        return lines;
+    }
+
+    /**
+     * Writes generated consumption lines to a file; the lines are the same as those of
+     * {@link #lines(int, int, long)} with the same arguments.
+     *
+     * @param file      the file to (re)create
+     * @param count     the number of readings
+     * @param customers the number of distinct customers
+     * @param seed      the random seed
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    public static Path write(Path file, int count, int customers, long seed) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            generate(count, customers, seed, line -> {
+                try {
+                    writer.write(line);
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return file;
+    }
+
+    private static void generate(int count, int customers, long seed, Consumer<String> lineConsumer) {
+        SplittableRandom random = new SplittableRandom(seed);
+        StringBuilder line = new StringBuilder(64);
+        String date = null;
+        for (int i = 0; i < count; i++) {
+            if (i % customers == 0) {
+                date = FIRST_DAY.plusDays(i / customers).format(DATE_FORMAT);
+            }
+            line.setLength(0);
+            line.append(i % customers + 1).append(',').append(date);
+            int kind = random.nextInt(100);
+            if (kind < 3) {
+                line.append(",0,0,0,0,E,75,meter tamper alarm");
+            } else if (kind < 5) {
+                appendUsage(line, random).append(",X,,");
+            } else {
+                appendUsage(line, random).append(kind < 20 ? ",E,," : ",A,,");
+            }
+            lineConsumer.accept(line.toString());
+        }
+    }
+
+    private static StringBuilder appendUsage(StringBuilder line, SplittableRandom random) {
+        for (int slot = 0; slot < 4; slot++) {
+            line.append(',').append(1 + random.nextInt(999));
+        }
+        return line;
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.invoiceapp.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Measures `validateRecords` with the error sink writing to a scratch file and no database behind it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    // Held so that the level is not lost when the logger is garbage collected
+    private static final Logger APP_LOGGER = Logger.getLogger("org.example.invoiceapp");
+
+    @Param({"100000", "1000000"})
+    public int readings;
+
+    private List<String> lines;
+    private Path errorFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // One summary line per invocation would drown the benchmark output
+        APP_LOGGER.setLevel(java.util.logging.Level.WARNING);
+        lines = SyntheticReadings.lines(readings, 1000, SyntheticReadings.SEED);
+        errorFile = Files.createTempFile("E_records", ".txt");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(errorFile);
+    }
+
+    @Benchmark
+    public List<String> validateRecords() throws IOException {
+        return DataValidator.validateRecords(lines, new ErrorRecordSink(errorFile, null, 500, 1000, 10000));
+    }
+}
@@ -1,18 +1,42 @@
 package org.example.invoiceapp;
 
 import org.example.invoiceapp.billing.BillGeneratorTxtAndPDF;
+import org.example.invoiceapp.billing.BillRenderingExecutor;
+import org.example.invoiceapp.billing.BillRepository;
 import org.example.invoiceapp.billing.MonthlyUsageCalculator;
+import org.example.invoiceapp.billing.UsageStateStore;
+import org.example.invoiceapp.billing.UsageStore;
+import org.example.invoiceapp.data.ConsumptionRecord;
 import org.example.invoiceapp.data.CustomerUsage;
 import org.example.invoiceapp.data.DataReaderFromInputFiles;
 import org.example.invoiceapp.data.DataValidator;
+import org.example.invoiceapp.data.ErrorRecordSink;
+import org.example.invoiceapp.data.FileProcessor;
+import org.example.invoiceapp.data.ReadingSnapshot;
 import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.ConnectionPool;
 import org.example.invoiceapp.util.Initializer;
+import org.example.invoiceapp.util.InputWatcher;
+import org.example.invoiceapp.util.Metrics;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.logging.*;
+import java.util.zip.CRC32;
 
 import static org.example.invoiceapp.data.FileProcessor.processFiles;
 
@@ -30,64 +54,488 @@ import static org.example.invoiceapp.data.FileProcessor.processFiles;
 public class Main {
 
     private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
-    private static final Path INPUT_FILE = Path.of(ConfigLoader.getProperty("consumption.data.path"));
-    private static final Path LOOKUP_FILE = Path.of(ConfigLoader.getProperty("customer.lookup.path"));
+    private static final Path INPUT_DIR = Path.of(ConfigLoader.getProperty("input.data.path"));
+    private static final boolean DAEMON = Boolean.parseBoolean(ConfigLoader.getProperty("daemon.enabled"));
+    private static final String DAEMON_SETTLE_MS = ConfigLoader.getProperty("daemon.settle.ms");
+    private static final String PIPELINE_MODE = ConfigLoader.getProperty("pipeline.mode");
+    private static final String AGGREGATION_PARALLELISM = ConfigLoader.getProperty("aggregation.parallelism");
+    private static final String INGEST_CONCURRENCY = ConfigLoader.getProperty("ingest.concurrency");
+    private static final boolean INCREMENTAL = Boolean.parseBoolean(ConfigLoader.getProperty("incremental.enabled"));
+    private static final String STATE_FILE = ConfigLoader.getProperty("state.file.path");
+    private static final String SNAPSHOT_DIR = ConfigLoader.getProperty("snapshot.dir");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final DateTimeFormatter BATCH_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final Metrics.Timer RUN_TIMER = Metrics.timer("invoiceapp_run_seconds", "Duration of a complete billing run");
 
+    // Held for the duration of a billing run, so shutting down waits for the run in progress
+    private static final Object RUN_LOCK = new Object();
+    private static InputWatcher watcher;
+    private static volatile boolean shutDown;
+
+    /**
+     * Runs the application. By default the input files are billed once and the program exits. With the
+     * `--watch` argument or `daemon.enabled=true`, the program keeps running and bills every pair of input
+     * files dropped into `input.data.path`, until it is stopped. With `--reprint <snapshot> [customer ID...]`
+     * the bills of the given customers, or of all customers, are rendered again from a reading snapshot
+     * written by an earlier run, one snapshot per consumption file drop; the input files are left alone.
+     *
+     * @param args `--watch` to run as a daemon, or `--reprint` followed by a snapshot file and customer IDs
+     */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--reprint")) {
+            if (args.length < 2) {
+                LOGGER.severe("Usage: --reprint <snapshot file> [customer ID...]");
+                System.exit(1);
+            }
+            Initializer.initialize();
+            reprint(Path.of(args[1]), List.of(args).subList(2, args.length));
+            shutdown();
+            return;
+        }
+        boolean daemon = DAEMON || List.of(args).contains("--watch");
 
         // Check if required files exist
-        if (!Files.exists(INPUT_FILE) || !Files.exists(LOOKUP_FILE)) {
+        if (!daemon && FileProcessor.findInputFiles().isEmpty()) {
             LOGGER.severe("Required input files are missing. Terminating the program.");
             System.exit(1);
         }
 
         // Ensure required directories exist and load file paths
         Initializer.initialize();
+        // Queued bills and a run in progress are drained when the JVM is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(Main::shutdown, "invoiceapp-shutdown"));
+
+        if (daemon) {
+            try {
+                startWatcher().run();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to watch " + INPUT_DIR, e);
+            }
+        } else {
+            runOnce();
+        }
+        shutdown();
+    }
 
+    // Creates the watcher that runs a billing run for every complete drop of the input files
+    private static synchronized InputWatcher startWatcher() throws IOException {
+        long settleMillis = DAEMON_SETTLE_MS == null ? 2000 : Long.parseLong(DAEMON_SETTLE_MS.trim());
+        watcher = new InputWatcher(INPUT_DIR, FileProcessor::findInputFiles, settleMillis, Main::runOnce);
+        return watcher;
+    }
 
-        // Read data from files
-        List<String> records = DataReaderFromInputFiles.readConsumptionData();
+    /**
+     * Stops watching for new input, waits for a run in progress to finish, writes the queued bill rows
+     * and closes the connection pool. Runs at the end of {@link #main} and from the shutdown hook;
+     * only the first call has an effect.
+     */
+    private static synchronized void shutdown() {
+        if (shutDown) {
+            return;
+        }
+        shutDown = true;
+        if (watcher != null) {
+            watcher.close();
+        }
+        synchronized (RUN_LOCK) {
+            BillRepository.getInstance().shutdown();
+            Metrics.writePrometheusFile();
+            ConnectionPool.getInstance().shutdown();
+        }
+    }
+
+    /**
+     * Bills the input files once: the consumption files are aggregated together, a bill is rendered for
+     * every customer and each file is moved to `done/`, or to `interrupted/` if it could not be read.
+     */
+    private static void runOnce() {
+        synchronized (RUN_LOCK) {
+            if (shutDown) {
+                LOGGER.warning("Shutting down, the input files are left for the next start.");
+                return;
+            }
+            bill();
+        }
+    }
+
+    private static void bill() {
+        long runStart = System.nanoTime();
+
+        // Read, validate and aggregate the consumption data
+        int parallelism = aggregationParallelism();
+        List<Path> consumptionFiles = FileProcessor.findConsumptionFiles();
+        List<Path> failedFiles = new ArrayList<>();
+        UsageStore usageStore;
+        UsageStateStore state = null;
+        if ("list".equalsIgnoreCase(PIPELINE_MODE)) {
+            if (INCREMENTAL) {
+                LOGGER.warning("Incremental billing is not supported by the list pipeline; aggregating the whole file.");
+            }
+            usageStore = runListPipeline(consumptionFiles, failedFiles);
+        } else if (INCREMENTAL) {
+            state = runIncrementalPipeline(consumptionFiles, parallelism, failedFiles);
+            // Only the bills changed by this run's drops (or left unrendered by an earlier run) are rendered
+            usageStore = state == null ? new UsageStore() : state.getChangedTotals();
+        } else {
+            usageStore = runFilePipelines(consumptionFiles, parallelism, failedFiles);
+        }
+        BillRenderingExecutor.Summary summary = renderBills(usageStore);
+        if (state != null && summary != null) {
+            saveRendered(state, summary);
+        }
+
+        // Process files at the end
+        List<Path> billedFiles = new ArrayList<>(consumptionFiles);
+        billedFiles.removeAll(failedFiles);
+        processFiles(billedFiles, failedFiles);
+        RUN_TIMER.recordSince(runStart);
+        Metrics.writePrometheusFile();
+    }
+
+    /**
+     * Renders the bills of the customers in a reading snapshot again, without reading or moving the input
+     * files. The readings are aggregated and priced as in a billing run. Customer names come from the lookup
+     * index, which stays usable after the run has archived the lookup file.
+     *
+     * @param snapshot    the snapshot file
+     * @param customerIds the customers to bill; all customers in the snapshot if empty
+     */
+    private static void reprint(Path snapshot, List<String> customerIds) {
+        synchronized (RUN_LOCK) {
+            long[] ids = null;
+            if (!customerIds.isEmpty()) {
+                try {
+                    ids = customerIds.stream().mapToLong(Long::parseLong).toArray();
+                } catch (NumberFormatException e) {
+                    LOGGER.severe("Customer IDs must be numeric: " + customerIds);
+                    return;
+                }
+            }
+            try {
+                renderBills(MonthlyUsageCalculator.calculateMonthlyUsageFromSnapshot(snapshot, ids));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Failed to read the reading snapshot " + snapshot, e);
+            }
+        }
+    }
+
+    // Renders one bill per customer and month of the store and waits for the bill rows to be saved;
+    // returns null if rendering was interrupted
+    private static BillRenderingExecutor.Summary renderBills(UsageStore usageStore) {
         Map<String, String> customerNames = DataReaderFromInputFiles.readCustomerLookup();
 
+        // Generate one bill per customer and month, several at a time
+        BillGeneratorTxtAndPDF.startPdfBatch("bills_" + LocalDateTime.now().format(BATCH_NAME_FORMAT));
+        try (BillRenderingExecutor renderer = new BillRenderingExecutor()) {
+            for (int i = 0; i < usageStore.size(); i++) {
+                if (usageStore.readingCount(i) == 0) {
+                    continue; // All readings of this customer in this month were rejected
+                }
+                String customerId = Long.toString(usageStore.customerId(i));
+                String customerName = customerNames.get(customerId);
+
+                if (customerName != null) {
+                    int index = i;
+                    // Issue date and billing period are indexed per customer and month during aggregation
+                    int issueDay = usageStore.issueDay(i) == UsageStore.NO_DATE ? usageStore.firstReadingDay(i) : usageStore.issueDay(i);
+                    String issueDate = formatDay(issueDay);
+                    LocalDate periodStart = LocalDate.ofEpochDay(usageStore.firstReadingDay(i));
+                    LocalDate periodEnd = LocalDate.ofEpochDay(usageStore.lastReadingDay(i));
+                    // Generate text bill; usage objects are only created for customers that are actually billed,
+                    // inside the job so that totals too large for a bill fail only this customer's bill
+                    renderer.submit(customerId, () -> {
+                        CustomerUsage usage = usageStore.toCustomerUsage(index);
+                        return BillGeneratorTxtAndPDF.generateTxtBill(customerId, customerName, usage, issueDate, periodStart, periodEnd);
+                    });
+                } else {
+                    LOGGER.warning("Customer name not found for ID: " + customerId);
+                }
+            }
+            BillRenderingExecutor.Summary summary = renderer.awaitCompletion();
+            LOGGER.info(summary.toString());
+            // Bill rows are written behind rendering; wait for them before the input files are archived
+            long persisted = BillRepository.getInstance().flush();
+            if (persisted < summary.getSucceeded()) {
+                LOGGER.warning("Only " + persisted + " of " + summary.getSucceeded() + " rendered bills were saved to the database.");
+            } else {
+                LOGGER.info("Bills saved to database: " + persisted);
+            }
+            return summary;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.SEVERE, "Bill generation was interrupted", e);
+            return null;
+        } finally {
+            BillGeneratorTxtAndPDF.finishPdfBatch();
+        }
+    }
+
+    /**
+     * Runs the list-based pipeline: the whole consumption file is read into memory, validated into a
+     * second list and then aggregated. Several files are read one after the other into the same list.
+     *
+     * @param files       the consumption files
+     * @param failedFiles receives the files that could not be read
+     * @return the aggregated usage per customer
+     */
+    private static UsageStore runListPipeline(List<Path> files, List<Path> failedFiles) {
+        List<String> records = new ArrayList<>();
+        for (Path file : files) {
+            int mark = records.size();
+            if (DataReaderFromInputFiles.streamConsumptionData(file, records::add) < 0) {
+                records.subList(mark, records.size()).clear();
+                failedFiles.add(file);
+            }
+        }
+        MonthlyUsageCalculator.UsageAccumulator accumulator = new MonthlyUsageCalculator.UsageAccumulator();
+        ConsumptionRecord view = new ConsumptionRecord();
+        for (String record : records) {
+            view.reset(record);
+            accumulator.recordIssueDay(view);
+        }
+
         // Validate and filter records
         List<String> validRecords = DataValidator.validateRecords(records);
-        Map<String, CustomerUsage> usageMap = MonthlyUsageCalculator.calculateMonthlyUsage(validRecords);
-
-        // Generate bills for customers
-        for (Map.Entry<String, CustomerUsage> entry : usageMap.entrySet()) {
-            String customerId = entry.getKey();
-            CustomerUsage usage = entry.getValue();
-            String customerName = customerNames.get(customerId);
-
-            if (customerName != null) {
-                // Extract issue date from records
-                String issueDate = extractIssueDate(records, customerId);
-                // Generate text bill
-                BillGeneratorTxtAndPDF.generateTxtBill(customerId, customerName, usage, issueDate);
-            } else {
-                LOGGER.warning("Customer name not found for ID: " + customerId);
+        for (String record : validRecords) {
+            accumulator.accept(record);
+        }
+        return accumulator.getStore();
+    }
+
+    /**
+     * Runs the incremental pipeline: every consumption file is a drop of readings, billed together with
+     * the drops of earlier runs whose totals are kept in `state.file.path` (see {@link UsageStateStore}).
+     * A new drop is aggregated and added to the totals, a drop that was billed before and has grown is
+     * only aggregated from where the previous run stopped, and a drop that comes back changed replaces
+     * its earlier totals. The files are aggregated one after another, in billing order. After a tariff
+     * change the stored totals are priced again with the new tariff.
+     *
+     * @param files       the consumption files, in billing order
+     * @param parallelism the number of worker threads per file
+     * @param failedFiles receives the files that could not be read; they are left out of the state
+     * @return the usage state with the running totals per customer and month, or null if nothing can be billed
+     */
+    private static UsageStateStore runIncrementalPipeline(List<Path> files, int parallelism, List<Path> failedFiles) {
+        UsageStateStore state = UsageStateStore.load(Path.of(STATE_FILE));
+        if (state.needsFullRecompute()) {
+            // The stored totals carry the old prices and cannot be priced again; bill nothing rather than too little
+            LOGGER.severe("The usage state cannot be priced with the changed tariff; none of the consumption files are billed.");
+            failedFiles.addAll(files);
+            return null;
+        }
+        List<Path> aggregated = new ArrayList<>();
+        try (ErrorRecordSink errorSink = DataValidator.openErrorSink()) {
+            for (Path file : files) {
+                try {
+                    UsageStateStore.Plan plan = state.plan(file);
+                    ErrorRecordSink.Buffer errors = new ErrorRecordSink.Buffer();
+                    UsageStore delta = aggregateConsumption(file, parallelism, plan.getFrom(), plan.getTo(), true, errors);
+                    errorSink.addAll(errors);
+                    state.apply(plan, delta);
+                    aggregated.add(file);
+                } catch (IOException | UncheckedIOException | DataValidator.ValidationException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to aggregate new records of " + file.getFileName() + "; its usage state is left unchanged", e);
+                    failedFiles.add(file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to write error records", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.SEVERE, "Interrupted while writing error records", e);
+        }
+        for (Path file : files) {
+            if (!aggregated.contains(file) && !failedFiles.contains(file)) {
+                failedFiles.add(file);
             }
         }
 
-        // Process files at the end
-        processFiles();
+        // Saved before rendering: the changed bills stay recorded until they are rendered, so a run that
+        // stops while rendering leaves them to the next run
+        try {
+            state.save();
+            LOGGER.info("Usage state saved with " + state.getDropCount() + " drops.");
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to save the usage state; the drops of this run are not billed", e);
+            failedFiles.addAll(aggregated);
+            return null;
+        }
+        return state;
+    }
+
+    // Records the rendered bills in the usage state; bills that failed are rendered again by the next run
+    private static void saveRendered(UsageStateStore state, BillRenderingExecutor.Summary summary) {
+        state.markRendered(summary.getFailedCustomerIds());
+        try {
+            state.save();
+        } catch (IOException e) {
+            // Harmless: the next run renders these bills again and replaces their rows
+            LOGGER.log(Level.WARNING, "Failed to record the rendered bills in the usage state", e);
+        }
     }
 
     /**
-     * Extracts the issue date for a given customer from the consumption records.
+     * Aggregates every consumption file into one store. Up to `ingest.concurrency` files are read at the
+     * same time, each with the streaming or the parallel pipeline, and their totals are merged in file
+     * order, so issue dates are the same as if the files had been concatenated. The invalid records of each
+     * file are buffered and written to the error sink in file order once the file has been read, so a file
+     * that cannot be read is left out of both the totals and the error records.
      *
-     * @param records    the list of consumption records
-     * @param customerId the ID of the customer whose issue date is to be retrieved
-     * @return the issue date in `dd.mm.yyyy` format if found, or a default date of `01.01.1970`
-     *         if the date is not found in the records
+     * @param files       the consumption files, in billing order
+     * @param parallelism the number of worker threads per file
+     * @param failedFiles receives the files that could not be read
+     * @return the aggregated usage per customer
      */
-    private static String extractIssueDate(List<String> records, String customerId) {
-        for (String record : records) {
-            String[] fields = record.split(",");
-            if (fields[0].equals(customerId)) {
-                return fields[1]; // Assuming the date is the second field in the record
+    private static UsageStore runFilePipelines(List<Path> files, int parallelism, List<Path> failedFiles) {
+        UsageStore usageStore = new UsageStore();
+        if (files.isEmpty()) {
+            return usageStore;
+        }
+        ExecutorService ingestPool = Executors.newFixedThreadPool(Math.min(ingestConcurrency(), files.size()));
+        try (ErrorRecordSink errorSink = DataValidator.openErrorSink()) {
+            List<Future<UsageStore>> results = new ArrayList<>(files.size());
+            List<ErrorRecordSink.Buffer> errors = new ArrayList<>(files.size());
+            for (Path file : files) {
+                ErrorRecordSink.Buffer fileErrors = new ErrorRecordSink.Buffer();
+                errors.add(fileErrors);
+                results.add(ingestPool.submit(() -> aggregateConsumption(file, parallelism, 0, Long.MAX_VALUE, false, fileErrors)));
+            }
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    usageStore.mergeFrom(results.get(i).get());
+                    errorSink.addAll(errors.get(i));
+                    errors.set(i, null);
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to validate records of " + files.get(i).getFileName(), e.getCause());
+                    failedFiles.add(files.get(i));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    LOGGER.log(Level.SEVERE, "Interrupted while aggregating consumption files", e);
+                    failedFiles.addAll(files.subList(i, files.size()));
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to write error records", e);
+        } finally {
+            ingestPool.shutdownNow();
+        }
+        return usageStore;
+    }
+
+    // Aggregates the byte range [from, to) of a consumption file with the streaming or the parallel pipeline;
+    // the usage state needs the daily usage to price its totals again when the tariff changes
+    private static UsageStore aggregateConsumption(Path file, int parallelism, long from, long to, boolean keepDailyUsage,
+                                                   ErrorRecordSink.Buffer errors) throws IOException {
+        return parallelism > 1 ? runParallelPipeline(file, parallelism, from, to, keepDailyUsage, errors)
+                : runStreamingPipeline(file, from, to, keepDailyUsage, errors);
+    }
+
+    /**
+     * Runs the streaming pipeline: records flow from the reader through the validator into the
+     * aggregator one at a time, so memory use is bounded by the number of customers rather than
+     * the number of readings. When `snapshot.dir` is set, the valid readings and the issue date of every
+     * customer's month are also written to the reading snapshot of the drop (see {@link #snapshotFile(Path)});
+     * readings of a later part of the file are appended to it.
+     *
+     * @param file           the consumption file
+     * @param from           the first byte of the consumption file to aggregate
+     * @param to             the byte just past the last one to aggregate
+     * @param keepDailyUsage whether the store also keeps the unpriced usage per customer and day
+     * @param errors         receives the invalid records
+     * @return the aggregated usage per customer
+     * @throws IOException if the consumption file cannot be read
+     */
+    private static UsageStore runStreamingPipeline(Path file, long from, long to, boolean keepDailyUsage, ErrorRecordSink.Buffer errors) throws IOException {
+        MonthlyUsageCalculator.UsageAccumulator accumulator = new MonthlyUsageCalculator.UsageAccumulator(keepDailyUsage);
+        ReadingSnapshot.Writer snapshot = openSnapshot(file, from);
+        Consumer<ConsumptionRecord> validRecords = snapshot == null ? accumulator : accumulator.andThen(snapshot);
+        try (snapshot; DataValidator.ValidationStream validator = DataValidator.openBufferedValidationStream(validRecords, errors)) {
+            DataReaderFromInputFiles.streamConsumptionRecords(file, from, to, record -> {
+                if (accumulator.recordIssueDay(record) && snapshot != null) {
+                    // The first reading of a month dates the bill even if it is rejected, so the snapshot keeps its date
+                    snapshot.addIssueDay(record.customerId(), (int) record.epochDay());
+                }
+                validator.accept(record);
+            });
+        }
+        if (snapshot != null) {
+            LOGGER.info("Wrote " + snapshot.getReadingCount() + " readings to the snapshot of " + file.getFileName());
+        }
+        return accumulator.getStore();
+    }
+
+    // Opens the reading snapshot of a consumption file if `snapshot.dir` is set; appends unless the file is read from its start
+    private static ReadingSnapshot.Writer openSnapshot(Path file, long from) throws IOException {
+        if (SNAPSHOT_DIR == null || SNAPSHOT_DIR.isBlank()) {
+            return null;
+        }
+        Path snapshot = snapshotFile(file);
+        Files.createDirectories(snapshot.getParent());
+        LOGGER.info("Writing the readings of " + file.getFileName() + " to the snapshot " + snapshot);
+        return ReadingSnapshot.create(snapshot, from > 0);
+    }
+
+    /**
+     * Returns the snapshot file of a drop. Drops are usually delivered under the same file name, so the
+     * snapshot is named after the file and the CRC-32 checksum of its first line, e.g.
+     * `input.txt.1c291ca3.snapshot`: every drop gets its own snapshot, while a drop that grows keeps its
+     * snapshot and a drop delivered again with the same first line replaces it.
+     *
+     * @param file the consumption file
+     * @return the snapshot file in `snapshot.dir`
+     * @throws IOException if the consumption file cannot be read
+     */
+    private static Path snapshotFile(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] head = in.readNBytes(4096);
+            int length = 0;
+            while (length < head.length && head[length] != '\n') {
+                length++;
             }
+            crc.update(head, 0, length);
         }
-        return "01.01.1970"; // Default date if no match is found
+        return Path.of(SNAPSHOT_DIR.trim()).resolve(file.getFileName() + "." + String.format("%08x", crc.getValue()) + ".snapshot");
+    }
+
+    /**
+     * Runs the parallel pipeline: the consumption file is validated and aggregated in line-aligned
+     * chunks on a fork-join pool. Rejected records are handed to the validator afterwards, in file
+     * order, so that the error file and table are written exactly as in the streaming pipeline.
+     *
+     * @param file           the consumption file
+     * @param parallelism    the number of worker threads
+     * @param from           the first byte of the consumption file to aggregate
+     * @param to             the byte just past the last one to aggregate
+     * @param keepDailyUsage whether the store also keeps the unpriced usage per customer and day
+     * @param errors         receives the invalid records
+     * @return the aggregated usage per customer
+     * @throws IOException if the consumption file cannot be read
+     */
+    private static UsageStore runParallelPipeline(Path file, int parallelism, long from, long to, boolean keepDailyUsage,
+                                                  ErrorRecordSink.Buffer errors) throws IOException {
+        if (SNAPSHOT_DIR != null && !SNAPSHOT_DIR.isBlank()) {
+            LOGGER.warning("Reading snapshots are only written by the sequential pipeline (aggregation.parallelism=1); no snapshot of " + file.getFileName());
+        }
+        try (DataValidator.ValidationStream validator = DataValidator.openBufferedValidationStream(record -> { }, errors)) {
+            return MonthlyUsageCalculator.calculateMonthlyUsageParallel(file, from, to, parallelism, keepDailyUsage, validator::accept);
+        }
+    }
+
+    // Formats an epoch day in the `dd.MM.yyyy` format of the input file
+    private static String formatDay(int epochDay) {
+        return LocalDate.ofEpochDay(epochDay).format(DATE_FORMAT);
+    }
+
+    // Reads `ingest.concurrency`, the number of consumption files read at the same time
+    private static int ingestConcurrency() {
+        return INGEST_CONCURRENCY == null ? 1 : Math.max(1, Integer.parseInt(INGEST_CONCURRENCY.trim()));
+    }
+
+    // Reads `aggregation.parallelism`; 0 means one thread per available processor
+    private static int aggregationParallelism() {
+        int parallelism = AGGREGATION_PARALLELISM == null ? 1 : Integer.parseInt(AGGREGATION_PARALLELISM.trim());
+        return parallelism <= 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
     }
 }
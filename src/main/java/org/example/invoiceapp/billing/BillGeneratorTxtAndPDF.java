@@ -4,10 +4,16 @@ import com.itextpdf.text.*;
 import com.itextpdf.text.pdf.*;
 import org.example.invoiceapp.data.CustomerUsage;
 import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.DateCodec;
+import org.example.invoiceapp.util.Metrics;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.sql.*;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.*;
 
 /**
@@ -26,14 +32,25 @@ public class BillGeneratorTxtAndPDF {
     // Static configuration properties loaded via ConfigLoader
     private static final String OUTPUT_DIR = ConfigLoader.getProperty("txt.output.path");
     private static final String PDF_OUTPUT_DIR = ConfigLoader.getProperty("pdf.output.path");
-    private static final String DB_URL = ConfigLoader.getProperty("db.url");
-    private static final String DB_USER = ConfigLoader.getProperty("db.username");
-    private static final String DB_PASSWORD = ConfigLoader.getProperty("db.password");
     private static final Logger LOGGER = Logger.getLogger(BillGeneratorTxtAndPDF.class.getName());
-    private static final String DAY_PRICE = ConfigLoader.getProperty("day.price");
-    private static final String NIGHT_PRICE = ConfigLoader.getProperty("night.price");
+    private static final TxtBillTemplate TXT_TEMPLATE = loadTxtTemplate();
+    private static final Queue<StringBuilder> TXT_BUFFERS = new ConcurrentLinkedQueue<>();
+    // "combined" appends the PDF bills of a batch to a few large documents, "files" writes one file per bill
+    private static final boolean PDF_COMBINED = "combined".equalsIgnoreCase(String.valueOf(ConfigLoader.getProperty("pdf.output.mode")).trim());
+    private static final String PDF_COMBINED_MAX_PAGES = ConfigLoader.getProperty("pdf.combined.max.pages");
+    private static volatile CombinedPdfWriter combinedPdf;
     private static final String PDF_FONT = ConfigLoader.getProperty("pdf.font");
     private static final String PDF_LOGO = ConfigLoader.getProperty("pdf.logo");
+    // "form" stamps the values of each bill onto a base page laid out once, "flow" lays out every bill
+    private static final boolean PDF_FORM_MODE = "form".equalsIgnoreCase(String.valueOf(ConfigLoader.getProperty("pdf.render.mode")).trim());
+    private static final Metrics.Timer TXT_TIMER = Metrics.timer("invoiceapp_generate_txt_bill_seconds", "Time to render and write one text bill");
+    private static final Metrics.Timer PDF_TIMER = Metrics.timer("invoiceapp_generate_pdf_bill_seconds", "Time to render and write one PDF bill");
+    private static final Metrics.Counter TXT_FAILURES = Metrics.counter("invoiceapp_txt_bill_failures_total", "Text bills that could not be written");
+    private static final Metrics.Counter PDF_FAILURES = Metrics.counter("invoiceapp_pdf_bill_failures_total", "PDF bills that could not be written");
+    // Part of every bill cache key; increase it whenever the text or PDF layout code changes
+    private static final int BILL_LAYOUT_VERSION = 1;
+    private static final BillOutputCache BILL_CACHE = openBillCache();
+    private static final String RENDER_FINGERPRINT = BILL_CACHE == null ? null : renderFingerprint();
 
     /**
      * Generates a plain text bill for the given customer and saves it to a file.
@@ -43,52 +60,143 @@ public class BillGeneratorTxtAndPDF {
      * @param customerName  the name of the customer
      * @param usage         the electricity usage details (daytime and nighttime)
      * @param issueDate     the date the bill is issued
+     * @return true if the text bill, the PDF bill and the database row were all produced
      */
-    public static void generateTxtBill(String customerId, String customerName, CustomerUsage usage, String issueDate) {
+    public static boolean generateTxtBill(String customerId, String customerName, CustomerUsage usage, String issueDate) {
+        return generateTxtBill(customerId, customerName, usage, issueDate, null, null);
+    }
+
+    /**
+     * Generates a plain text bill for the given customer and billing period and saves it to a file.
+     * Also triggers PDF generation and saving the bill to a database. The file is named after the month
+     * of the period, e.g. `123_Gerard_Kelley_2019-01_bill.txt`, so a customer gets one bill per month;
+     * without a period it is named after the current year.
+     *
+     * @param customerId    the unique ID of the customer
+     * @param customerName  the name of the customer
+     * @param usage         the electricity usage details (daytime and nighttime)
+     * @param issueDate     the date the bill is issued
+     * @param periodStart   the date of the first reading covered by the bill, or null if unknown
+     * @param periodEnd     the date of the last reading covered by the bill, or null if unknown
+     * @return true if the text bill, the PDF bill and the database row were all produced
+     */
+    public static boolean generateTxtBill(String customerId, String customerName, CustomerUsage usage, String issueDate,
+                                       LocalDate periodStart, LocalDate periodEnd) {
         // Sanitize customer name for file naming
-        String year = "2023"; // This is the default static year during file generation
+        String year = Integer.toString(periodStart != null ? periodStart.getYear() : LocalDate.now().getYear());
+        String period = periodStart != null ? DateCodec.format(DateCodec.monthIndex(periodStart.getYear(), periodStart.getMonthValue())) : year;
         String sanitizedCustomerName = customerName.replaceAll("[^a-zA-Z0-9]", "_");
-        // You should change the date here because it will be always the same
-        String outputFileName = OUTPUT_DIR + customerId + "_" + sanitizedCustomerName + "_" + year + "_bill.txt";
-        // Calculate electricity costs
-        double daytimeCost = usage.getDaytimeUsage() * Double.parseDouble(DAY_PRICE);
-        double nighttimeCost = usage.getNighttimeUsage() * Double.parseDouble(NIGHT_PRICE);
-        double totalCost = daytimeCost + nighttimeCost;
-
-        // Generate and save the text bill
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outputFileName))) {
-            writer.write("=========================================");
-            writer.newLine();
-            writer.write("              ФАКТУРА                   ");
-            writer.newLine();
-            writer.write("=========================================");
-            writer.newLine();
-            writer.write(String.format("%-20s: %s", "Име на клиент", customerName));
-            writer.newLine();
-            writer.write(String.format("%-20s: %s", "Клиентски номер", customerId));
-            writer.newLine();
-            writer.write("=========================================");
-            writer.newLine();
-            writer.write(String.format("%-20s: %d kWh @ 0.15 лв./kWh = %.2f лв.", "Дневна консумация", usage.getDaytimeUsage(), daytimeCost));
-            writer.newLine();
-            writer.write(String.format("%-20s: %d kWh @ 0.05 лв./kWh = %.2f лв.", "Нощна консумация", usage.getNighttimeUsage(), nighttimeCost));
-            writer.newLine();
-            writer.write("=========================================");
-            writer.newLine();
-            writer.write(String.format("%-20s: %d kWh", "Общо потребление", (usage.getDaytimeUsage() + usage.getNighttimeUsage())));
-            writer.newLine();
-            writer.write(String.format("%-20s: %.2f лв.", "Обща сума", totalCost));
-            writer.newLine();
-            writer.write("=========================================");
-            writer.newLine();
-            LOGGER.info("\u001B[32mThe invoice was generated successfully " + outputFileName + "\u001B[0m");
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "The invoice was not generated ", e);
+        String outputFileName = OUTPUT_DIR + customerId + "_" + sanitizedCustomerName + "_" + period + "_bill.txt";
+        // Calculate electricity costs: usage aggregated from readings is priced already, totals are priced
+        // at the rates in effect at the end of the billing period
+        TariffEngine tariff = TariffEngine.getInstance();
+        int plan = tariff.planOf(customerId);
+        long rateDay = (periodEnd != null ? periodEnd : LocalDate.now()).toEpochDay();
+        long dayRate = tariff.rate(plan, TariffEngine.DAY, rateDay);
+        long nightRate = tariff.rate(plan, TariffEngine.NIGHT, rateDay);
+        long daytimeCostTicks = usage.isPriced() ? usage.getDaytimeCost() : usage.getDaytimeUsage() * dayRate;
+        long nighttimeCostTicks = usage.isPriced() ? usage.getNighttimeCost() : usage.getNighttimeUsage() * nightRate;
+        String dayPrice = TariffEngine.formatRate(daytimeCostTicks, usage.getDaytimeUsage(), dayRate);
+        String nightPrice = TariffEngine.formatRate(nighttimeCostTicks, usage.getNighttimeUsage(), nightRate);
+        double daytimeCost = TariffEngine.toLev(daytimeCostTicks);
+        double nighttimeCost = TariffEngine.toLev(nighttimeCostTicks);
+        double totalCost = TariffEngine.toLev(daytimeCostTicks + nighttimeCostTicks);
+        // The bill files only depend on these values and the rendering configuration
+        String cacheKey = BILL_CACHE == null ? null : BillOutputCache.key(RENDER_FINGERPRINT, customerId, customerName,
+                Long.toString(usage.getDaytimeUsage()), Long.toString(usage.getNighttimeUsage()), Long.toString(daytimeCostTicks),
+                Long.toString(nighttimeCostTicks), dayPrice, nightPrice, year, issueDate, String.valueOf(periodStart), String.valueOf(periodEnd));
+
+        // Generate and save the text bill, unless an identical one is cached
+        boolean txtGenerated = false;
+        long start = System.nanoTime();
+        Path txtFile = Paths.get(outputFileName);
+        if (cacheKey != null && BILL_CACHE.restore(cacheKey, "txt", txtFile)) {
+            txtGenerated = true;
+            LOGGER.fine("Unchanged invoice taken from the bill cache " + outputFileName);
+        } else {
+            StringBuilder buffer = borrowTxtBuffer();
+            try {
+                TXT_TEMPLATE.render(buffer, customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, periodStart, periodEnd);
+                Files.writeString(txtFile, buffer, StandardCharsets.UTF_8);
+                txtGenerated = true;
+                LOGGER.info("\u001B[32mThe invoice was generated successfully " + outputFileName + "\u001B[0m");
+                if (cacheKey != null) {
+                    BILL_CACHE.store(cacheKey, "txt", txtFile);
+                }
+            } catch (IOException e) {
+                TXT_FAILURES.increment();
+                LOGGER.log(Level.SEVERE, "The invoice was not generated ", e);
+            } finally {
+                returnTxtBuffer(buffer);
+            }
         }
+        TXT_TIMER.recordSince(start);
 
         // Generate PDF bill and save to database
-        generatePdfBill(customerId, sanitizedCustomerName, customerName, usage, daytimeCost, nighttimeCost, totalCost, year, issueDate);
-        saveBillToDatabase(customerId, customerName, usage);
+        boolean pdfGenerated = generatePdfBill(customerId, sanitizedCustomerName, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd, cacheKey);
+        boolean saved = saveBillToDatabase(customerId, customerName, period, usage, daytimeCost, nighttimeCost);
+        return txtGenerated && pdfGenerated && saved;
+    }
+
+    // Render buffers are reused across bills; there are at most as many as bills rendered at the same time
+    private static StringBuilder borrowTxtBuffer() {
+        StringBuilder buffer = TXT_BUFFERS.poll();
+        return buffer != null ? buffer : new StringBuilder(1024);
+    }
+
+    private static void returnTxtBuffer(StringBuilder buffer) {
+        buffer.setLength(0);
+        TXT_BUFFERS.offer(buffer);
+    }
+
+    // Uses `txt.bill.template` if it is set and can be compiled, otherwise the built-in layout
+    private static TxtBillTemplate loadTxtTemplate() {
+        String templateFile = ConfigLoader.getProperty("txt.bill.template");
+        if (templateFile == null || templateFile.isBlank()) {
+            return TxtBillTemplate.DEFAULT;
+        }
+        try {
+            TxtBillTemplate template = TxtBillTemplate.load(Paths.get(templateFile.trim()));
+            LOGGER.info("Text bill template loaded from " + templateFile);
+            return template;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "Failed to load text bill template " + templateFile + ", using the built-in layout", e);
+            return TxtBillTemplate.DEFAULT;
+        }
+    }
+
+    // Uses `bill.cache.dir` if it is set and can be created, otherwise bills are always rendered
+    private static BillOutputCache openBillCache() {
+        String directory = ConfigLoader.getProperty("bill.cache.dir");
+        if (directory == null || directory.isBlank()) {
+            return null;
+        }
+        try {
+            return new BillOutputCache(Paths.get(directory.trim()));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to open the bill cache " + directory + ", rendering every bill", e);
+            return null;
+        }
+    }
+
+    // Everything besides the bill values that the content of the bill files depends on
+    private static String renderFingerprint() {
+        String templateFile = ConfigLoader.getProperty("txt.bill.template");
+        return "layout " + BILL_LAYOUT_VERSION
+                + ", template " + (templateFile == null || templateFile.isBlank() ? "builtin" : BillOutputCache.describeFile(templateFile.trim()))
+                + ", pdf " + (PDF_FORM_MODE ? "form" : "flow")
+                + ", font " + BillOutputCache.describeFile(PDF_FONT)
+                + ", logo " + BillOutputCache.describeFile(PDF_LOGO)
+                + ", locale " + Locale.getDefault(Locale.Category.FORMAT);
+    }
+
+    /**
+     * Returns the cache of rendered bill files configured by `bill.cache.dir`.
+     *
+     * @return the cache, or null if bills are always rendered
+     */
+    public static BillOutputCache getBillCache() {
+        return BILL_CACHE;
     }
 
     /**
@@ -98,107 +206,279 @@ public class BillGeneratorTxtAndPDF {
      * @param sanitizedCustomerName a sanitized version of the customer's name (for file naming)
      * @param customerName          the name of the customer
      * @param usage                 electricity usage details
+     * @param dayPrice              rate shown for the daytime usage, in lev per kWh
+     * @param nightPrice            rate shown for the nighttime usage, in lev per kWh
      * @param daytimeCost           cost of daytime electricity usage
      * @param nighttimeCost         cost of nighttime electricity usage
      * @param totalCost             total electricity cost
      * @param year                  year of the bill
      * @param issueDate             date the bill is issued
+     * @param periodStart           first day of the billing period, or null if unknown
+     * @param periodEnd             last day of the billing period, or null if unknown
+     * @param cacheKey              the key of the bill in the bill cache, or null if it is not cached;
+     *                              bills added to a combined PDF are always rendered
+     * @return true if the PDF bill was generated
      */
-    private static void generatePdfBill(String customerId, String sanitizedCustomerName, String customerName, CustomerUsage usage, double daytimeCost, double nighttimeCost, double totalCost, String year, String issueDate) {
-        String formattedDate = issueDate.replace(".", "-");
-        String outputFileName = PDF_OUTPUT_DIR + customerId + "_" + sanitizedCustomerName + "_" + formattedDate + "_bill.pdf";
-        Document document = new Document();
+    private static boolean generatePdfBill(String customerId, String sanitizedCustomerName, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost, double nighttimeCost, double totalCost, String year, String issueDate,
+                                        LocalDate periodStart, LocalDate periodEnd, String cacheKey) {
+        long start = System.nanoTime();
+        CombinedPdfWriter combined = combinedPdf;
+        boolean generated = combined != null
+                ? appendPdfBill(combined, customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd)
+                : writePdfBillFile(customerId, sanitizedCustomerName, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd, cacheKey);
+        if (!generated) {
+            PDF_FAILURES.increment();
+        }
+        PDF_TIMER.recordSince(start);
+        return generated;
+    }
 
+    private static boolean appendPdfBill(CombinedPdfWriter combined, String customerId, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost, double nighttimeCost,
+                                         double totalCost, String year, String issueDate, LocalDate periodStart, LocalDate periodEnd) {
         try {
-            Files.createDirectories(Paths.get(PDF_OUTPUT_DIR));
-            BaseFont baseFont = BaseFont.createFont(PDF_FONT, BaseFont.IDENTITY_H, BaseFont.EMBEDDED);
-            Font titleFont = new Font(baseFont, 18, Font.BOLD);
-            Font sectionTitleFont = new Font(baseFont, 14, Font.BOLD);
-            Font regularFont = new Font(baseFont, 12);
+            combined.append(customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd);
+            return true;
+        } catch (DocumentException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to add the PDF bill of customer " + customerId + " to the combined PDF", e);
+            return false;
+        }
+    }
 
-            PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(outputFileName));
-            writer.setPageEvent(new FooterHandler(sectionTitleFont, regularFont));
-            document.open();
+    /**
+     * Starts a batch of bills. When `pdf.output.mode` is "combined", every PDF bill generated until
+     * {@link #finishPdfBatch()} is appended to the documents of a {@link CombinedPdfWriter} named after
+     * the batch; otherwise this does nothing and each bill is written to its own file.
+     *
+     * @param batchName the name the combined documents and their page index start with
+     */
+    public static synchronized void startPdfBatch(String batchName) {
+        if (!PDF_COMBINED || combinedPdf != null) {
+            return;
+        }
+        try {
+            int maxPages = PDF_COMBINED_MAX_PAGES == null || PDF_COMBINED_MAX_PAGES.isBlank() ? 0 : Integer.parseInt(PDF_COMBINED_MAX_PAGES.trim());
+            PdfBillForm form = PDF_FORM_MODE ? PdfBillForm.getInstance(PDF_FONT, PDF_LOGO) : null;
+            combinedPdf = new CombinedPdfWriter(Paths.get(PDF_OUTPUT_DIR), batchName, maxPages, PDF_FONT, PDF_LOGO, form);
+        } catch (DocumentException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to start the combined PDF, writing one PDF file per bill", e);
+        }
+    }
 
-            // Add header with logo and title
-            Image logo = Image.getInstance(PDF_LOGO);
-            logo.scaleToFit(100, 100);
-            logo.setAlignment(Element.ALIGN_CENTER);
-            document.add(logo);
-
-            Paragraph title = new Paragraph("Фактура за електроенергия", titleFont);
-            title.setAlignment(Element.ALIGN_CENTER);
-            document.add(title);
-
-            document.add(new Paragraph(" ")); // Empty line for spacing
-
-            // Issue date, invoice number, and client details in the same row
-            PdfPTable infoTable = new PdfPTable(2);
-            infoTable.setWidthPercentage(100);
-            infoTable.setSpacingBefore(10f);
-            infoTable.setSpacingAfter(10f);
-
-            PdfPCell cell1 = new PdfPCell(new Phrase("Дата на издаване: " + issueDate, regularFont));
-            cell1.setBorder(Rectangle.NO_BORDER);
-            infoTable.addCell(cell1);
-
-            PdfPCell cell2 = new PdfPCell(new Phrase("Номер на фактура: INV-379208", regularFont));
-            cell2.setBorder(Rectangle.NO_BORDER);
-            infoTable.addCell(cell2);
-
-            PdfPCell cell3 = new PdfPCell(new Phrase("Клиент:", sectionTitleFont));
-            cell3.setBorder(Rectangle.NO_BORDER);
-            infoTable.addCell(cell3);
-
-            PdfPCell cell4 = new PdfPCell(new Phrase("Име: " + customerName, regularFont));
-            cell4.setBorder(Rectangle.NO_BORDER);
-            infoTable.addCell(cell4);
-
-            PdfPCell cell5 = new PdfPCell(new Phrase("Клиентски номер: " + customerId, regularFont));
-            cell5.setBorder(Rectangle.NO_BORDER);
-            infoTable.addCell(cell5);
-
-            document.add(infoTable);
-
-            document.add(new Paragraph(" ")); // Empty line for spacing
-
-            // Consumption data
-            document.add(new Paragraph("Данни за потребление:", sectionTitleFont));
-            PdfPTable consumptionTable = new PdfPTable(4);
-            consumptionTable.setWidthPercentage(100);
-            consumptionTable.setSpacingBefore(10f);
-            consumptionTable.setSpacingAfter(10f);
-
-            // Add table headers
-            addTableHeader(consumptionTable, "Година", regularFont);
-            addTableHeader(consumptionTable, "Дневна консумация", regularFont);
-            addTableHeader(consumptionTable, "Нощна консумация", regularFont);
-            addTableHeader(consumptionTable, "Общо потребление", regularFont);
-
-            // Add table data
-            addTableCell(consumptionTable, year, regularFont);
-            addTableCell(consumptionTable, usage.getDaytimeUsage() + " kWh", regularFont);
-            addTableCell(consumptionTable, usage.getNighttimeUsage() + " kWh", regularFont);
-            addTableCell(consumptionTable, (usage.getDaytimeUsage() + usage.getNighttimeUsage()) + " kWh", regularFont);
-
-            document.add(consumptionTable);
-            document.add(new Paragraph(" ")); // Empty line for spacing
-
-            // Cost calculation
-            document.add(new Paragraph("Изчисление на разходите:", sectionTitleFont));
-            document.add(new Paragraph("Дневна консумация: " + usage.getDaytimeUsage() + " kWh × 0,15 лв./kWh = " + String.format("%.2f", daytimeCost) + " лв.", regularFont));
-            document.add(new Paragraph("Нощна консумация: " + usage.getNighttimeUsage() + " kWh × 0,05 лв./kWh = " + String.format("%.2f", nighttimeCost) + " лв.", regularFont));
-            document.add(new Paragraph("Обща сума за плащане: " + String.format("%.2f", totalCost) + " лв.", new Font(baseFont, 12, Font.BOLD)));
-            document.add(new Paragraph(" ")); // Empty line for spacing
+    /**
+     * Completes the combined documents of the current batch, if there are any. Call once every bill of
+     * the batch has been generated.
+     */
+    public static synchronized void finishPdfBatch() {
+        CombinedPdfWriter combined = combinedPdf;
+        if (combined == null) {
+            return;
+        }
+        combinedPdf = null;
+        try {
+            combined.close();
+            LOGGER.info("Combined PDF bills written to " + combined.getFiles() + ", page index " + combined.getIndexFile());
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to complete the combined PDF", e);
+        }
+    }
 
+    private static boolean writePdfBillFile(String customerId, String sanitizedCustomerName, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost, double nighttimeCost, double totalCost, String year, String issueDate,
+                                            LocalDate periodStart, LocalDate periodEnd, String cacheKey) {
+        String formattedDate = issueDate.replace(".", "-");
+        String outputFileName = PDF_OUTPUT_DIR + customerId + "_" + sanitizedCustomerName + "_" + formattedDate + "_bill.pdf";
+        Path pdfFile = Paths.get(outputFileName);
+        try {
+            Files.createDirectories(Paths.get(PDF_OUTPUT_DIR));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to generate PDF bill", e);
+            return false;
+        }
+        if (cacheKey != null && BILL_CACHE.restore(cacheKey, "pdf", pdfFile)) {
+            LOGGER.fine("Unchanged PDF bill taken from the bill cache " + outputFileName);
+            return true;
+        }
+        try (OutputStream out = new FileOutputStream(outputFileName)) {
+            if (PDF_FORM_MODE) {
+                writePdfBillForm(out, customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd);
+            } else {
+                writePdfBill(out, customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd);
+            }
             LOGGER.info("\u001B[37mPDF bill generated: " + outputFileName + "\u001B[0m");
         } catch (DocumentException | IOException e) {
             LOGGER.log(Level.SEVERE, "Failed to generate PDF bill", e);
+            return false;
+        }
+        if (cacheKey != null) {
+            BILL_CACHE.store(cacheKey, "pdf", pdfFile);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the PDF layout of a bill. The stream is closed when the document is complete.
+     *
+     * @param out           where the PDF is written
+     * @param customerId    the unique ID of the customer
+     * @param customerName  the name of the customer
+     * @param usage         electricity usage details
+     * @param dayPrice      rate shown for the daytime usage, in lev per kWh
+     * @param nightPrice    rate shown for the nighttime usage, in lev per kWh
+     * @param daytimeCost   cost of daytime electricity usage
+     * @param nighttimeCost cost of nighttime electricity usage
+     * @param totalCost     total electricity cost
+     * @param year          year of the bill
+     * @param issueDate     date the bill is issued
+     * @param periodStart   first day of the billing period, or null if unknown
+     * @param periodEnd     last day of the billing period, or null if unknown
+     * @throws DocumentException if the document cannot be built
+     * @throws IOException       if the fonts or logo cannot be read
+     */
+    static void writePdfBill(OutputStream out, String customerId, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost, double nighttimeCost, double totalCost,
+                             String year, String issueDate, LocalDate periodStart, LocalDate periodEnd) throws DocumentException, IOException {
+        String[] values = PdfBillForm.fieldValues(customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd);
+        Document document = new Document();
+        try {
+            // Fonts and logo are parsed once per process and shared by all bills
+            PdfResourceCache.BillFonts fonts = PdfResourceCache.getFonts(PDF_FONT);
+
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setPageEvent(new FooterHandler(fonts.sectionTitleFont, fonts.regularFont));
+            document.open();
+            addPdfLayout(document, fonts, PDF_LOGO, (field, font) -> {
+                String value = values[field.ordinal()];
+                return value == null ? null : new Chunk(value, font);
+            });
         } finally {
             document.close();
         }
     }
 
+    /**
+     * Writes the PDF layout of a bill by stamping its values onto the cached {@link PdfBillForm}.
+     * The stream is closed when the document is complete.
+     *
+     * @param out           where the PDF is written
+     * @param customerId    the unique ID of the customer
+     * @param customerName  the name of the customer
+     * @param usage         electricity usage details
+     * @param dayPrice      rate shown for the daytime usage, in lev per kWh
+     * @param nightPrice    rate shown for the nighttime usage, in lev per kWh
+     * @param daytimeCost   cost of daytime electricity usage
+     * @param nighttimeCost cost of nighttime electricity usage
+     * @param totalCost     total electricity cost
+     * @param year          year of the bill
+     * @param issueDate     date the bill is issued
+     * @param periodStart   first day of the billing period, or null if unknown
+     * @param periodEnd     last day of the billing period, or null if unknown
+     * @throws DocumentException if the document cannot be built
+     * @throws IOException       if the fonts or logo cannot be read
+     */
+    static void writePdfBillForm(OutputStream out, String customerId, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost, double nighttimeCost, double totalCost,
+                                 String year, String issueDate, LocalDate periodStart, LocalDate periodEnd) throws DocumentException, IOException {
+        PdfBillForm.getInstance(PDF_FONT, PDF_LOGO).write(out, customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd);
+    }
+
+    /**
+     * Adds the content of a bill to an open document. The customer-specific values are the chunks
+     * supplied for each {@link PdfBillForm.Field}, so the same layout serves flow-rendered bills and the
+     * base page of the form.
+     *
+     * @param document the open document
+     * @param fonts    the bill fonts
+     * @param logoPath the path of the logo image
+     * @param values   supplies the chunk of every field
+     * @throws DocumentException if the content cannot be added
+     * @throws IOException       if the logo cannot be read
+     */
+    static void addPdfLayout(Document document, PdfResourceCache.BillFonts fonts, String logoPath, PdfBillForm.FieldChunks values) throws DocumentException, IOException {
+        Font titleFont = fonts.titleFont;
+        Font sectionTitleFont = fonts.sectionTitleFont;
+        Font regularFont = fonts.regularFont;
+
+        // Add header with logo and title
+        Image logo = PdfResourceCache.getLogo(logoPath);
+        document.add(logo);
+
+        Paragraph title = new Paragraph("Фактура за електроенергия", titleFont);
+        title.setAlignment(Element.ALIGN_CENTER);
+        document.add(title);
+
+        document.add(new Paragraph(" ")); // Empty line for spacing
+
+        // Issue date, invoice number, and client details in the same row
+        PdfPTable infoTable = new PdfPTable(2);
+        infoTable.setWidthPercentage(100);
+        infoTable.setSpacingBefore(10f);
+        infoTable.setSpacingAfter(10f);
+
+        PdfPCell cell1 = new PdfPCell(labelled("Дата на издаване: ", values.chunk(PdfBillForm.Field.ISSUE_DATE, regularFont), regularFont));
+        cell1.setBorder(Rectangle.NO_BORDER);
+        infoTable.addCell(cell1);
+
+        PdfPCell cell2 = new PdfPCell(new Phrase("Номер на фактура: INV-379208", regularFont));
+        cell2.setBorder(Rectangle.NO_BORDER);
+        infoTable.addCell(cell2);
+
+        PdfPCell cell3 = new PdfPCell(new Phrase("Клиент:", sectionTitleFont));
+        cell3.setBorder(Rectangle.NO_BORDER);
+        infoTable.addCell(cell3);
+
+        PdfPCell cell4 = new PdfPCell(labelled("Име: ", values.chunk(PdfBillForm.Field.CUSTOMER_NAME, regularFont), regularFont));
+        cell4.setBorder(Rectangle.NO_BORDER);
+        infoTable.addCell(cell4);
+
+        PdfPCell cell5 = new PdfPCell(labelled("Клиентски номер: ", values.chunk(PdfBillForm.Field.CUSTOMER_ID, regularFont), regularFont));
+        cell5.setBorder(Rectangle.NO_BORDER);
+        infoTable.addCell(cell5);
+
+        Chunk period = values.chunk(PdfBillForm.Field.PERIOD, regularFont);
+        if (period != null) {
+            PdfPCell cell6 = new PdfPCell(new Phrase(period));
+            cell6.setBorder(Rectangle.NO_BORDER);
+            infoTable.addCell(cell6);
+        }
+
+        document.add(infoTable);
+
+        document.add(new Paragraph(" ")); // Empty line for spacing
+
+        // Consumption data
+        document.add(new Paragraph("Данни за потребление:", sectionTitleFont));
+        PdfPTable consumptionTable = new PdfPTable(4);
+        consumptionTable.setWidthPercentage(100);
+        consumptionTable.setSpacingBefore(10f);
+        consumptionTable.setSpacingAfter(10f);
+
+        // Add table headers
+        addTableHeader(consumptionTable, "Година", regularFont);
+        addTableHeader(consumptionTable, "Дневна консумация", regularFont);
+        addTableHeader(consumptionTable, "Нощна консумация", regularFont);
+        addTableHeader(consumptionTable, "Общо потребление", regularFont);
+
+        // Add table data
+        addTableCell(consumptionTable, values.chunk(PdfBillForm.Field.YEAR, regularFont));
+        addTableCell(consumptionTable, values.chunk(PdfBillForm.Field.DAY_USAGE, regularFont));
+        addTableCell(consumptionTable, values.chunk(PdfBillForm.Field.NIGHT_USAGE, regularFont));
+        addTableCell(consumptionTable, values.chunk(PdfBillForm.Field.TOTAL_USAGE, regularFont));
+
+        document.add(consumptionTable);
+        document.add(new Paragraph(" ")); // Empty line for spacing
+
+        // Cost calculation
+        document.add(new Paragraph("Изчисление на разходите:", sectionTitleFont));
+        document.add(new Paragraph(labelled("Дневна консумация: ", values.chunk(PdfBillForm.Field.DAY_COST, regularFont), regularFont)));
+        document.add(new Paragraph(labelled("Нощна консумация: ", values.chunk(PdfBillForm.Field.NIGHT_COST, regularFont), regularFont)));
+        document.add(new Paragraph(labelled("Обща сума за плащане: ", values.chunk(PdfBillForm.Field.TOTAL_COST, fonts.boldFont), fonts.boldFont)));
+        document.add(new Paragraph(" ")); // Empty line for spacing
+    }
+
+    // A static label followed by the chunk of a field
+    private static Phrase labelled(String label, Chunk value, Font font) {
+        Phrase phrase = new Phrase(label, font);
+        phrase.add(value);
+        return phrase;
+    }
+
     // This method adds a header cell to a PDF table.
     private static void addTableHeader(PdfPTable table, String headerTitle, Font font) {
         PdfPCell header = new PdfPCell();
@@ -208,15 +488,15 @@ public class BillGeneratorTxtAndPDF {
         table.addCell(header);
     }
 
-    // This method adds a cell with text to a PDF table.
-    private static void addTableCell(PdfPTable table, String text, Font font) {
-        PdfPCell cell = new PdfPCell(new Phrase(text, font));
+    // This method adds a cell with the chunk of a field to a PDF table.
+    private static void addTableCell(PdfPTable table, Chunk value) {
+        PdfPCell cell = new PdfPCell(new Phrase(value));
         cell.setPadding(5);
         table.addCell(cell);
     }
 
     // This inner class handles the footer of each page in the PDF document
-    private static class FooterHandler extends PdfPageEventHelper {
+    static class FooterHandler extends PdfPageEventHelper {
        final private Font sectionTitleFont;
       final   private Font regularFont;
 
@@ -244,29 +524,20 @@ public class BillGeneratorTxtAndPDF {
     }
 
     /**
-     * Saves the bill details into a database.
+     * Queues the bill details for the `bills` table in the {@link BillRepository}.
      *
-     * @param customerId   the unique ID of the customer
-     * @param customerName the name of the customer
-     * @param usage        electricity usage details
+     * @param customerId    the unique ID of the customer
+     * @param customerName  the name of the customer
+     * @param period        the billing period the bill file is named after
+     * @param usage         electricity usage details
+     * @param daytimeCost   cost of daytime electricity usage
+     * @param nighttimeCost cost of nighttime electricity usage
+     * @return true if the bill was queued
      */
-    private static void saveBillToDatabase(String customerId, String customerName, CustomerUsage usage) {
-        LOGGER.info("Saving bill to database for customer ID: " + customerId);
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(
-                     "INSERT INTO bills (customer_id, customer_name, daytime_usage, nighttime_usage, daytime_cost, nighttime_cost) VALUES (?, ?, ?, ?, ?, ?)")) {
-            // Bind parameters to the prepared statement
-            pstmt.setString(1, customerId);
-            pstmt.setString(2, customerName);
-            pstmt.setInt(3, usage.getDaytimeUsage());
-            pstmt.setInt(4, usage.getNighttimeUsage());
-            pstmt.setDouble(5, usage.getDaytimeUsage() * Double.parseDouble(DAY_PRICE));
-            pstmt.setDouble(6, usage.getNighttimeUsage() * Double.parseDouble(NIGHT_PRICE));
-            int rowsAffected = pstmt.executeUpdate();
-            LOGGER.info("Rows affected: " + rowsAffected);
-            LOGGER.info("Bill saved to database for customer ID: " + customerId);
-        } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Failed to save bill to database", e);
-        }
+    private static boolean saveBillToDatabase(String customerId, String customerName, String period, CustomerUsage usage, double daytimeCost,
+                                              double nighttimeCost) {
+        // The row is written by the repository's writer thread; see BillRepository#flush for the persisted count
+        return BillRepository.getInstance().save(customerId, customerName, period, usage.getDaytimeUsage(), usage.getNighttimeUsage(),
+                daytimeCost, nighttimeCost);
     }
 }
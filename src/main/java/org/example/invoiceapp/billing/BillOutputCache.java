@@ -0,0 +1,175 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.util.Metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+
+/**
+ * The `BillOutputCache` class keeps a content-addressed copy of every bill file written, so that a
+ * rerun does not render a bill again when nothing it depends on has changed.
+ *
+ * <p>
+ * A bill's key is the SHA-256 hash of all of its rendering inputs (see {@link #key(String...)}). The
+ * cache directory holds one object per key and file type, named after the hash. Before a bill file is
+ * rendered, {@link #restore(String, String, Path)} looks its object up: if the output already is that object it is
+ * left alone, otherwise it is replaced by a hard link to the object, or a copy where the file system does
+ * not support links. Only on a miss is the bill rendered, and {@link #store(String, String, Path)} then links the
+ * new file into the cache.
+ * </p>
+ *
+ * <p>
+ * Outputs are linked, not written through: a stale output is deleted before the bill is rendered again,
+ * so a cached object is never overwritten. Objects are not evicted; the directory can be deleted at any
+ * time to start afresh. The cache can be used from several rendering threads.
+ * </p>
+ */
+public class BillOutputCache {
+
+    private static final Logger LOGGER = Logger.getLogger(BillOutputCache.class.getName());
+    private static final Metrics.Counter HITS = Metrics.counter("invoiceapp_bill_cache_hits_total", "Bill files taken from the bill output cache");
+    private static final Metrics.Counter MISSES = Metrics.counter("invoiceapp_bill_cache_misses_total", "Bill files rendered because they were not in the bill output cache");
+
+    private final Path directory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a cache in a directory, which is created if needed.
+     *
+     * @param directory where the cached bill files are kept
+     * @throws IOException if the directory cannot be created
+     */
+    public BillOutputCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Computes the key of a bill from its rendering inputs. Every value that changes the content of the
+     * bill files must be passed, including the rendering configuration.
+     *
+     * @param inputs the rendering inputs; null is allowed
+     * @return the hexadecimal SHA-256 hash of the inputs
+     */
+    public static String key(String... inputs) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        for (String input : inputs) {
+            // Length-prefixed, so that no two different input lists hash the same bytes
+            byte[] bytes = String.valueOf(input).getBytes(StandardCharsets.UTF_8);
+            digest.update((byte) (input == null ? 0 : 1));
+            digest.update(new byte[]{(byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length});
+            digest.update(bytes);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Describes a file an output depends on by its path, size and modification time, for use as an input
+     * to {@link #key(String...)}.
+     *
+     * @param path the file path, or null
+     * @return a description that changes when the file is replaced or modified
+     */
+    public static String describeFile(String path) {
+        if (path == null) {
+            return "none";
+        }
+        try {
+            Path file = Path.of(path);
+            return path + ':' + Files.size(file) + ':' + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException | RuntimeException e) {
+            return path + ":missing";
+        }
+    }
+
+    /**
+     * Makes an output the cached file of a key, if there is one. On a miss an existing output is deleted,
+     * so that rendering writes a new file.
+     *
+     * @param key       the bill's key
+     * @param extension the file type, e.g. `txt` or `pdf`
+     * @param output    the bill file
+     * @return true on a hit: the output now holds the cached bill and need not be rendered
+     */
+    public boolean restore(String key, String extension, Path output) {
+        Path object = objectPath(key, extension);
+        try {
+            if (Files.exists(object)) {
+                if (!Files.exists(output) || !Files.isSameFile(output, object)) {
+                    Files.deleteIfExists(output);
+                    link(output, object);
+                }
+                hits.incrementAndGet();
+                HITS.increment();
+                return true;
+            }
+            Files.deleteIfExists(output);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to restore " + output + " from the bill cache", e);
+        }
+        misses.incrementAndGet();
+        MISSES.increment();
+        return false;
+    }
+
+    /**
+     * Adds a newly rendered bill file to the cache.
+     *
+     * @param key       the bill's key
+     * @param extension the file type, e.g. `txt` or `pdf`
+     * @param output    the rendered bill file
+     */
+    public void store(String key, String extension, Path output) {
+        Path object = objectPath(key, extension);
+        try {
+            Files.createDirectories(object.getParent());
+            link(object, output);
+        } catch (FileAlreadyExistsException e) {
+            // Rendered by another thread or run in the meantime; the content is the same
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to add " + output + " to the bill cache", e);
+        }
+    }
+
+    // Links `link` to `target`, copying where the file system cannot link
+    private static void link(Path link, Path target) throws IOException {
+        try {
+            Files.createLink(link, target);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            Path temporary = link.resolveSibling(link.getFileName() + ".tmp");
+            Files.copy(target, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, link, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    // Objects are spread over 256 subdirectories by the first byte of the hash
+    private Path objectPath(String key, String extension) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + "." + extension);
+    }
+
+    /** @return the number of bill files taken from the cache */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** @return the number of bill files that had to be rendered */
+    public long getMisses() {
+        return misses.get();
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.*;
+
+/**
+ * The `BillRenderingExecutor` class renders many customers' bills concurrently.
+ *
+ * <p>
+ * Rendering a bill is dominated by file I/O and a database round trip, so bills are rendered on
+ * virtual threads when the runtime supports them, or on a fixed pool of platform threads otherwise.
+ * The number of bills in flight is capped by `bill.render.concurrency`; {@link #submit(String, Callable)}
+ * blocks once the cap is reached, so the caller never queues more work than it can render.
+ * </p>
+ *
+ * <p>
+ * Each bill is isolated: a failure or exception for one customer is recorded and does not affect the
+ * others. {@link #awaitCompletion()} returns a summary of successes and failures and, when the
+ * {@link BillOutputCache} is enabled, of the bill files taken from it during the run.
+ * </p>
+ */
+public class BillRenderingExecutor implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(BillRenderingExecutor.class.getName());
+    private static final String CONCURRENCY = ConfigLoader.getProperty("bill.render.concurrency");
+    private static final Metrics.Counter BILLS_RENDERED = Metrics.counter("invoiceapp_bills_rendered_total", "Bills rendered successfully");
+    private static final Metrics.Counter BILLS_FAILED = Metrics.counter("invoiceapp_bills_failed_total", "Bills that could not be rendered");
+    private static final boolean VIRTUAL_THREADS = Boolean.parseBoolean(ConfigLoader.getProperty("bill.render.virtual.threads"));
+
+    private final ExecutorService executor;
+    private final Semaphore inFlight;
+    private final int maxConcurrency;
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final List<String> failedCustomerIds = Collections.synchronizedList(new ArrayList<>());
+    private final BillOutputCache cache = BillGeneratorTxtAndPDF.getBillCache();
+    private final long cacheHitsBefore = cache == null ? 0 : cache.getHits();
+    private final long cacheMissesBefore = cache == null ? 0 : cache.getMisses();
+
+    /**
+     * Creates an executor configured from `bill.render.concurrency` and `bill.render.virtual.threads`.
+     */
+    public BillRenderingExecutor() {
+        this(CONCURRENCY == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(CONCURRENCY.trim()), VIRTUAL_THREADS);
+    }
+
+    /**
+     * Creates an executor.
+     *
+     * @param maxConcurrency the maximum number of bills rendered at the same time
+     * @param virtualThreads whether to render on virtual threads if the runtime supports them
+     */
+    public BillRenderingExecutor(int maxConcurrency, boolean virtualThreads) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.inFlight = new Semaphore(this.maxConcurrency);
+        ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+        this.executor = virtualExecutor != null ? virtualExecutor : Executors.newFixedThreadPool(this.maxConcurrency);
+    }
+
+    // Virtual threads are final from Java 21 on; the project still targets 19, so look the factory up at runtime
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            LOGGER.info("Virtual threads are not available, rendering bills on platform threads.");
+            return null;
+        }
+    }
+
+    /**
+     * Submits a customer's bill for rendering, blocking while the concurrency cap is reached.
+     *
+     * @param customerId the customer the bill is rendered for, used in the summary
+     * @param job        renders the bill and returns whether it succeeded
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    public void submit(String customerId, Callable<Boolean> job) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (Boolean.TRUE.equals(job.call())) {
+                        succeeded.incrementAndGet();
+                        BILLS_RENDERED.increment();
+                    } else {
+                        failedCustomerIds.add(customerId);
+                        BILLS_FAILED.increment();
+                    }
+                } catch (Exception e) {
+                    failedCustomerIds.add(customerId);
+                    BILLS_FAILED.increment();
+                    LOGGER.log(Level.SEVERE, "Failed to render bill for customer ID: " + customerId, e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until every submitted bill has been rendered and shuts the executor down.
+     *
+     * @return the summary of the run
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Summary awaitCompletion() throws InterruptedException {
+        // All permits are free again once the last bill has finished
+        inFlight.acquire(maxConcurrency);
+        inFlight.release(maxConcurrency);
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        if (cache == null) {
+            return new Summary(succeeded.get(), new ArrayList<>(failedCustomerIds), -1, -1);
+        }
+        return new Summary(succeeded.get(), new ArrayList<>(failedCustomerIds), cache.getHits() - cacheHitsBefore, cache.getMisses() - cacheMissesBefore);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The outcome of a rendering run.
+     */
+    public static class Summary {
+        private final int succeeded;
+        private final List<String> failedCustomerIds;
+        private final long cacheHits;
+        private final long cacheMisses;
+
+        Summary(int succeeded, List<String> failedCustomerIds, long cacheHits, long cacheMisses) {
+            this.succeeded = succeeded;
+            this.failedCustomerIds = Collections.unmodifiableList(failedCustomerIds);
+            this.cacheHits = cacheHits;
+            this.cacheMisses = cacheMisses;
+        }
+
+        /**
+         * Returns the number of bills rendered successfully.
+         *
+         * @return the number of successes
+         */
+        public int getSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * Returns the IDs of the customers whose bill could not be rendered.
+         *
+         * @return the failed customer IDs
+         */
+        public List<String> getFailedCustomerIds() {
+            return failedCustomerIds;
+        }
+
+        /**
+         * Returns the number of bill files taken from the bill cache instead of being rendered.
+         *
+         * @return the number of cache hits, or -1 if the cache is disabled
+         */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        /**
+         * Returns the number of bill files rendered because they were not in the bill cache.
+         *
+         * @return the number of cache misses, or -1 if the cache is disabled
+         */
+        public long getCacheMisses() {
+            return cacheMisses;
+        }
+
+        @Override
+        public String toString() {
+            return "Bills rendered: " + succeeded + ", failed: " + failedCustomerIds.size()
+                    + (failedCustomerIds.isEmpty() ? "" : " " + failedCustomerIds)
+                    + (cacheHits < 0 ? "" : ", cache hits: " + cacheHits + ", misses: " + cacheMisses);
+        }
+    }
+}
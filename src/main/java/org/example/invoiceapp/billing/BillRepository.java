@@ -0,0 +1,296 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.ConnectionPool;
+import org.example.invoiceapp.util.Metrics;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+
+/**
+ * The `BillRepository` class persists bill rows to the `bills` table behind the rendering threads.
+ *
+ * <p>
+ * Rendering threads {@link #save(String, String, String, int, int, double, double) save} rows into a
+ * bounded queue and continue with the next bill; {@code save} only blocks while the queue is full. A single
+ * writer thread drains the queue and writes the rows as multi-row `INSERT ... ON DUPLICATE KEY UPDATE`
+ * statements of up to `bill.repository.batch.size` rows, one transaction per statement. A partial batch is
+ * written after `bill.repository.flush.interval.ms` without new rows.
+ * </p>
+ *
+ * <p>
+ * A bill row is keyed by customer ID and billing period, so a bill rendered again, e.g. because a later
+ * drop added readings to its month, replaces the row of the earlier rendering instead of adding another.
+ * </p>
+ *
+ * <p>
+ * {@link #flush()} waits until every row saved so far has been written and returns how many were
+ * persisted, so the caller can check it against the number of rendered bills. {@link #shutdown()}
+ * flushes and stops the writer. The application's shutdown hook calls it after the run in progress has
+ * finished, so queued rows are written even if the JVM is stopped mid-run.
+ * </p>
+ */
+public class BillRepository {
+
+    private static final Logger LOGGER = Logger.getLogger(BillRepository.class.getName());
+    private static final String INSERT_BILLS_SQL = "INSERT INTO bills (customer_id, customer_name, billing_period, daytime_usage, nighttime_usage, daytime_cost, nighttime_cost) VALUES ";
+    private static final String UPDATE_BILLS_SQL = " ON DUPLICATE KEY UPDATE customer_name = VALUES(customer_name), daytime_usage = VALUES(daytime_usage),"
+            + " nighttime_usage = VALUES(nighttime_usage), daytime_cost = VALUES(daytime_cost), nighttime_cost = VALUES(nighttime_cost)";
+    private static final Metrics.Timer DB_WRITE_TIMER = Metrics.timer("invoiceapp_db_bills_write_seconds", "Time to insert one batch of bills");
+    private static final Metrics.Counter DB_ROWS = Metrics.counter("invoiceapp_db_bills_rows_total", "Bills inserted into the database");
+    private static final Metrics.Counter DB_FAILED_ROWS = Metrics.counter("invoiceapp_db_bills_failed_rows_total", "Bills that could not be inserted");
+    private static final BillRow END_OF_STREAM = new BillRow(null, null, null, 0, 0, 0, 0, null);
+
+    private static BillRepository instance;
+
+    private final DataSource dataSource;
+    private final BlockingQueue<BillRow> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Thread writerThread;
+    private final AtomicLong savedRows = new AtomicLong();
+    private final AtomicLong persistedRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private long persistedAtLastFlush;
+    private volatile boolean closed;
+
+    // A bill row, or a flush request when `flushed` is set
+    private static class BillRow {
+        final String customerId;
+        final String customerName;
+        final String billingPeriod;
+        final int daytimeUsage;
+        final int nighttimeUsage;
+        final double daytimeCost;
+        final double nighttimeCost;
+        final CountDownLatch flushed;
+
+        BillRow(String customerId, String customerName, String billingPeriod, int daytimeUsage, int nighttimeUsage, double daytimeCost,
+                double nighttimeCost, CountDownLatch flushed) {
+            this.customerId = customerId;
+            this.customerName = customerName;
+            this.billingPeriod = billingPeriod;
+            this.daytimeUsage = daytimeUsage;
+            this.nighttimeUsage = nighttimeUsage;
+            this.daytimeCost = daytimeCost;
+            this.nighttimeCost = nighttimeCost;
+            this.flushed = flushed;
+        }
+    }
+
+    /**
+     * Returns the shared repository, starting its writer on first use. The repository is configured from
+     * the `bill.repository.*` properties and writes through the shared {@link ConnectionPool}.
+     *
+     * @return the shared repository
+     */
+    public static synchronized BillRepository getInstance() {
+        if (instance == null || instance.closed) {
+            instance = new BillRepository(ConnectionPool.getInstance(),
+                    intProperty("bill.repository.batch.size", 200),
+                    intProperty("bill.repository.flush.interval.ms", 500),
+                    intProperty("bill.repository.queue.capacity", 5000));
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a repository and starts its writer thread.
+     *
+     * @param dataSource          where the bill rows are inserted
+     * @param batchSize           the maximum number of rows per insert statement
+     * @param flushIntervalMillis how long a partial batch may wait for more rows
+     * @param queueCapacity       the number of rows that may be waiting for the writer
+     */
+    public BillRepository(DataSource dataSource, int batchSize, long flushIntervalMillis, int queueCapacity) {
+        this.dataSource = dataSource;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writerThread = new Thread(this::drain, "bill-repository-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a bill row for insertion, blocking while the queue is full. The row replaces an earlier row of
+     * the same customer and billing period.
+     *
+     * @param customerId     the customer ID
+     * @param customerName   the customer name
+     * @param billingPeriod  the billing period, e.g. `2019-01`
+     * @param daytimeUsage   the daytime usage
+     * @param nighttimeUsage the nighttime usage
+     * @param daytimeCost    the daytime cost
+     * @param nighttimeCost  the nighttime cost
+     * @return true if the row was queued, false if the repository is shut down or the caller was interrupted
+     */
+    public boolean save(String customerId, String customerName, String billingPeriod, int daytimeUsage, int nighttimeUsage, double daytimeCost,
+                        double nighttimeCost) {
+        if (closed) {
+            LOGGER.warning("Bill repository is shut down, bill not saved for customer ID: " + customerId);
+            return false;
+        }
+        try {
+            queue.put(new BillRow(customerId, customerName, billingPeriod, daytimeUsage, nighttimeUsage, daytimeCost, nighttimeCost, null));
+            savedRows.incrementAndGet();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.SEVERE, "Interrupted while saving bill for customer ID: " + customerId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Waits until every row queued before this call has been written or has failed.
+     *
+     * @return the number of rows persisted since the previous flush
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized long flush() throws InterruptedException {
+        if (!closed) {
+            CountDownLatch flushed = new CountDownLatch(1);
+            queue.put(new BillRow(null, null, null, 0, 0, 0, 0, flushed));
+            flushed.await();
+        }
+        long persisted = persistedRows.get();
+        long sinceLastFlush = persisted - persistedAtLastFlush;
+        persistedAtLastFlush = persisted;
+        return sinceLastFlush;
+    }
+
+    /**
+     * Writes all queued rows and stops the writer thread. Further {@link #save} calls are rejected.
+     * Calling this method more than once has no effect.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            queue.put(END_OF_STREAM);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.log(Level.WARNING, "Interrupted while writing the remaining bills", e);
+        }
+        LOGGER.info("Bill repository shut down: " + persistedRows.get() + " of " + savedRows.get() + " bills persisted, "
+                + failedRows.get() + " failed.");
+    }
+
+    // Runs on the writer thread until the end-of-stream marker is taken
+    private void drain() {
+        List<BillRow> batch = new ArrayList<>(batchSize);
+        long batchStarted = 0;
+        try {
+            while (true) {
+                long wait = batch.isEmpty() ? Long.MAX_VALUE : batchStarted + flushIntervalMillis - System.currentTimeMillis();
+                BillRow row = wait == Long.MAX_VALUE ? queue.take() : queue.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                if (row == null) {
+                    write(batch);
+                } else if (row == END_OF_STREAM) {
+                    break;
+                } else if (row.flushed != null) {
+                    write(batch);
+                    row.flushed.countDown();
+                } else {
+                    if (batch.isEmpty()) {
+                        batchStarted = System.currentTimeMillis();
+                    }
+                    batch.add(row);
+                    if (batch.size() >= batchSize) {
+                        write(batch);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            write(batch);
+            // Rows saved while shutting down are not written; release anyone still waiting for a flush
+            for (BillRow row : queue) {
+                if (row.flushed != null) {
+                    row.flushed.countDown();
+                } else if (row != END_OF_STREAM) {
+                    failedRows.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    // Inserts or replaces the rows of the batch with one multi-row statement in its own transaction
+    private void write(List<BillRow> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder(INSERT_BILLS_SQL);
+        for (int i = 0; i < batch.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+        }
+        sql.append(UPDATE_BILLS_SQL);
+        long start = System.nanoTime();
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                int parameter = 1;
+                for (BillRow row : batch) {
+                    pstmt.setString(parameter++, row.customerId);
+                    pstmt.setString(parameter++, row.customerName);
+                    pstmt.setString(parameter++, row.billingPeriod);
+                    pstmt.setInt(parameter++, row.daytimeUsage);
+                    pstmt.setInt(parameter++, row.nighttimeUsage);
+                    pstmt.setDouble(parameter++, row.daytimeCost);
+                    pstmt.setDouble(parameter++, row.nighttimeCost);
+                }
+                pstmt.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            persistedRows.addAndGet(batch.size());
+            DB_ROWS.add(batch.size());
+            LOGGER.fine("Saved " + batch.size() + " bills to database.");
+        } catch (SQLException e) {
+            failedRows.addAndGet(batch.size());
+            DB_FAILED_ROWS.add(batch.size());
+            LOGGER.log(Level.SEVERE, "Failed to save " + batch.size() + " bills to database", e);
+        }
+        DB_WRITE_TIMER.recordSince(start);
+        batch.clear();
+    }
+
+    /** @return the number of rows queued so far */
+    public long getSavedCount() {
+        return savedRows.get();
+    }
+
+    /** @return the number of rows inserted so far */
+    public long getPersistedCount() {
+        return persistedRows.get();
+    }
+
+    /** @return the number of rows that could not be inserted */
+    public long getFailedCount() {
+        return failedRows.get();
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        String value = ConfigLoader.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
@@ -0,0 +1,198 @@
+package org.example.invoiceapp.billing;
+
+import com.itextpdf.text.Chunk;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfImportedPage;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+import org.example.invoiceapp.data.CustomerUsage;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.*;
+
+/**
+ * The `CombinedPdfWriter` class writes the PDF bills of a batch into a few large documents instead of
+ * one file per customer.
+ *
+ * <p>
+ * Every bill starts on a new page. The font and the logo are embedded once per document and shared by
+ * all of its pages; with a {@link PdfBillForm} the whole static layout is a single form XObject that
+ * every page draws before its values are stamped on it. When `maxPagesPerFile` is positive a new
+ * document is started once the current one holds that many pages, so a document may exceed the limit
+ * only by the tail of its last bill.
+ * </p>
+ *
+ * <p>
+ * The documents are named `<baseName>_001.pdf`, `<baseName>_002.pdf` and so on. The page index
+ * `<baseName>_index.csv` lists the document and the page range of every bill, so a single invoice can
+ * still be extracted. Bills are appended one at a time; {@link #append} may be called from several
+ * rendering threads.
+ * </p>
+ */
+public class CombinedPdfWriter implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(CombinedPdfWriter.class.getName());
+
+    private final Path directory;
+    private final String baseName;
+    private final int maxPagesPerFile;
+    private final String fontPath;
+    private final String logoPath;
+    private final PdfBillForm form;
+    private final BufferedWriter index;
+    private final List<Path> files = new ArrayList<>();
+
+    private Document document;
+    private PdfWriter writer;
+    private PdfReader baseReader;
+    private PdfImportedPage basePage;
+    private int pagesInFile;
+
+    /**
+     * Creates the page index and prepares the first document, which is created with the first bill.
+     *
+     * @param directory       the directory the documents are written to
+     * @param baseName        the name the documents and the index start with
+     * @param maxPagesPerFile the number of pages after which a new document is started; 0 for no limit
+     * @param fontPath        the path of the font file
+     * @param logoPath        the path of the logo image
+     * @param form            the form the bills are stamped on, or null to lay out every bill
+     * @throws IOException if the directory or the page index cannot be created
+     */
+    public CombinedPdfWriter(Path directory, String baseName, int maxPagesPerFile, String fontPath, String logoPath, PdfBillForm form) throws IOException {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.maxPagesPerFile = Math.max(0, maxPagesPerFile);
+        this.fontPath = fontPath;
+        this.logoPath = logoPath;
+        this.form = form;
+        Files.createDirectories(directory);
+        this.index = Files.newBufferedWriter(directory.resolve(baseName + "_index.csv"), StandardCharsets.UTF_8);
+        index.write("customer_id,file,first_page,last_page");
+        index.newLine();
+    }
+
+    /**
+     * Appends a customer's bill on a new page and records its pages in the index.
+     *
+     * @param customerId    the unique ID of the customer
+     * @param customerName  the name of the customer
+     * @param usage         electricity usage details
+     * @param dayPrice      rate shown for the daytime usage, in lev per kWh
+     * @param nightPrice    rate shown for the nighttime usage, in lev per kWh
+     * @param daytimeCost   cost of daytime electricity usage
+     * @param nighttimeCost cost of nighttime electricity usage
+     * @param totalCost     total electricity cost
+     * @param year          year of the bill
+     * @param issueDate     date the bill is issued
+     * @param periodStart   first day of the billing period, or null if unknown
+     * @param periodEnd     last day of the billing period, or null if unknown
+     * @throws DocumentException if the bill cannot be added to the document
+     * @throws IOException       if a document or the index cannot be written
+     */
+    public synchronized void append(String customerId, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost, double nighttimeCost, double totalCost,
+                                    String year, String issueDate, LocalDate periodStart, LocalDate periodEnd) throws DocumentException, IOException {
+        if (document == null || (maxPagesPerFile > 0 && pagesInFile >= maxPagesPerFile)) {
+            closeFile();
+            openFile();
+        }
+        String[] values = PdfBillForm.fieldValues(customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd);
+        document.newPage();
+        int firstPage = writer.getPageNumber();
+        if (form != null) {
+            PdfContentByte canvas = writer.getDirectContent();
+            canvas.addTemplate(basePage, 0, 0);
+            form.stamp(canvas, values);
+        } else {
+            BillGeneratorTxtAndPDF.addPdfLayout(document, PdfResourceCache.getFonts(fontPath), logoPath, (field, font) -> {
+                String value = values[field.ordinal()];
+                return value == null ? null : new Chunk(value, font);
+            });
+        }
+        int lastPage = writer.getPageNumber();
+        pagesInFile += lastPage - firstPage + 1;
+
+        index.write(customerId + "," + files.get(files.size() - 1).getFileName() + "," + firstPage + "," + lastPage);
+        index.newLine();
+    }
+
+    /**
+     * Returns the documents written so far.
+     *
+     * @return the documents, in the order they were started
+     */
+    public synchronized List<Path> getFiles() {
+        return List.copyOf(files);
+    }
+
+    /**
+     * Returns the page index of the batch.
+     *
+     * @return the index file
+     */
+    public Path getIndexFile() {
+        return directory.resolve(baseName + "_index.csv");
+    }
+
+    private void openFile() throws DocumentException, IOException {
+        Path file = directory.resolve(String.format("%s_%03d.pdf", baseName, files.size() + 1));
+        Document next = new Document();
+        PdfWriter nextWriter = PdfWriter.getInstance(next, new BufferedOutputStream(Files.newOutputStream(file)));
+        if (form == null) {
+            PdfResourceCache.BillFonts fonts = PdfResourceCache.getFonts(fontPath);
+            nextWriter.setPageEvent(new BillGeneratorTxtAndPDF.FooterHandler(fonts.sectionTitleFont, fonts.regularFont));
+        }
+        next.open();
+        files.add(file);
+        document = next;
+        writer = nextWriter;
+        pagesInFile = 0;
+        if (form != null) {
+            // The base page is copied into the document once, as a form XObject shared by all pages
+            baseReader = form.openBasePage();
+            basePage = writer.getImportedPage(baseReader, 1);
+        }
+        LOGGER.info("Writing combined PDF bills to " + file);
+    }
+
+    private void closeFile() {
+        if (document == null) {
+            return;
+        }
+        try {
+            document.close();
+        } finally {
+            if (baseReader != null) {
+                baseReader.close();
+            }
+            document = null;
+            writer = null;
+            baseReader = null;
+            basePage = null;
+        }
+    }
+
+    /**
+     * Completes the current document and the page index.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            closeFile();
+        } finally {
+            index.close();
+        }
+    }
+}
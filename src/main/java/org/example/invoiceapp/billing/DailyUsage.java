@@ -0,0 +1,182 @@
+package org.example.invoiceapp.billing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The `DailyUsage` class keeps the unpriced usage of the four time slots per customer and day, so that
+ * usage aggregated earlier can be priced again when the {@link TariffEngine} tariff changes.
+ *
+ * <p>
+ * Entries are kept in insertion order in parallel primitive columns, with an open-addressing hash table
+ * mapping a (customer ID, day) pair to its column index, like {@link UsageStore}. Pricing is linear in the
+ * usage of each slot, so pricing the daily sums gives the same costs as pricing every reading.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+class DailyUsage {
+
+    private static final int SLOTS = 4;
+
+    // Hash table of column index + 1; 0 marks an empty slot
+    private int[] table = new int[32];
+    private long[] customerIds = new long[16];
+    private int[] epochDays = new int[16];
+    // The usage of the four slots of entry i at i * SLOTS .. i * SLOTS + 3
+    private int[] usage = new int[16 * SLOTS];
+    private int size;
+
+    /**
+     * Adds the usage of one reading to its customer's day.
+     *
+     * @param customerId the numeric customer ID
+     * @param epochDay   the reading date, as days since 1970-01-01
+     * @param usage1     usage in the period 00:00 - 05:59
+     * @param usage2     usage in the period 06:00 - 11:59
+     * @param usage3     usage in the period 12:00 - 17:59
+     * @param usage4     usage in the period 18:00 - 23:59
+     * @throws ArithmeticException if the usage of a slot of the day does not fit into an int
+     */
+    void add(long customerId, int epochDay, int usage1, int usage2, int usage3, int usage4) {
+        int slots = getOrAdd(customerId, epochDay) * SLOTS;
+        usage[slots] = Math.addExact(usage[slots], usage1);
+        usage[slots + 1] = Math.addExact(usage[slots + 1], usage2);
+        usage[slots + 2] = Math.addExact(usage[slots + 2], usage3);
+        usage[slots + 3] = Math.addExact(usage[slots + 3], usage4);
+    }
+
+    /**
+     * Adds all daily usage of another instance into this one.
+     *
+     * @param other the usage to add
+     */
+    void mergeFrom(DailyUsage other) {
+        for (int i = 0; i < other.size; i++) {
+            int slots = i * SLOTS;
+            add(other.customerIds[i], other.epochDays[i], other.usage[slots], other.usage[slots + 1],
+                    other.usage[slots + 2], other.usage[slots + 3]);
+        }
+    }
+
+    /**
+     * Prices every customer's day with a tariff and adds the priced usage to a store, one call of
+     * {@link UsageStore#addPriced} per day.
+     *
+     * @param tariff the tariff to price with
+     * @param store  receives the priced usage
+     */
+    void priceInto(TariffEngine tariff, UsageStore store) {
+        long[] priced = new long[4];
+        long lastCustomerId = -1;
+        int plan = 0;
+        for (int i = 0; i < size; i++) {
+            if (customerIds[i] != lastCustomerId) {
+                plan = tariff.planOf(customerIds[i]);
+                lastCustomerId = customerIds[i];
+            }
+            int slots = i * SLOTS;
+            tariff.price(plan, epochDays[i], usage[slots], usage[slots + 1], usage[slots + 2], usage[slots + 3], priced);
+            store.addPriced(customerIds[i], epochDays[i], priced[TariffEngine.DAY], priced[TariffEngine.NIGHT],
+                    priced[2 + TariffEngine.DAY], priced[2 + TariffEngine.NIGHT]);
+        }
+    }
+
+    /** @return the number of (customer, day) entries */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Writes every entry, so that {@link #readFrom(DataInput)} restores an identical instance.
+     *
+     * @param out where the daily usage is written
+     * @throws IOException if writing fails
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(customerIds[i]);
+            out.writeInt(epochDays[i]);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                out.writeInt(usage[i * SLOTS + slot]);
+            }
+        }
+    }
+
+    /**
+     * Reads daily usage written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in where the daily usage is read from
+     * @return the restored daily usage
+     * @throws IOException if reading fails or the data is not valid
+     */
+    static DailyUsage readFrom(DataInput in) throws IOException {
+        int entries = in.readInt();
+        if (entries < 0) {
+            throw new IOException("Invalid daily usage count: " + entries);
+        }
+        DailyUsage daily = new DailyUsage();
+        for (int i = 0; i < entries; i++) {
+            long customerId = in.readLong();
+            int epochDay = in.readInt();
+            daily.add(customerId, epochDay, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        }
+        return daily;
+    }
+
+    private int getOrAdd(long customerId, int epochDay) {
+        int mask = table.length - 1;
+        int slot = hash(customerId, epochDay) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (customerIds[entry - 1] == customerId && epochDays[entry - 1] == epochDay) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int index = size;
+        if (index == customerIds.length) {
+            customerIds = Arrays.copyOf(customerIds, index * 2);
+            epochDays = Arrays.copyOf(epochDays, index * 2);
+            usage = Arrays.copyOf(usage, index * 2 * SLOTS);
+        }
+        customerIds[index] = customerId;
+        epochDays[index] = epochDay;
+        size++;
+        table[slot] = index + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return index;
+    }
+
+    private void rehash(int tableSize) {
+        int[] newTable = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(customerIds[i], epochDays[i]) & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = i + 1;
+        }
+        table = newTable;
+    }
+
+    // Murmur3 finalizer, as in UsageStore
+    private static int hash(long customerId, int epochDay) {
+        long key = customerId ^ epochDay * 0x9e3779b97f4a7c15L;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -1,11 +1,14 @@
 package org.example.invoiceapp.billing;
 
+import org.example.invoiceapp.data.CustomerLookupIndex;
 import org.example.invoiceapp.data.CustomerUsage;
 import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.ConnectionPool;
 
 import java.io.*;
 import java.nio.file.*;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.logging.*;
 
@@ -17,39 +20,27 @@ import java.util.logging.*;
  */
 public class MonthlyBillGenerator {
     // Paths and configurations loaded from the application configuration file
-    private static final String LOOKUP_FILE = ConfigLoader.getProperty("customer.lookup.path");
     private static final String OUTPUT_DIR = ConfigLoader.getProperty("mainDir.output");
-    private static final String DB_URL = ConfigLoader.getProperty("db.url");
-    private static final String DB_USER = ConfigLoader.getProperty("db.username");
-    private static final String DB_PASSWORD = ConfigLoader.getProperty("db.password");
     private static final Logger LOGGER = Logger.getLogger(MonthlyBillGenerator.class.getName());
-    private static final String DAY_PRICE = ConfigLoader.getProperty("day.price");
-    private static final String NIGHT_PRICE = ConfigLoader.getProperty("night.price");
 
 
 
 
     /**
-     * Loads customer names from the lookup file.
+     * Loads customer names from the lookup file, through the shared {@link CustomerLookupIndex}.
      *
-     * @return A map of customer IDs to customer names.
-     *         Example: { "C001" -> "John Doe", "C002" -> "Jane Smith" }
+     * @return A read-only map of customer IDs to customer names.
+     *         Example: { "1001" -> "John Doe", "1002" -> "Jane Smith" }
      */
     public static Map<String, String> loadCustomerNames() {
-        Map<String, String> customerNames = new HashMap<>();
-
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(LOOKUP_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] fields = line.split(",");
-                customerNames.put(fields[0], fields[1]);
-            }
+        try {
+            Map<String, String> customerNames = CustomerLookupIndex.getInstance().asMap();
             LOGGER.info("Customer names loaded successfully.");
+            return customerNames;
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Failed to load customer names", e);
+            return Collections.emptyMap();
         }
-
-        return customerNames;
     }
 
     /**
@@ -61,6 +52,12 @@ public class MonthlyBillGenerator {
      */
     public static void generateBill(String customerId, String customerName, CustomerUsage usage) {
         String outputFileName = OUTPUT_DIR + customerId + ".txt";
+        // Usage given as totals is priced at today's rates of the customer's tariff plan
+        TariffEngine tariff = TariffEngine.getInstance();
+        int plan = tariff.planOf(customerId);
+        long today = LocalDate.now().toEpochDay();
+        double daytimeCost = TariffEngine.toLev(usage.getDaytimeUsage() * tariff.rate(plan, TariffEngine.DAY, today));
+        double nighttimeCost = TariffEngine.toLev(usage.getNighttimeUsage() * tariff.rate(plan, TariffEngine.NIGHT, today));
 
         // Generate a bill text file for the customer
         try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outputFileName))) {
@@ -72,9 +69,9 @@ public class MonthlyBillGenerator {
             writer.newLine();
             writer.write("Nighttime Usage: " + usage.getNighttimeUsage() + " kWh");
             writer.newLine();
-            writer.write("Total Daytime Cost: " + (usage.getDaytimeUsage() * 0.15) + " BGN");
+            writer.write("Total Daytime Cost: " + daytimeCost + " BGN");
             writer.newLine();
-            writer.write("Total Nighttime Cost: " + (usage.getNighttimeUsage() * 0.05) + " BGN");
+            writer.write("Total Nighttime Cost: " + nighttimeCost + " BGN");
             writer.newLine();
             LOGGER.info("Bill generated: " + outputFileName);
         } catch (IOException e) {
@@ -82,7 +79,7 @@ public class MonthlyBillGenerator {
         }
 
         // Save the bill details to the database
-        saveBillToDatabase(customerId, customerName, usage);
+        saveBillToDatabase(customerId, customerName, usage, daytimeCost, nighttimeCost);
     }
 
     /**
@@ -91,9 +88,11 @@ public class MonthlyBillGenerator {
      * @param customerId    The customer's unique ID.
      * @param customerName  The customer's name.
      * @param usage         An object containing the customer's electricity usage.
+     * @param daytimeCost   The cost of the daytime usage.
+     * @param nighttimeCost The cost of the nighttime usage.
      */
-    private static void saveBillToDatabase(String customerId, String customerName, CustomerUsage usage) {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+    private static void saveBillToDatabase(String customerId, String customerName, CustomerUsage usage, double daytimeCost, double nighttimeCost) {
+        try (Connection conn = ConnectionPool.getInstance().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(
                      "INSERT INTO bills (customer_id, customer_name, daytime_usage, nighttime_usage, daytime_cost, nighttime_cost) VALUES (?, ?, ?, ?, ?, ?)")) {
             // Bind parameters to the prepared statement
@@ -101,8 +100,8 @@ public class MonthlyBillGenerator {
             pstmt.setString(2, customerName);
             pstmt.setInt(3, usage.getDaytimeUsage());
             pstmt.setInt(4, usage.getNighttimeUsage());
-            pstmt.setDouble(5, usage.getDaytimeUsage() * Double.parseDouble(DAY_PRICE));
-            pstmt.setDouble(6, usage.getNighttimeUsage() * Double.parseDouble(NIGHT_PRICE));
+            pstmt.setDouble(5, daytimeCost);
+            pstmt.setDouble(6, nighttimeCost);
             pstmt.executeUpdate();
             LOGGER.info("Bill saved to database for customer ID: " + customerId);
         } catch (SQLException e) {
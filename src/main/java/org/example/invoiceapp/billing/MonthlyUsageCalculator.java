@@ -1,12 +1,19 @@
 package org.example.invoiceapp.billing;
 
+import org.example.invoiceapp.data.ConsumptionRecord;
 import org.example.invoiceapp.data.CustomerUsage;
+import org.example.invoiceapp.data.ReadingSnapshot;
+import org.example.invoiceapp.util.Metrics;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * The `MonthlyUsageCalculator` class is responsible for calculating the monthly electricity usage for each customer.
- * It processes consumption data and computes the aggregated daytime and nighttime usage for every customer.
+ * It processes consumption data and computes the aggregated daytime and nighttime usage for every customer and billing
+ * month, so a file that spans several months is aggregated in one pass into one bucket per customer per month.
  *
  * <p>
  * The method `calculateMonthlyUsage` aggregates electricity usage data for each customer based on specific time periods.
@@ -14,14 +21,16 @@ import java.util.*;
  * </p>
  *
  * <p>
- * Time periods for usage data:
+ * Every reading is priced with the customer's {@link TariffEngine} plan, which maps the four time slots
+ * onto daytime and nighttime bands. The built-in plan splits them as follows:
  * - **Nighttime**: 00:00 - 05:59 (Usage1) and 18:00 - 23:59 (Usage4)
  * - **Daytime**: 06:00 - 11:59 (Usage2) and 12:00 - 17:59 (Usage3)
  * </p>
  *
  * <p>
- * The customer usage data is returned as a map where the keys are customer IDs, and the values are `CustomerUsage` objects,
- * which store the aggregated daytime and nighttime usage.
+ * The streaming and parallel paths return a {@link UsageStore} with one bucket per customer and month. The list-based
+ * `calculateMonthlyUsage` returns a map where the keys are customer IDs, and the values are `CustomerUsage` objects,
+ * which store the daytime and nighttime usage of all months of the input.
  * </p>
  *
  * <p>
@@ -45,14 +54,17 @@ import java.util.*;
  * @return a map where the keys are customer IDs and the values are `CustomerUsage` objects containing the aggregated daytime and nighttime usage.
  */
 public class MonthlyUsageCalculator {
+    private static final Metrics.Timer AGGREGATION_TIMER = Metrics.timer("invoiceapp_calculate_monthly_usage_seconds", "Time to aggregate usage per customer");
 
     /**
      * Calculates the daytime and nighttime electricity usage for each customer based on the provided consumption data.
      *
      * <p>
      * This method processes a list of consumption records and aggregates the usage for each customer. The usage is split into
-     * daytime and nighttime periods. The nighttime usage is the sum of `Usage1` (00:00 - 05:59) and `Usage4` (18:00 - 23:59).
-     * The daytime usage is the sum of `Usage2` (06:00 - 11:59) and `Usage3` (12:00 - 17:59).
+     * daytime and nighttime periods by the customer's tariff plan; with the built-in plan the nighttime usage is the sum of
+     * `Usage1` (00:00 - 05:59) and `Usage4` (18:00 - 23:59), and the daytime usage the sum of `Usage2` (06:00 - 11:59) and
+     * `Usage3` (12:00 - 17:59). The months are added up per customer; use {@link UsageAccumulator#getStore()} to get
+     * the usage of every month.
      * </p>
      *
      * @param records a list of strings representing consumption records in the format:
@@ -60,35 +72,215 @@ public class MonthlyUsageCalculator {
      * @return a map where the keys are customer IDs and the values are `CustomerUsage` objects containing the aggregated daytime and nighttime usage.
      */
     public static Map<String, CustomerUsage> calculateMonthlyUsage(List<String> records) {
-        Map<String, CustomerUsage> usageMap = new HashMap<>();
+        long start = System.nanoTime();
+        UsageAccumulator accumulator = new UsageAccumulator();
 
         // Process each record in the consumption data
         for (String record : records) {
-            String[] fields = record.split(",");
+            accumulator.accept(record);
+        }
 
-            // Extract customer ID and usage values for the four time periods
-            String customerId = fields[0];
-            int energyUsageEarlyMorning = Integer.parseInt(fields[2]); // Nighttime: 00:00 - 05:59
-            int energyUsageMorning = Integer.parseInt(fields[3]); // Daytime: 06:00 - 11:59
-            int energyUsageAfternoon = Integer.parseInt(fields[4]); // Daytime: 12:00 - 17:59
-            int energyUsageEvening = Integer.parseInt(fields[5]); // Nighttime: 18:00 - 23:59
+        // Return the map with aggregated usage data for all customers
+        Map<String, CustomerUsage> usage = accumulator.getUsageMap();
+        AGGREGATION_TIMER.recordSince(start);
+        return usage;
+    }
 
-            // Calculate the total daytime and nighttime usage for the current record
-            int daytimeUsage = energyUsageMorning + energyUsageAfternoon;
-            int nighttimeUsage = energyUsageEarlyMorning + energyUsageEvening;
+    /**
+     * Calculates the daytime and nighttime usage of a consumption file in parallel on a fork-join pool.
+     *
+     * <p>
+     * The file is split into line-aligned byte ranges that are validated and aggregated independently;
+     * the partial results are merged in file order, so the result is identical to that of the sequential
+     * path, including the issue dates and reading date ranges. Records that fail validation are passed to
+     * {@code rejectedRecordConsumer} afterwards, on the calling thread and in file order, so that they can
+     * be written to the error sinks.
+     * </p>
+     *
+     * @param file                   the consumption data file
+     * @param parallelism            the number of worker threads
+     * @param rejectedRecordConsumer receives the lines of all records that failed validation
+     * @return the aggregated usage per customer
+     * @throws IOException if the file cannot be read
+     */
+    public static UsageStore calculateMonthlyUsageParallel(Path file, int parallelism, Consumer<String> rejectedRecordConsumer) throws IOException {
+        return calculateMonthlyUsageParallel(file, 0, Long.MAX_VALUE, parallelism, false, rejectedRecordConsumer);
+    }
 
-            // Get existing customer usage data or create a new one
-            CustomerUsage usage = usageMap.getOrDefault(customerId, new CustomerUsage());
+    /**
+     * Calculates the daytime and nighttime usage of the byte range {@code [from, to)} of a consumption file
+     * in parallel, like {@link #calculateMonthlyUsageParallel(Path, int, Consumer)}. Used to aggregate only
+     * the readings appended since a previous run.
+     *
+     * @param file                   the consumption data file
+     * @param from                   the first byte to aggregate; it must be the start of a line
+     * @param to                     the byte just past the last one to aggregate, capped at the file size
+     * @param parallelism            the number of worker threads
+     * @param keepDailyUsage         whether the store also keeps the unpriced usage per customer and day, see
+     *                               {@link UsageAccumulator#UsageAccumulator(boolean)}
+     * @param rejectedRecordConsumer receives the lines of all records that failed validation
+     * @return the aggregated usage per customer
+     * @throws IOException if the file cannot be read
+     */
+    public static UsageStore calculateMonthlyUsageParallel(Path file, long from, long to, int parallelism, boolean keepDailyUsage,
+                                                           Consumer<String> rejectedRecordConsumer) throws IOException {
+        long start = System.nanoTime();
+        ParallelUsageAggregator.Partial result = ParallelUsageAggregator.aggregate(file, from, to, parallelism, keepDailyUsage);
+        AGGREGATION_TIMER.recordSince(start);
+        result.rejectedRecords.forEach(rejectedRecordConsumer);
+        return result.accumulator.getStore();
+    }
 
-            // Add the calculated usage to the existing data
-            usage.addDaytimeUsage(daytimeUsage);
-            usage.addNighttimeUsage(nighttimeUsage);
+    /**
+     * Calculates the daytime and nighttime usage of the readings stored in a {@link ReadingSnapshot}, for
+     * example to reprint the bills of some customers without reading the consumption file again.
+     *
+     * <p>
+     * The snapshot holds validated readings only, along with the date of each customer's first reading of
+     * a month, so the issue date is the same as on the original bill even if that reading was rejected. For a
+     * version 1 snapshot, which has no such dates, it is the date of the first valid reading. Readings are
+     * priced with the current tariff.
+     * </p>
+     *
+     * @param snapshot    the snapshot file
+     * @param customerIds the customers to aggregate, or null for all customers
+     * @return the aggregated usage per customer and month
+     * @throws IOException if the snapshot cannot be read
+     */
+    public static UsageStore calculateMonthlyUsageFromSnapshot(Path snapshot, long[] customerIds) throws IOException {
+        long start = System.nanoTime();
+        long[] sortedIds = customerIds == null ? null : customerIds.clone();
+        if (sortedIds != null) {
+            Arrays.sort(sortedIds);
+        }
+        UsageAccumulator accumulator = new UsageAccumulator();
+        // An issue day marker precedes the valid readings of its month, so it sets the issue date
+        ReadingSnapshot.scan(snapshot, sortedIds, Long.MIN_VALUE, Long.MAX_VALUE, (customerId, epochDay, usage1, usage2, usage3, usage4, quality) -> {
+            accumulator.store.recordIssueDay(customerId, epochDay);
+            accumulator.add(customerId, epochDay, usage1, usage2, usage3, usage4);
+        }, accumulator.store::recordIssueDay);
+        AGGREGATION_TIMER.recordSince(start);
+        return accumulator.getStore();
+    }
 
-            // Update the map with the customer's usage data
-            usageMap.put(customerId, usage);
+    /**
+     * Aggregates consumption records one at a time, so that records can be streamed straight from the
+     * validator without being collected first. Totals are kept in a {@link UsageStore} per customer and
+     * month of the reading date, so memory use grows with the number of customers and months only and no
+     * object is created per reading. The store also indexes each bucket's issue date and reading date range.
+     *
+     * <p>
+     * Each reading is priced as it is added, with the plan and the prices in effect on its date, so the
+     * costs stay exact when prices change within a billing period.
+     * </p>
+     */
+    public static class UsageAccumulator implements Consumer<ConsumptionRecord> {
+        private final UsageStore store = new UsageStore();
+        private final ConsumptionRecord lineRecord = new ConsumptionRecord();
+        private final TariffEngine tariff = TariffEngine.getInstance();
+        private final long[] priced = new long[4];
+        // Readings of a customer usually follow each other, so the plan lookup is cached
+        private long lastCustomerId = -1;
+        private int lastPlan;
+
+        /**
+         * Creates an accumulator that keeps the priced totals only.
+         */
+        public UsageAccumulator() {
+            this(false);
         }
 
-        // Return the map with aggregated usage data for all customers
-        return usageMap;
+        /**
+         * Creates an accumulator.
+         *
+         * @param keepDailyUsage whether the store also keeps the unpriced usage of every time slot per
+         *                       customer and day, so that {@link UsageStateStore} can price the totals
+         *                       again when the tariff changes
+         */
+        public UsageAccumulator(boolean keepDailyUsage) {
+            if (keepDailyUsage) {
+                store.keepDailyUsage();
+            }
+        }
+
+        /**
+         * Notes the date of a parsed reading as its customer's issue date if it is the customer's first
+         * reading. Call this for every record, before validation, so the issue date matches the first
+         * reading in the input even when that reading is rejected.
+         *
+         * @param record the parsed consumption record
+         * @return true if this record set the issue date of its customer's month
+         */
+        public boolean recordIssueDay(ConsumptionRecord record) {
+            return record.isWellFormed() && store.recordIssueDay(record.customerId(), record.epochDay());
+        }
+
+        /**
+         * Parses a single consumption record line and adds its usage to the customer's totals.
+         *
+         * @param record a consumption record in the format
+         *               "Customer ID,Date,Usage1,Usage2,Usage3,Usage4,Quality,Error Code,Error Description"
+         */
+        public void accept(String record) {
+            lineRecord.reset(record);
+            accept(lineRecord);
+        }
+
+        /**
+         * Adds the usage of a single valid consumption record to its customer's totals.
+         * Records that are not well-formed are ignored.
+         *
+         * @param record the parsed consumption record
+         */
+        @Override
+        public void accept(ConsumptionRecord record) {
+            if (!record.isWellFormed()) {
+                return;
+            }
+            add(record.customerId(), record.epochDay(), record.usage1(), record.usage2(), record.usage3(), record.usage4());
+        }
+
+        /**
+         * Adds the usage of a single valid reading to its customer's totals.
+         *
+         * @param customerId the numeric customer ID
+         * @param epochDay   the reading date, as days since 1970-01-01
+         * @param usage1     usage in the period 00:00 - 05:59
+         * @param usage2     usage in the period 06:00 - 11:59
+         * @param usage3     usage in the period 12:00 - 17:59
+         * @param usage4     usage in the period 18:00 - 23:59
+         */
+        public void add(long customerId, long epochDay, int usage1, int usage2, int usage3, int usage4) {
+            // Split the usage of the current record into daytime and nighttime and price it
+            if (customerId != lastCustomerId) {
+                lastPlan = tariff.planOf(customerId);
+                lastCustomerId = customerId;
+            }
+            tariff.price(lastPlan, epochDay, usage1, usage2, usage3, usage4, priced);
+
+            // Add the priced usage to the customer's totals
+            store.add(customerId, epochDay, priced[TariffEngine.DAY], priced[TariffEngine.NIGHT],
+                    priced[2 + TariffEngine.DAY], priced[2 + TariffEngine.NIGHT]);
+            store.addDailyUsage(customerId, epochDay, usage1, usage2, usage3, usage4);
+        }
+
+        /**
+         * Returns the store holding the usage collected so far.
+         *
+         * @return the usage store
+         */
+        public UsageStore getStore() {
+            return store;
+        }
+
+        /**
+         * Returns the aggregated usage collected so far as a map. This creates one `CustomerUsage`
+         * object per customer; prefer {@link #getStore()} where possible.
+         *
+         * @return a map where the keys are customer IDs and the values are the aggregated `CustomerUsage` objects
+         */
+        public Map<String, CustomerUsage> getUsageMap() {
+            return store.toMap();
+        }
     }
 }
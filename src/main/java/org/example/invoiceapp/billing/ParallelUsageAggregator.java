@@ -0,0 +1,171 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.data.ConsumptionRecordParser;
+import org.example.invoiceapp.data.DataValidator;
+import org.example.invoiceapp.util.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The `ParallelUsageAggregator` class aggregates a consumption file on a fork-join pool.
+ *
+ * <p>
+ * The file is cut into line-aligned byte ranges. Each range is parsed and aggregated into its own
+ * partial {@link UsageStore}; partial results are then merged pairwise, always left range before right
+ * range. This keeps customers, issue dates and rejected records in file order, so the result is the same
+ * as that of the sequential path.
+ * </p>
+ *
+ * <p>
+ * Rejected records are validated again by the caller, which counts them; the records accepted by the
+ * ranges are counted here, once all ranges are merged, in the same `invoiceapp_records_valid_total`
+ * counter as the sequential path uses.
+ * </p>
+ */
+class ParallelUsageAggregator {
+
+    private static final long MIN_RANGE_SIZE = 1 << 20;
+    private static final int RANGES_PER_THREAD = 4;
+    private static final Metrics.Counter VALID_RECORDS = Metrics.counter("invoiceapp_records_valid_total", "Consumption records that passed validation");
+
+    /**
+     * The aggregation result of one byte range, or of several adjacent ranges after merging.
+     */
+    static class Partial {
+        final MonthlyUsageCalculator.UsageAccumulator accumulator;
+        final List<String> rejectedRecords = new ArrayList<>();
+        long validRecords;
+
+        Partial(boolean keepDailyUsage) {
+            accumulator = new MonthlyUsageCalculator.UsageAccumulator(keepDailyUsage);
+        }
+
+        // Appends a partial that covers the ranges following this one
+        Partial merge(Partial next) {
+            accumulator.getStore().mergeFrom(next.accumulator.getStore());
+            rejectedRecords.addAll(next.rejectedRecords);
+            validRecords += next.validRecords;
+            return this;
+        }
+    }
+
+    /**
+     * Aggregates the given file in parallel.
+     *
+     * @param file           the consumption data file
+     * @param from           the first byte to aggregate; it must be the start of a line
+     * @param to             the byte just past the last one to aggregate, capped at the file size
+     * @param parallelism    the number of worker threads
+     * @param keepDailyUsage whether the partial stores keep the unpriced usage per customer and day
+     * @return the merged result of all ranges
+     * @throws IOException if the file cannot be read
+     */
+    static Partial aggregate(Path file, long from, long to, int parallelism, boolean keepDailyUsage) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] boundaries = splitIntoRanges(channel, from, Math.min(to, channel.size()), parallelism * RANGES_PER_THREAD);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                Partial result = pool.invoke(new RangeTask(channel, boundaries, 0, boundaries.length - 1, keepDailyUsage));
+                VALID_RECORDS.add(result.validRecords);
+                return result;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    // Returns ascending range boundaries; range i is [boundaries[i], boundaries[i + 1])
+    private static long[] splitIntoRanges(FileChannel channel, long from, long to, int rangeCount) throws IOException {
+        long size = Math.max(0, to - from);
+        int count = (int) Math.max(1, Math.min(rangeCount, size / MIN_RANGE_SIZE));
+        long[] boundaries = new long[count + 1];
+        boundaries[0] = from;
+        int n = 1;
+        for (int i = 1; i < count; i++) {
+            long boundary = nextLineStart(channel, from + i * (size / count));
+            if (boundary > boundaries[n - 1] && boundary < to) {
+                boundaries[n++] = boundary;
+            }
+        }
+        boundaries[n++] = Math.max(from, to);
+        return Arrays.copyOf(boundaries, n);
+    }
+
+    // Returns the offset just after the first line feed at or after position, or the file size
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long offset = position;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    private static class RangeTask extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+        private final long[] boundaries;
+        private final int from;
+        private final int to;
+        private final boolean keepDailyUsage;
+
+        RangeTask(FileChannel channel, long[] boundaries, int from, int to, boolean keepDailyUsage) {
+            this.channel = channel;
+            this.boundaries = boundaries;
+            this.from = from;
+            this.to = to;
+            this.keepDailyUsage = keepDailyUsage;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                RangeTask left = new RangeTask(channel, boundaries, from, middle, keepDailyUsage);
+                RangeTask right = new RangeTask(channel, boundaries, middle, to, keepDailyUsage);
+                right.fork();
+                Partial result = left.compute();
+                return result.merge(right.join());
+            }
+
+            Partial partial = new Partial(keepDailyUsage);
+            try {
+                ConsumptionRecordParser.parse(channel, boundaries[from], boundaries[to], record -> {
+                    partial.accumulator.recordIssueDay(record);
+                    if (DataValidator.isValid(record)) {
+                        partial.validRecords++;
+                        partial.accumulator.accept(record);
+                    } else {
+                        // Kept aside so that error handling can run sequentially and in file order
+                        partial.rejectedRecords.add(record.line());
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package org.example.invoiceapp.billing;
+
+import com.itextpdf.text.Chunk;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.BaseFont;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PRIndirectReference;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfTemplate;
+import com.itextpdf.text.pdf.PdfWriter;
+import org.example.invoiceapp.data.CustomerUsage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The `PdfBillForm` class renders PDF bills by stamping the customer's values onto a base page whose
+ * static layout is built once per process.
+ *
+ * <p>
+ * The base page is laid out by the same code as a flow-rendered bill, with an empty placeholder where
+ * every customer value goes; the position and font of each placeholder is recorded while the page is
+ * written. Logo, title, labels, table borders and footer are therefore composed and encoded only once.
+ * A bill copies the base page and draws its values at the recorded positions. Values are drawn on a
+ * single line: a value longer than its slot is not wrapped.
+ * </p>
+ *
+ * <p>
+ * The values are drawn with the font subset the base page embeds, so a bill carries a single copy of the
+ * font. The subset is built to cover digits, Latin and Cyrillic letters and the punctuation of the values
+ * besides the static text, which makes it larger than the subset of a flow-rendered bill: a form bill is
+ * about 10% larger than the same bill in flow mode. A bill whose values use other characters, e.g. a name
+ * with accented letters, embeds a second subset for them.
+ * </p>
+ *
+ * <p>
+ * Forms are cached by font and logo path. A form is immutable once built and can be used from several
+ * rendering threads; every bill parses its own copy of the base page.
+ * </p>
+ */
+public class PdfBillForm {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final Map<String, PdfBillForm> FORMS = new ConcurrentHashMap<>();
+    // Fills the placeholder chunks; a no-break space is not trimmed at the end of a line
+    private static final String PLACEHOLDER = "\u00a0";
+    // Characters the values of most bills are written with; their glyphs are embedded with the base page
+    private static final String VALUE_CHARACTERS = "0123456789 .,:;-/×=()'\"&"
+            + "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
+            + "АБВГДЕЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЬЮЯабвгдежзийклмнопрстуфхцчшщъьюяЁёЍѝЫыЭэ";
+
+    /**
+     * The customer-specific values of a bill.
+     */
+    enum Field {
+        ISSUE_DATE, CUSTOMER_NAME, CUSTOMER_ID, PERIOD, YEAR, DAY_USAGE, NIGHT_USAGE, TOTAL_USAGE, DAY_COST, NIGHT_COST, TOTAL_COST
+    }
+
+    /**
+     * Supplies the chunk shown for a field while a bill is laid out.
+     */
+    interface FieldChunks {
+        /**
+         * @param field the field
+         * @param font  the font the field is shown in
+         * @return the chunk, or null to leave out the table cell of an optional field
+         */
+        Chunk chunk(Field field, Font font);
+    }
+
+    private final byte[] basePage;
+    private final float[] x;
+    private final float[] y;
+    private final Font[] fonts;
+
+    private PdfBillForm(byte[] basePage, float[] x, float[] y, Font[] fonts) {
+        this.basePage = basePage;
+        this.x = x;
+        this.y = y;
+        this.fonts = fonts;
+    }
+
+    /**
+     * Returns the form for a font and logo, building its base page on first use.
+     *
+     * @param fontPath the path of the font file
+     * @param logoPath the path of the logo image
+     * @return the cached form
+     * @throws DocumentException if the base page cannot be built
+     * @throws IOException       if the font or logo cannot be read
+     */
+    public static PdfBillForm getInstance(String fontPath, String logoPath) throws DocumentException, IOException {
+        String key = fontPath + '\n' + logoPath;
+        PdfBillForm form = FORMS.get(key);
+        if (form == null) {
+            synchronized (FORMS) {
+                form = FORMS.get(key);
+                if (form == null) {
+                    form = build(fontPath, logoPath);
+                    FORMS.put(key, form);
+                }
+            }
+        }
+        return form;
+    }
+
+    private static PdfBillForm build(String fontPath, String logoPath) throws DocumentException, IOException {
+        PdfResourceCache.BillFonts billFonts = PdfResourceCache.getFonts(fontPath);
+        int count = Field.values().length;
+        float[] x = new float[count];
+        float[] y = new float[count];
+        Font[] fonts = new Font[count];
+        boolean[] placed = new boolean[count];
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+        Document document = new Document();
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, out);
+            writer.setPageEvent(new BillGeneratorTxtAndPDF.FooterHandler(billFonts.sectionTitleFont, billFonts.regularFont) {
+                @Override
+                public void onGenericTag(PdfWriter writer, Document document, Rectangle rect, String text) {
+                    int field = Field.valueOf(text).ordinal();
+                    x[field] = rect.getLeft();
+                    y[field] = rect.getBottom();
+                    placed[field] = writer.getPageNumber() == 1;
+                }
+            });
+            document.open();
+            BillGeneratorTxtAndPDF.addPdfLayout(document, billFonts, logoPath, (field, font) -> {
+                fonts[field.ordinal()] = font;
+                Chunk chunk = new Chunk(PLACEHOLDER, font);
+                chunk.setGenericTag(field.name());
+                return chunk;
+            });
+            // Shown in a form that no page draws, so the font subset of the page covers the values
+            PdfTemplate glyphs = writer.getDirectContent().createTemplate(1, 1);
+            glyphs.beginText();
+            glyphs.setFontAndSize(billFonts.baseFont, 1);
+            glyphs.showText(VALUE_CHARACTERS);
+            glyphs.endText();
+            writer.releaseTemplate(glyphs);
+        } finally {
+            document.close();
+        }
+        for (Field field : Field.values()) {
+            if (!placed[field.ordinal()]) {
+                throw new DocumentException("The bill layout does not place " + field + " on the first page");
+            }
+        }
+        return new PdfBillForm(out.toByteArray(), x, y, fonts);
+    }
+
+    /**
+     * Writes a bill: a copy of the base page with the customer's values stamped on it. The stream is
+     * closed when the document is complete.
+     *
+     * @param out           where the PDF is written
+     * @param customerId    the unique ID of the customer
+     * @param customerName  the name of the customer
+     * @param usage         electricity usage details
+     * @param dayPrice      rate shown for the daytime usage, in lev per kWh
+     * @param nightPrice    rate shown for the nighttime usage, in lev per kWh
+     * @param daytimeCost   cost of daytime electricity usage
+     * @param nighttimeCost cost of nighttime electricity usage
+     * @param totalCost     total electricity cost
+     * @param year          year of the bill
+     * @param issueDate     date the bill is issued
+     * @param periodStart   first day of the billing period, or null if unknown
+     * @param periodEnd     last day of the billing period, or null if unknown
+     * @throws DocumentException if the document cannot be written
+     * @throws IOException       if writing fails
+     */
+    public void write(OutputStream out, String customerId, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost, double nighttimeCost,
+                      double totalCost, String year, String issueDate, LocalDate periodStart, LocalDate periodEnd) throws DocumentException, IOException {
+        String[] values = fieldValues(customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, year, issueDate, periodStart, periodEnd);
+        PdfReader reader = openBasePage();
+        try {
+            PdfStamper stamper = new PdfStamper(reader, out);
+            stamp(stamper.getOverContent(1), values, pageFonts(reader, values));
+            stamper.close();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Opens a new reader on the base page, for importing it into another document.
+     *
+     * @return the reader; the caller closes it
+     * @throws IOException if the base page cannot be parsed
+     */
+    PdfReader openBasePage() throws IOException {
+        return new PdfReader(basePage);
+    }
+
+    /**
+     * Draws the values of a bill at their positions on the base page.
+     *
+     * @param canvas the content of a page that shows the base page
+     * @param values the text of every field, indexed by {@link Field#ordinal()}; null leaves a field empty
+     */
+    void stamp(PdfContentByte canvas, String[] values) {
+        stamp(canvas, values, fonts);
+    }
+
+    private void stamp(PdfContentByte canvas, String[] values, Font[] fonts) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase(values[i], fonts[i]), x[i], y[i], 0);
+            }
+        }
+    }
+
+    /**
+     * Returns the fonts to stamp the values with on a copy of the base page: the font subset the page
+     * already embeds, if it has a glyph for every character of the values, so that no second subset is
+     * embedded. Otherwise, e.g. for a name with letters outside {@link #VALUE_CHARACTERS}, the form's own
+     * fonts, which embed the missing glyphs in a subset of their own.
+     */
+    private Font[] pageFonts(PdfReader reader, String[] values) {
+        PdfDictionary resources = reader.getPageN(1).getAsDict(PdfName.RESOURCES);
+        PdfDictionary pageFonts = resources == null ? null : resources.getAsDict(PdfName.FONT);
+        if (pageFonts == null) {
+            return fonts;
+        }
+        BaseFont baseFont = fonts[0].getBaseFont();
+        BaseFont pageFont = null;
+        for (PdfName name : pageFonts.getKeys()) {
+            PdfObject reference = pageFonts.get(name);
+            PdfDictionary font = pageFonts.getAsDict(name);
+            PdfName fontName = font == null ? null : font.getAsName(PdfName.BASEFONT);
+            // Subset fonts are named with a tag and the font name, e.g. `XCEUFH+DejaVuSans`
+            if (fontName != null && PdfName.decodeName(fontName.toString()).endsWith("+" + baseFont.getPostscriptFontName())
+                    && reference instanceof PRIndirectReference) {
+                pageFont = BaseFont.createFont((PRIndirectReference) reference);
+                break;
+            }
+        }
+        if (pageFont == null) {
+            return fonts;
+        }
+        for (String value : values) {
+            if (value != null) {
+                for (int i = 0; i < value.length(); i++) {
+                    if (!pageFont.charExists(value.charAt(i))) {
+                        return fonts;
+                    }
+                }
+            }
+        }
+        Font[] stamped = new Font[fonts.length];
+        for (int i = 0; i < fonts.length; i++) {
+            stamped[i] = new Font(pageFont, fonts[i].getSize(), fonts[i].getStyle(), fonts[i].getColor());
+        }
+        return stamped;
+    }
+
+    /**
+     * Returns the text of every field of a bill, as shown by both the flow and the form layout.
+     *
+     * @param customerId    the unique ID of the customer
+     * @param customerName  the name of the customer
+     * @param usage         electricity usage details
+     * @param dayPrice      rate shown for the daytime usage, in lev per kWh
+     * @param nightPrice    rate shown for the nighttime usage, in lev per kWh
+     * @param daytimeCost   cost of daytime electricity usage
+     * @param nighttimeCost cost of nighttime electricity usage
+     * @param totalCost     total electricity cost
+     * @param year          year of the bill
+     * @param issueDate     date the bill is issued
+     * @param periodStart   first day of the billing period, or null if unknown
+     * @param periodEnd     last day of the billing period, or null if unknown
+     * @return the values indexed by {@link Field#ordinal()}; the period is null if it is unknown
+     */
+    static String[] fieldValues(String customerId, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost, double nighttimeCost,
+                                double totalCost, String year, String issueDate, LocalDate periodStart, LocalDate periodEnd) {
+        String[] values = new String[Field.values().length];
+        values[Field.ISSUE_DATE.ordinal()] = issueDate;
+        values[Field.CUSTOMER_NAME.ordinal()] = customerName;
+        values[Field.CUSTOMER_ID.ordinal()] = customerId;
+        if (periodStart != null && periodEnd != null) {
+            values[Field.PERIOD.ordinal()] = "Период: " + periodStart.format(DATE_FORMAT) + " - " + periodEnd.format(DATE_FORMAT);
+        }
+        values[Field.YEAR.ordinal()] = year;
+        values[Field.DAY_USAGE.ordinal()] = usage.getDaytimeUsage() + " kWh";
+        values[Field.NIGHT_USAGE.ordinal()] = usage.getNighttimeUsage() + " kWh";
+        values[Field.TOTAL_USAGE.ordinal()] = (usage.getDaytimeUsage() + usage.getNighttimeUsage()) + " kWh";
+        values[Field.DAY_COST.ordinal()] = usage.getDaytimeUsage() + " kWh × " + dayPrice.replace('.', ',') + " лв./kWh = " + String.format("%.2f", daytimeCost) + " лв.";
+        values[Field.NIGHT_COST.ordinal()] = usage.getNighttimeUsage() + " kWh × " + nightPrice.replace('.', ',') + " лв./kWh = " + String.format("%.2f", nighttimeCost) + " лв.";
+        values[Field.TOTAL_COST.ordinal()] = String.format("%.2f", totalCost) + " лв.";
+        return values;
+    }
+}
@@ -0,0 +1,94 @@
+package org.example.invoiceapp.billing;
+
+import com.itextpdf.text.BadElementException;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.pdf.BaseFont;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The `PdfResourceCache` class holds the parsed fonts and the decoded logo used for PDF bills, so they
+ * are read from disk and parsed once per process instead of once per bill.
+ *
+ * <p>
+ * Resources are keyed by their configured path and are safe to use from several rendering threads:
+ * fonts are never modified after creation, and every caller gets its own lightweight copy of the logo
+ * that shares the decoded image data.
+ * </p>
+ */
+public class PdfResourceCache {
+
+    private static final Map<String, BillFonts> FONTS = new ConcurrentHashMap<>();
+    private static final Map<String, Image> LOGOS = new ConcurrentHashMap<>();
+
+    /**
+     * The font variants used on a bill, all derived from the same embedded base font.
+     */
+    public static class BillFonts {
+        public final BaseFont baseFont;
+        public final Font titleFont;
+        public final Font sectionTitleFont;
+        public final Font regularFont;
+        public final Font boldFont;
+
+        BillFonts(BaseFont baseFont) {
+            this.baseFont = baseFont;
+            this.titleFont = new Font(baseFont, 18, Font.BOLD);
+            this.sectionTitleFont = new Font(baseFont, 14, Font.BOLD);
+            this.regularFont = new Font(baseFont, 12);
+            this.boldFont = new Font(baseFont, 12, Font.BOLD);
+        }
+    }
+
+    /**
+     * Returns the bill fonts for a TrueType font file, parsing the file on first use.
+     *
+     * @param fontPath the path of the font file
+     * @return the cached font variants
+     * @throws DocumentException if the font cannot be parsed
+     * @throws IOException       if the font file cannot be read
+     */
+    public static BillFonts getFonts(String fontPath) throws DocumentException, IOException {
+        BillFonts fonts = FONTS.get(fontPath);
+        if (fonts == null) {
+            synchronized (FONTS) {
+                fonts = FONTS.get(fontPath);
+                if (fonts == null) {
+                    fonts = new BillFonts(BaseFont.createFont(fontPath, BaseFont.IDENTITY_H, BaseFont.EMBEDDED));
+                    FONTS.put(fontPath, fonts);
+                }
+            }
+        }
+        return fonts;
+    }
+
+    /**
+     * Returns the logo scaled and aligned for the bill header, decoding the image file on first use.
+     * Each call returns a new `Image` instance that shares the decoded data of the cached one.
+     *
+     * @param logoPath the path of the logo image
+     * @return a copy of the cached logo
+     * @throws BadElementException if the image cannot be decoded
+     * @throws IOException         if the image file cannot be read
+     */
+    public static Image getLogo(String logoPath) throws BadElementException, IOException {
+        Image logo = LOGOS.get(logoPath);
+        if (logo == null) {
+            synchronized (LOGOS) {
+                logo = LOGOS.get(logoPath);
+                if (logo == null) {
+                    logo = Image.getInstance(logoPath);
+                    logo.scaleToFit(100, 100);
+                    logo.setAlignment(Element.ALIGN_CENTER);
+                    LOGOS.put(logoPath, logo);
+                }
+            }
+        }
+        return Image.getInstance(logo);
+    }
+}
@@ -0,0 +1,529 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.util.ConfigLoader;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.*;
+
+/**
+ * The `TariffEngine` class prices consumption readings according to time-of-use tariff plans.
+ *
+ * <p>
+ * A plan splits the four reading slots (Usage1 00:00 - 05:59, Usage2 06:00 - 11:59, Usage3 12:00 - 17:59
+ * and Usage4 18:00 - 23:59) into one or more bands. Every band is shown on the bill as daytime or
+ * nighttime usage, and has a price per kWh that can change from a given date on. Customers are billed
+ * on the default plan unless they are assigned another one.
+ * </p>
+ *
+ * <p>
+ * The tariff file is read once and compiled into flat primitive tables: the bill group of every slot per
+ * plan, the start dates of every price period, and the price of every slot per period. Pricing a reading
+ * is then a binary search over the plan's price periods and four multiplications. Prices and costs are
+ * fixed-point integers in ten-thousandths of a lev ({@link #TICKS_PER_LEV}), so costs add up exactly
+ * however many readings a bill covers.
+ * </p>
+ *
+ * <p>
+ * The tariff file (`tariff.file.path`) has one directive per line; empty lines and lines starting with
+ * `#` are ignored:
+ * </p>
+ * <pre>
+ * plan tou peak:day:2 shoulder:day:3 night:night:1+4
+ * price tou 2023-01-01 peak=0.18 shoulder=0.12 night=0.05
+ * price tou 2024-07-01 peak=0.20 shoulder=0.13 night=0.06
+ * default tou
+ * </pre>
+ * <p>
+ * A `plan` line names the plan and lists its bands as `name:day|night:slots`; every slot belongs to
+ * exactly one band. A `price` line sets the price of every band of a plan from a date on, with at most
+ * four decimals; the earliest prices of a plan also apply to readings before their date. `default` names
+ * the plan of customers without an assignment, the first plan if it is missing. The optional
+ * `tariff.customers.path` file assigns plans to customers, one `customerId,plan` per line.
+ * </p>
+ *
+ * <p>
+ * Without a tariff file the engine has a single plan, `standard`, with the daytime slots priced at
+ * `day.price` and the nighttime slots at `night.price`.
+ * </p>
+ */
+public class TariffEngine {
+
+    private static final Logger LOGGER = Logger.getLogger(TariffEngine.class.getName());
+    private static final String TARIFF_FILE = ConfigLoader.getProperty("tariff.file.path");
+    private static final String CUSTOMERS_FILE = ConfigLoader.getProperty("tariff.customers.path");
+
+    /**
+     * Fixed-point scale of prices and costs: one lev is 10,000 ticks.
+     */
+    public static final long TICKS_PER_LEV = 10_000;
+
+    /**
+     * Bill group of the daytime bands; also the index of the daytime usage and cost in a priced reading.
+     */
+    public static final int DAY = 0;
+
+    /**
+     * Bill group of the nighttime bands; also the index of the nighttime usage and cost in a priced reading.
+     */
+    public static final int NIGHT = 1;
+
+    private static final int SLOTS = 4;
+    private static volatile TariffEngine instance;
+
+    private final String[] planNames;
+    private final int defaultPlan;
+    // Bill group of every slot, at plan * SLOTS + slot
+    private final byte[] slotGroups;
+    // The price periods of plan p are periodOffsets[p] until periodOffsets[p + 1], sorted by start day
+    private final int[] periodOffsets;
+    private final int[] periodStarts;
+    // Price in ticks per kWh of every slot, at period * SLOTS + slot
+    private final long[] slotPrices;
+    // Customers with an assigned plan, sorted by ID
+    private final long[] customerIds;
+    private final int[] customerPlans;
+    private final long fingerprint;
+
+    private TariffEngine(String[] planNames, int defaultPlan, byte[] slotGroups, int[] periodOffsets, int[] periodStarts, long[] slotPrices,
+                         long[] customerIds, int[] customerPlans) {
+        this.planNames = planNames;
+        this.defaultPlan = defaultPlan;
+        this.slotGroups = slotGroups;
+        this.periodOffsets = periodOffsets;
+        this.periodStarts = periodStarts;
+        this.slotPrices = slotPrices;
+        this.customerIds = customerIds;
+        this.customerPlans = customerPlans;
+        this.fingerprint = fingerprint();
+    }
+
+    /**
+     * Returns the engine for the configured tariff, compiling it on first use.
+     *
+     * @return the shared engine
+     * @throws IllegalStateException if the tariff or customer file cannot be read or is invalid; bills
+     *                               are not priced with a tariff other than the configured one
+     */
+    public static TariffEngine getInstance() {
+        TariffEngine engine = instance;
+        if (engine == null) {
+            synchronized (TariffEngine.class) {
+                engine = instance;
+                if (engine == null) {
+                    engine = loadConfigured();
+                    instance = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    private static TariffEngine loadConfigured() {
+        try {
+            String tariff = isSet(TARIFF_FILE)
+                    ? Files.readString(Paths.get(TARIFF_FILE.trim()), StandardCharsets.UTF_8)
+                    : standardTariff(ConfigLoader.getProperty("day.price"), ConfigLoader.getProperty("night.price"));
+            String customers = isSet(CUSTOMERS_FILE) ? Files.readString(Paths.get(CUSTOMERS_FILE.trim()), StandardCharsets.UTF_8) : null;
+            TariffEngine engine = compile(tariff, customers);
+            LOGGER.info("Tariff compiled: " + engine.planNames.length + " plan(s), " + engine.customerIds.length + " customer assignment(s).");
+            return engine;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalStateException("Failed to load the tariff", e);
+        }
+    }
+
+    private static boolean isSet(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    // The built-in plan: Usage2 and Usage3 are daytime, Usage1 and Usage4 nighttime
+    private static String standardTariff(String dayPrice, String nightPrice) {
+        return "plan standard day:day:2+3 night:night:1+4\n"
+                + "price standard 1970-01-01 day=" + dayPrice.trim() + " night=" + nightPrice.trim() + "\n";
+    }
+
+    /**
+     * Compiles a tariff.
+     *
+     * @param tariff    the tariff directives, in the format of the tariff file
+     * @param customers the plan assignments, one `customerId,plan` per line, or null for none
+     * @return the compiled engine
+     * @throws IllegalArgumentException if the tariff or the assignments are invalid
+     */
+    public static TariffEngine compile(String tariff, String customers) {
+        Map<String, PlanSpec> plans = new LinkedHashMap<>();
+        String defaultName = null;
+        String[] lines = tariff.split("\r?\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            try {
+                switch (words[0]) {
+                    case "plan" -> {
+                        PlanSpec plan = PlanSpec.parse(words);
+                        if (plans.putIfAbsent(plan.name, plan) != null) {
+                            throw new IllegalArgumentException("plan " + plan.name + " is defined twice");
+                        }
+                    }
+                    case "price" -> {
+                        PlanSpec plan = words.length > 1 ? plans.get(words[1]) : null;
+                        if (plan == null) {
+                            throw new IllegalArgumentException("prices for an undefined plan");
+                        }
+                        plan.addPrices(words);
+                    }
+                    case "default" -> {
+                        if (words.length != 2 || !plans.containsKey(words[1])) {
+                            throw new IllegalArgumentException("default names an undefined plan");
+                        }
+                        defaultName = words[1];
+                    }
+                    default -> throw new IllegalArgumentException("unknown directive " + words[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid tariff line " + (i + 1) + ": " + e.getMessage() + ": " + line, e);
+            }
+        }
+        if (plans.isEmpty()) {
+            throw new IllegalArgumentException("The tariff defines no plan");
+        }
+
+        // Flatten the plans into the lookup tables
+        List<String> names = new ArrayList<>(plans.keySet());
+        int periodCount = 0;
+        for (PlanSpec plan : plans.values()) {
+            if (plan.prices.isEmpty()) {
+                throw new IllegalArgumentException("Plan " + plan.name + " has no prices");
+            }
+            periodCount += plan.prices.size();
+        }
+        byte[] slotGroups = new byte[names.size() * SLOTS];
+        int[] periodOffsets = new int[names.size() + 1];
+        int[] periodStarts = new int[periodCount];
+        long[] slotPrices = new long[periodCount * SLOTS];
+        int period = 0;
+        for (int p = 0; p < names.size(); p++) {
+            PlanSpec plan = plans.get(names.get(p));
+            periodOffsets[p] = period;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slotGroups[p * SLOTS + slot] = plan.bandGroups[plan.slotBands[slot]];
+            }
+            for (Map.Entry<Integer, long[]> prices : plan.prices.entrySet()) {
+                periodStarts[period] = prices.getKey();
+                for (int slot = 0; slot < SLOTS; slot++) {
+                    slotPrices[period * SLOTS + slot] = prices.getValue()[plan.slotBands[slot]];
+                }
+                period++;
+            }
+        }
+        periodOffsets[names.size()] = period;
+
+        // Sort the assignments by customer ID; a later line for the same customer wins
+        Map<Long, Integer> assignments = new HashMap<>();
+        if (customers != null) {
+            String[] customerLines = customers.split("\r?\n");
+            for (int i = 0; i < customerLines.length; i++) {
+                String line = customerLines[i].trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                int plan = fields.length == 2 ? names.indexOf(fields[1].trim()) : -1;
+                if (plan < 0) {
+                    throw new IllegalArgumentException("Invalid tariff assignment on line " + (i + 1) + ": " + line);
+                }
+                try {
+                    assignments.put(Long.parseLong(fields[0].trim()), plan);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid customer ID on tariff assignment line " + (i + 1) + ": " + line, e);
+                }
+            }
+        }
+        long[] customerIds = new long[assignments.size()];
+        int index = 0;
+        for (long customerId : assignments.keySet()) {
+            customerIds[index++] = customerId;
+        }
+        Arrays.sort(customerIds);
+        int[] customerPlans = new int[customerIds.length];
+        for (int i = 0; i < customerIds.length; i++) {
+            customerPlans[i] = assignments.get(customerIds[i]);
+        }
+
+        int defaultPlan = defaultName == null ? 0 : names.indexOf(defaultName);
+        return new TariffEngine(names.toArray(new String[0]), defaultPlan, slotGroups, periodOffsets, periodStarts, slotPrices, customerIds, customerPlans);
+    }
+
+    // A plan as declared in the tariff file, before it is flattened
+    private static class PlanSpec {
+        final String name;
+        final List<String> bands = new ArrayList<>();
+        byte[] bandGroups;
+        final int[] slotBands = new int[SLOTS];
+        // Band prices in ticks, by start day
+        final TreeMap<Integer, long[]> prices = new TreeMap<>();
+
+        PlanSpec(String name) {
+            this.name = name;
+        }
+
+        // plan <name> <band>:<day|night>:<slot>[+<slot>...] ...
+        static PlanSpec parse(String[] words) {
+            if (words.length < 3) {
+                throw new IllegalArgumentException("a plan needs a name and at least one band");
+            }
+            PlanSpec plan = new PlanSpec(words[1]);
+            Arrays.fill(plan.slotBands, -1);
+            plan.bandGroups = new byte[words.length - 2];
+            for (int w = 2; w < words.length; w++) {
+                String[] parts = words[w].split(":");
+                if (parts.length != 3 || plan.bands.contains(parts[0])) {
+                    throw new IllegalArgumentException("invalid or repeated band " + words[w]);
+                }
+                int band = plan.bands.size();
+                plan.bands.add(parts[0]);
+                plan.bandGroups[band] = (byte) switch (parts[1]) {
+                    case "day" -> DAY;
+                    case "night" -> NIGHT;
+                    default -> throw new IllegalArgumentException("band " + parts[0] + " must be day or night");
+                };
+                for (String slotText : parts[2].split("\\+")) {
+                    int slot = slotText.length() == 1 ? slotText.charAt(0) - '1' : -1;
+                    if (slot < 0 || slot >= SLOTS || plan.slotBands[slot] >= 0) {
+                        throw new IllegalArgumentException("slot " + slotText + " of band " + parts[0] + " is not a free slot 1-4");
+                    }
+                    plan.slotBands[slot] = band;
+                }
+            }
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (plan.slotBands[slot] < 0) {
+                    throw new IllegalArgumentException("slot " + (slot + 1) + " is not in any band");
+                }
+            }
+            return plan;
+        }
+
+        // price <plan> <yyyy-MM-dd> <band>=<price> ...
+        void addPrices(String[] words) {
+            if (words.length != 3 + bands.size()) {
+                throw new IllegalArgumentException("every band of plan " + name + " needs exactly one price");
+            }
+            int startDay;
+            try {
+                startDay = (int) LocalDate.parse(words[2]).toEpochDay();
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("invalid date " + words[2], e);
+            }
+            long[] bandPrices = new long[bands.size()];
+            boolean[] priced = new boolean[bands.size()];
+            for (int w = 3; w < words.length; w++) {
+                int separator = words[w].indexOf('=');
+                int band = separator > 0 ? bands.indexOf(words[w].substring(0, separator)) : -1;
+                if (band < 0 || priced[band]) {
+                    throw new IllegalArgumentException("invalid or repeated band price " + words[w]);
+                }
+                bandPrices[band] = toTicks(words[w].substring(separator + 1));
+                priced[band] = true;
+            }
+            if (prices.put(startDay, bandPrices) != null) {
+                throw new IllegalArgumentException("plan " + name + " already has prices from " + words[2]);
+            }
+        }
+    }
+
+    // Converts a price in lev to ticks; more than four decimals cannot be represented exactly
+    private static long toTicks(String price) {
+        try {
+            return new BigDecimal(price).movePointRight(4).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("price " + price + " is not a number with at most four decimals", e);
+        }
+    }
+
+    /**
+     * Returns the plan a customer is billed on.
+     *
+     * @param customerId the numeric customer ID
+     * @return the plan index
+     */
+    public int planOf(long customerId) {
+        if (customerIds.length == 0) {
+            return defaultPlan;
+        }
+        int index = Arrays.binarySearch(customerIds, customerId);
+        return index >= 0 ? customerPlans[index] : defaultPlan;
+    }
+
+    /**
+     * Returns the plan a customer is billed on, by the text of the customer ID. Customers whose ID is
+     * not numeric are billed on the default plan.
+     *
+     * @param customerId the customer ID
+     * @return the plan index
+     */
+    public int planOf(String customerId) {
+        try {
+            return planOf(Long.parseLong(customerId));
+        } catch (NumberFormatException e) {
+            return defaultPlan;
+        }
+    }
+
+    /**
+     * Returns the name of a plan.
+     *
+     * @param plan the plan index
+     * @return the name used in the tariff file
+     */
+    public String planName(int plan) {
+        return planNames[plan];
+    }
+
+    /**
+     * Prices one reading. The usage and cost of every slot are added to the bill group of the slot's band.
+     *
+     * @param plan     the plan index, see {@link #planOf(long)}
+     * @param epochDay the reading date, as days since 1970-01-01
+     * @param usage1   usage from 00:00 to 05:59 (in kWh)
+     * @param usage2   usage from 06:00 to 11:59 (in kWh)
+     * @param usage3   usage from 12:00 to 17:59 (in kWh)
+     * @param usage4   usage from 18:00 to 23:59 (in kWh)
+     * @param priced   receives the daytime and nighttime usage at {@link #DAY} and {@link #NIGHT}, and
+     *                 their costs in ticks at 2 + {@link #DAY} and 2 + {@link #NIGHT}; overwritten
+     */
+    public void price(int plan, long epochDay, int usage1, int usage2, int usage3, int usage4, long[] priced) {
+        int prices = period(plan, epochDay) * SLOTS;
+        int groups = plan * SLOTS;
+        priced[0] = 0;
+        priced[1] = 0;
+        priced[2] = 0;
+        priced[3] = 0;
+        int group = slotGroups[groups];
+        priced[group] += usage1;
+        priced[2 + group] += usage1 * slotPrices[prices];
+        group = slotGroups[groups + 1];
+        priced[group] += usage2;
+        priced[2 + group] += usage2 * slotPrices[prices + 1];
+        group = slotGroups[groups + 2];
+        priced[group] += usage3;
+        priced[2 + group] += usage3 * slotPrices[prices + 2];
+        group = slotGroups[groups + 3];
+        priced[group] += usage4;
+        priced[2 + group] += usage4 * slotPrices[prices + 3];
+    }
+
+    /**
+     * Returns the price per kWh of a bill group on a date: the price of the group's first slot. Used to
+     * price usage that is only known as daytime and nighttime totals, and to show a rate for a group
+     * without usage.
+     *
+     * @param plan     the plan index
+     * @param group    {@link #DAY} or {@link #NIGHT}
+     * @param epochDay the date, as days since 1970-01-01
+     * @return the price in ticks per kWh, or 0 if no slot of the plan belongs to the group
+     */
+    public long rate(int plan, int group, long epochDay) {
+        int prices = period(plan, epochDay) * SLOTS;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (slotGroups[plan * SLOTS + slot] == group) {
+                return slotPrices[prices + slot];
+            }
+        }
+        return 0;
+    }
+
+    // The latest price period of the plan starting on or before the day, or the plan's first one
+    private int period(int plan, long epochDay) {
+        int first = periodOffsets[plan];
+        int last = periodOffsets[plan + 1];
+        if (last - first == 1) {
+            return first;
+        }
+        int index = Arrays.binarySearch(periodStarts, first, last, (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, epochDay)));
+        return index >= 0 ? index : Math.max(first, -index - 2);
+    }
+
+    /**
+     * Returns a value that changes whenever the compiled tariff changes, so that costs computed with
+     * another tariff can be recognized.
+     *
+     * @return the fingerprint of the tables
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    // FNV-1a over the compiled tables
+    private long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, defaultPlan);
+        for (byte group : slotGroups) {
+            hash = mix(hash, group);
+        }
+        for (int offset : periodOffsets) {
+            hash = mix(hash, offset);
+        }
+        for (int start : periodStarts) {
+            hash = mix(hash, start);
+        }
+        for (long price : slotPrices) {
+            hash = mix(hash, price);
+        }
+        for (int i = 0; i < customerIds.length; i++) {
+            hash = mix(mix(hash, customerIds[i]), customerPlans[i]);
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Converts a cost in ticks to lev.
+     *
+     * @param ticks the cost in ten-thousandths of a lev
+     * @return the cost in lev
+     */
+    public static double toLev(long ticks) {
+        return ticks / (double) TICKS_PER_LEV;
+    }
+
+    /**
+     * Formats the rate shown next to a usage total on a bill: the average price per kWh of the usage,
+     * rounded half up to four decimals, with at least two decimals and a `.` decimal separator.
+     *
+     * @param costTicks   the cost of the usage in ticks
+     * @param usage       the usage (in kWh)
+     * @param rateIfEmpty the price in ticks per kWh shown when there is no usage
+     * @return the rate in lev per kWh, e.g. "0.15"
+     */
+    public static String formatRate(long costTicks, long usage, long rateIfEmpty) {
+        BigDecimal rate = usage == 0
+                ? BigDecimal.valueOf(rateIfEmpty, 4)
+                : BigDecimal.valueOf(costTicks).divide(BigDecimal.valueOf(usage).scaleByPowerOfTen(4), 4, RoundingMode.HALF_UP);
+        rate = rate.stripTrailingZeros();
+        return rate.setScale(Math.max(2, rate.scale())).toPlainString();
+    }
+}
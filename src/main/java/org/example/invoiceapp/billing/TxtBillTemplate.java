@@ -0,0 +1,250 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.data.CustomerUsage;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.DecimalFormatSymbols;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The `TxtBillTemplate` class renders the text layout of a bill from a template that is compiled once.
+ *
+ * <p>
+ * A template is plain text with `${field}` placeholders. Compiling splits every line into literal and
+ * field segments, so rendering only appends strings and numbers to a buffer; no format string is parsed
+ * per bill. Lines are ended with the platform line separator, whatever the line endings of the template.
+ * A line that uses `${periodStart}` or `${periodEnd}` is left out when the billing period is unknown.
+ * </p>
+ *
+ * <p>
+ * The fields are `customerName`, `customerId`, `periodStart` and `periodEnd` (`dd.MM.yyyy`),
+ * `dayUsage`, `nightUsage` and `totalUsage` (whole kWh), `dayPrice` and `nightPrice` (the tariff rate
+ * in lev per kWh, as given), and `dayCost`, `nightCost` and `totalCost` (two decimals, rounded half up
+ * with the decimal separator of the default locale). The output is the
+ * same as formatting the fields with `%d`, `%.2f` and `%s`. {@link #DEFAULT} is the built-in bill
+ * layout; another layout can be loaded with {@link #load(Path)}.
+ * </p>
+ */
+public class TxtBillTemplate {
+
+    private static final String SEPARATOR = "=========================================";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    // Symbols of the last default locale seen; looked up again only when the default locale changes
+    private static volatile LocaleSymbols cachedSymbols = LocaleSymbols.of(Locale.getDefault(Locale.Category.FORMAT));
+
+    private record LocaleSymbols(Locale locale, DecimalFormatSymbols symbols) {
+        static LocaleSymbols of(Locale locale) {
+            return new LocaleSymbols(locale, DecimalFormatSymbols.getInstance(locale));
+        }
+    }
+
+    /**
+     * The built-in bill layout. Labels are padded to 20 characters.
+     */
+    public static final TxtBillTemplate DEFAULT = compile(String.join("\n",
+            SEPARATOR,
+            "              ФАКТУРА                   ",
+            SEPARATOR,
+            "Име на клиент       : ${customerName}",
+            "Клиентски номер     : ${customerId}",
+            "Период              : ${periodStart} - ${periodEnd}",
+            SEPARATOR,
+            "Дневна консумация   : ${dayUsage} kWh @ ${dayPrice} лв./kWh = ${dayCost} лв.",
+            "Нощна консумация    : ${nightUsage} kWh @ ${nightPrice} лв./kWh = ${nightCost} лв.",
+            SEPARATOR,
+            "Общо потребление    : ${totalUsage} kWh",
+            "Обща сума           : ${totalCost} лв.",
+            SEPARATOR));
+
+    private enum Field {
+        CUSTOMER_NAME("customerName"), CUSTOMER_ID("customerId"), PERIOD_START("periodStart"), PERIOD_END("periodEnd"),
+        DAY_USAGE("dayUsage"), NIGHT_USAGE("nightUsage"), TOTAL_USAGE("totalUsage"), DAY_PRICE("dayPrice"), NIGHT_PRICE("nightPrice"),
+        DAY_COST("dayCost"), NIGHT_COST("nightCost"), TOTAL_COST("totalCost");
+
+        private final String placeholder;
+
+        Field(String placeholder) {
+            this.placeholder = placeholder;
+        }
+
+        static Field of(String placeholder) {
+            for (Field field : values()) {
+                if (field.placeholder.equals(placeholder)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("Unknown bill template field: ${" + placeholder + "}");
+        }
+    }
+
+    // One template line: literals[i] precedes fields[i]; the last literal ends the line
+    private static class Line {
+        final String[] literals;
+        final Field[] fields;
+        final boolean needsPeriod;
+
+        Line(List<String> literals, List<Field> fields) {
+            this.literals = literals.toArray(new String[0]);
+            this.fields = fields.toArray(new Field[0]);
+            this.needsPeriod = fields.contains(Field.PERIOD_START) || fields.contains(Field.PERIOD_END);
+        }
+    }
+
+    private final Line[] lines;
+    private final String lineSeparator = System.lineSeparator();
+
+    private TxtBillTemplate(List<Line> lines) {
+        this.lines = lines.toArray(new Line[0]);
+    }
+
+    /**
+     * Compiles a template.
+     *
+     * @param template the template text; a trailing line break does not add an empty line
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template uses an unknown or unterminated placeholder
+     */
+    public static TxtBillTemplate compile(String template) {
+        String[] textLines = template.split("\r?\n", -1);
+        int count = textLines.length;
+        if (count > 0 && textLines[count - 1].isEmpty()) {
+            count--;
+        }
+        List<Line> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String text = textLines[i];
+            List<String> literals = new ArrayList<>();
+            List<Field> fields = new ArrayList<>();
+            int position = 0;
+            int start;
+            while ((start = text.indexOf("${", position)) >= 0) {
+                int end = text.indexOf('}', start + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated placeholder on template line " + (i + 1) + ": " + text);
+                }
+                literals.add(text.substring(position, start));
+                fields.add(Field.of(text.substring(start + 2, end)));
+                position = end + 1;
+            }
+            literals.add(text.substring(position));
+            lines.add(new Line(literals, fields));
+        }
+        return new TxtBillTemplate(lines);
+    }
+
+    /**
+     * Loads and compiles a UTF-8 template file.
+     *
+     * @param file the template file
+     * @return the compiled template
+     * @throws IOException              if the file cannot be read
+     * @throws IllegalArgumentException if the template uses an unknown or unterminated placeholder
+     */
+    public static TxtBillTemplate load(Path file) throws IOException {
+        return compile(Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Renders a bill, appending it to the buffer.
+     *
+     * @param out           the buffer the bill is appended to
+     * @param customerId    the unique ID of the customer
+     * @param customerName  the name of the customer
+     * @param usage         electricity usage details
+     * @param dayPrice      rate shown for the daytime usage, in lev per kWh
+     * @param nightPrice    rate shown for the nighttime usage, in lev per kWh
+     * @param daytimeCost   cost of daytime electricity usage
+     * @param nighttimeCost cost of nighttime electricity usage
+     * @param totalCost     total electricity cost
+     * @param periodStart   first day of the billing period, or null if unknown
+     * @param periodEnd     last day of the billing period, or null if unknown
+     */
+    public void render(StringBuilder out, String customerId, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost,
+                       double nighttimeCost, double totalCost, LocalDate periodStart, LocalDate periodEnd) {
+        boolean hasPeriod = periodStart != null && periodEnd != null;
+        // Read per render, like String.format does, so a changed default locale is honoured
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        DecimalFormatSymbols symbols = symbolsFor(locale);
+        for (Line line : lines) {
+            if (line.needsPeriod && !hasPeriod) {
+                continue;
+            }
+            for (int i = 0; i < line.fields.length; i++) {
+                out.append(line.literals[i]);
+                switch (line.fields[i]) {
+                    case CUSTOMER_NAME -> out.append(customerName);
+                    case CUSTOMER_ID -> out.append(customerId);
+                    case PERIOD_START -> appendDate(out, periodStart);
+                    case PERIOD_END -> appendDate(out, periodEnd);
+                    case DAY_USAGE -> appendInteger(out, usage.getDaytimeUsage(), symbols, locale);
+                    case NIGHT_USAGE -> appendInteger(out, usage.getNighttimeUsage(), symbols, locale);
+                    case TOTAL_USAGE -> appendInteger(out, usage.getDaytimeUsage() + usage.getNighttimeUsage(), symbols, locale);
+                    case DAY_PRICE -> out.append(dayPrice);
+                    case NIGHT_PRICE -> out.append(nightPrice);
+                    case DAY_COST -> appendAmount(out, daytimeCost, symbols, locale);
+                    case NIGHT_COST -> appendAmount(out, nighttimeCost, symbols, locale);
+                    case TOTAL_COST -> appendAmount(out, totalCost, symbols, locale);
+                }
+            }
+            out.append(line.literals[line.fields.length]).append(lineSeparator);
+        }
+    }
+
+    private static DecimalFormatSymbols symbolsFor(Locale locale) {
+        LocaleSymbols cached = cachedSymbols;
+        if (!cached.locale().equals(locale)) {
+            cached = LocaleSymbols.of(locale);
+            cachedSymbols = cached;
+        }
+        return cached.symbols();
+    }
+
+    // Same as String.format("%d", value)
+    private static void appendInteger(StringBuilder out, int value, DecimalFormatSymbols symbols, Locale locale) {
+        if (symbols.getZeroDigit() != '0') {
+            out.append(String.format(locale, "%d", value));
+            return;
+        }
+        out.append(value);
+    }
+
+    // Same as String.format("%.2f", value): the shortest decimal form of the double, rounded half up
+    private static void appendAmount(StringBuilder out, double value, DecimalFormatSymbols symbols, Locale locale) {
+        if (symbols.getZeroDigit() != '0' || !Double.isFinite(value)) {
+            out.append(String.format(locale, "%.2f", value));
+            return;
+        }
+        BigDecimal rounded = new BigDecimal(Double.toString(value)).setScale(2, RoundingMode.HALF_UP);
+        if (rounded.signum() == 0 && Double.doubleToRawLongBits(value) < 0) {
+            out.append('-');
+        }
+        String text = rounded.toPlainString();
+        char separator = symbols.getDecimalSeparator();
+        out.append(separator == '.' ? text : text.replace('.', separator));
+    }
+
+    // Same as formatting with the `dd.MM.yyyy` pattern
+    private static void appendDate(StringBuilder out, LocalDate date) {
+        int year = date.getYear();
+        if (year < 1000 || year > 9999) {
+            out.append(date.format(DATE_FORMAT));
+            return;
+        }
+        appendTwoDigits(out, date.getDayOfMonth()).append('.');
+        appendTwoDigits(out, date.getMonthValue()).append('.').append(year);
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder out, int value) {
+        return out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
@@ -0,0 +1,506 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.util.DateCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.logging.*;
+
+/**
+ * The `UsageStateStore` class persists the running totals per customer and month of the consumption files
+ * billed so far, so that a run only aggregates the readings it has not seen yet.
+ *
+ * <p>
+ * The state is a list of drops, one per consumption file delivered, in the order they were billed. Each
+ * drop keeps its own totals and a watermark: the file name, the number of bytes already aggregated, the
+ * CRC-32 checksum of those bytes and the dates of its first and last valid reading. {@link #plan(Path)}
+ * checks a new file against the watermarks. If it still starts with exactly the bytes of a drop, it is
+ * that drop with readings appended, and only the rest of it needs to be read. Otherwise the whole file is
+ * aggregated and {@link #apply(Plan, UsageStore)} decides what it is: a drop with the same name and the
+ * same first reading date has been delivered again with changes, e.g. a corrected reading, and its totals
+ * are replaced; any other file is a new drop whose usage is added to the totals, so daily drops add up to
+ * the monthly bill.
+ * </p>
+ *
+ * <p>
+ * Next to its priced totals, each drop keeps the unpriced usage of every time slot per customer and day.
+ * When the {@link TariffEngine} tariff has changed since the totals were priced, {@link #load(Path, TariffEngine)}
+ * prices them again from it, so the usage billed so far is kept at the new prices. State written before
+ * the daily usage was kept cannot be priced again; then {@link #needsFullRecompute()} is true and no file
+ * is aggregated until the state file is removed and the drops are delivered again.
+ * </p>
+ *
+ * <p>
+ * The state also records which customers' months have changed since their bills were last rendered:
+ * those a drop added to or replaced, and all of them after a tariff change. {@link #getChangedTotals()}
+ * returns only their totals, so a run renders only the bills its drops changed, and
+ * {@link #markRendered(Collection)} clears them once the bills are rendered. Since the record is saved
+ * with the drops, the bills of a run that stops before rendering are rendered by the next run.
+ * </p>
+ *
+ * <p>
+ * Drops whose readings all lie more than one month before the latest reading are forgotten, so the state
+ * covers the current and the previous billing month. The state is written to a single binary file,
+ * replaced atomically by {@link #save()}. A missing or unreadable state file is treated as empty state.
+ * </p>
+ */
+public class UsageStateStore {
+
+    private static final Logger LOGGER = Logger.getLogger(UsageStateStore.class.getName());
+    private static final int MAGIC = 0x49415553; // "IAUS"
+    private static final int VERSION = 6;
+    // Version 4 drops have no daily usage; before version 6 no changed buckets are recorded
+    private static final int FIRST_READABLE_VERSION = 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path stateFile;
+    private final TariffEngine tariff;
+    private final List<Drop> drops = new ArrayList<>();
+    private UsageStore totals;
+    // The buckets whose bills have not been rendered since they changed; only their keys are used
+    private UsageStore changed = new UsageStore();
+    private long tariffFingerprint;
+    private boolean needsFullRecompute;
+
+    // One consumption file delivered and its share of the totals
+    private static class Drop {
+        String fileName;
+        long offset;
+        long checksum;
+        boolean endsWithLineFeed;
+        int firstDay;
+        int lastDay;
+        UsageStore usage;
+    }
+
+    /**
+     * Describes which part of a consumption file has to be aggregated, as decided by {@link #plan(Path)}.
+     */
+    public static class Plan {
+        private final String fileName;
+        private final long from;
+        private final long to;
+        private final int drop;
+        private final long checksum;
+        private final boolean endsWithLineFeed;
+
+        private Plan(String fileName, long from, long to, int drop, long checksum, boolean endsWithLineFeed) {
+            this.fileName = fileName;
+            this.from = from;
+            this.to = to;
+            this.drop = drop;
+            this.checksum = checksum;
+            this.endsWithLineFeed = endsWithLineFeed;
+        }
+
+        /** @return the first byte to aggregate; always the start of a line */
+        public long getFrom() {
+            return from;
+        }
+
+        /** @return the byte just past the last one to aggregate, i.e. the file size when it was planned */
+        public long getTo() {
+            return to;
+        }
+
+        /**
+         * @return true if the whole file is aggregated, as a new drop or as a changed one; false if the
+         * file continues a drop already billed
+         */
+        public boolean isFullRecompute() {
+            return drop < 0;
+        }
+    }
+
+    private UsageStateStore(Path stateFile, TariffEngine tariff) {
+        this.stateFile = stateFile;
+        this.tariff = tariff;
+        this.totals = new UsageStore();
+    }
+
+    /**
+     * Loads the state saved at the given path, priced with the configured tariff, see
+     * {@link #load(Path, TariffEngine)}.
+     *
+     * @param stateFile the state file
+     * @return the loaded state
+     */
+    public static UsageStateStore load(Path stateFile) {
+        return load(stateFile, TariffEngine.getInstance());
+    }
+
+    /**
+     * Loads the state saved at the given path. If the file does not exist or cannot be read, the returned
+     * store is empty, so the next consumption file is aggregated in full. If the totals were priced with a
+     * different tariff, they are priced again from the daily usage of the drops.
+     *
+     * @param stateFile the state file
+     * @param tariff    the tariff the readings of this run are priced with
+     * @return the loaded state
+     */
+    public static UsageStateStore load(Path stateFile, TariffEngine tariff) {
+        UsageStateStore state = new UsageStateStore(stateFile, tariff);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version < FIRST_READABLE_VERSION || version > VERSION) {
+                throw new IOException("Not a usage state file");
+            }
+            long tariffFingerprint = in.readLong();
+            int count = in.readInt();
+            List<Drop> drops = new ArrayList<>(Math.max(0, count));
+            for (int i = 0; i < count; i++) {
+                Drop drop = new Drop();
+                drop.fileName = in.readUTF();
+                drop.offset = in.readLong();
+                drop.checksum = in.readLong();
+                drop.endsWithLineFeed = in.readBoolean();
+                drop.firstDay = in.readInt();
+                drop.lastDay = in.readInt();
+                drop.usage = UsageStore.readFrom(in);
+                if (version >= 5 && in.readBoolean()) {
+                    drop.usage.setDailyUsage(DailyUsage.readFrom(in));
+                }
+                drops.add(drop);
+            }
+            if (version >= 6) {
+                state.changed = UsageStore.readFrom(in);
+            }
+            state.tariffFingerprint = tariffFingerprint;
+            state.drops.addAll(drops);
+            state.repriceIfTariffChanged();
+            state.sumDrops();
+        } catch (NoSuchFileException e) {
+            LOGGER.info("No usage state found at " + stateFile + ", the consumption file is aggregated in full.");
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read usage state " + stateFile + ", the consumption file is aggregated in full", e);
+        }
+        return state;
+    }
+
+    // Prices the totals of every drop again if they were priced with another tariff
+    private void repriceIfTariffChanged() {
+        if (drops.isEmpty() || tariffFingerprint == tariff.getFingerprint()) {
+            return;
+        }
+        int repriced = 0;
+        for (Drop drop : drops) {
+            if (drop.usage.reprice(tariff)) {
+                repriced++;
+            }
+            markChanged(drop.usage);
+        }
+        if (repriced < drops.size()) {
+            needsFullRecompute = true;
+            LOGGER.severe("The tariff has changed since the previous run, and " + (drops.size() - repriced) + " of " + drops.size()
+                    + " drops in " + stateFile + " were saved without their daily usage, so their totals cannot be priced again."
+                    + " Remove the state file and deliver the drops of the billing period again to bill them in full.");
+            return;
+        }
+        tariffFingerprint = tariff.getFingerprint();
+        LOGGER.info("The tariff has changed since the previous run; the totals of " + repriced + " drops were priced again.");
+    }
+
+    /**
+     * Returns whether the stored totals were priced with another tariff and cannot be priced again, because
+     * they were saved without daily usage. Such a state must not be added to: the drops have to be billed
+     * again in full, from an empty state.
+     *
+     * @return true if the state cannot be used for this run
+     */
+    public boolean needsFullRecompute() {
+        return needsFullRecompute;
+    }
+
+    /**
+     * Decides which part of a consumption file has to be aggregated. The file is read once to checksum the
+     * bytes covered by the watermarks of the drops with its name, and the bytes after them.
+     *
+     * @param file the consumption file
+     * @return the plan to pass to {@link #apply(Plan, UsageStore)} once the planned range is aggregated
+     * @throws IOException if the file cannot be read, or if the state {@link #needsFullRecompute()}
+     */
+    public Plan plan(Path file) throws IOException {
+        if (needsFullRecompute) {
+            throw new IOException("The stored totals cannot be priced with the changed tariff; remove " + stateFile
+                    + " and deliver the drops again to bill them in full");
+        }
+        String name = file.getFileName().toString();
+        long size = Files.size(file);
+
+        // The watermarks this file could continue, in ascending order
+        TreeMap<Long, List<Integer>> candidates = new TreeMap<>();
+        for (int i = 0; i < drops.size(); i++) {
+            Drop drop = drops.get(i);
+            if (drop.fileName.equals(name) && drop.offset <= size) {
+                candidates.computeIfAbsent(drop.offset, offset -> new ArrayList<>()).add(i);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        int resumed = -1;
+        int lastByte = -1;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            long position = 0;
+            while (true) {
+                // Stop at every watermark, to compare the checksum of the bytes it covers
+                for (Map.Entry<Long, List<Integer>> candidate = candidates.firstEntry();
+                     candidate != null && candidate.getKey() == position; candidate = candidates.firstEntry()) {
+                    for (int index : candidates.pollFirstEntry().getValue()) {
+                        if (drops.get(index).checksum == crc.getValue()) {
+                            resumed = index;
+                        }
+                    }
+                }
+                if (position >= size) {
+                    break;
+                }
+                Long next = candidates.ceilingKey(position);
+                int length = (int) Math.min(buffer.length, (next != null ? next : size) - position);
+                int read = in.read(buffer, 0, length);
+                if (read < 0) {
+                    break;
+                }
+                if (read == 0) {
+                    continue;
+                }
+                crc.update(buffer, 0, read);
+                position += read;
+                lastByte = buffer[read - 1];
+            }
+            size = position;
+        }
+
+        long from = 0;
+        if (resumed >= 0) {
+            Drop drop = drops.get(resumed);
+            from = drop.offset;
+            if (!drop.endsWithLineFeed && drop.offset < size) {
+                // The last aggregated line had no line break; appended data must start a new line
+                from = skipLineBreak(file, drop.offset);
+            }
+            if (from < 0) {
+                // The last aggregated line was continued, so the drop has changed
+                resumed = -1;
+                from = 0;
+            }
+        }
+
+        if (resumed >= 0) {
+            LOGGER.info("Resuming " + name + " at byte " + from + " of " + size + ".");
+        } else {
+            LOGGER.info("Aggregating " + name + " in full.");
+        }
+        return new Plan(name, from, size, resumed, crc.getValue(), lastByte == '\n');
+    }
+
+    /**
+     * Records the result of aggregating a planned range. Usage appended to a drop is merged into its
+     * totals. A whole file replaces the totals of the drop it was delivered as before, if there is one with
+     * the same name and first reading date, or is added as a new drop. The watermark of the drop moves to
+     * the end of the range.
+     *
+     * <p>
+     * The delta should keep daily usage (see {@link MonthlyUsageCalculator.UsageAccumulator#UsageAccumulator(boolean)}),
+     * so that the drop can be priced again if the tariff changes.
+     * </p>
+     *
+     * @param plan  the plan returned by {@link #plan(Path)}
+     * @param delta the usage aggregated from the planned range
+     */
+    public void apply(Plan plan, UsageStore delta) {
+        int firstDay = UsageStore.NO_DATE;
+        int lastDay = UsageStore.NO_DATE;
+        for (int i = 0; i < delta.size(); i++) {
+            if (delta.firstReadingDay(i) != UsageStore.NO_DATE) {
+                firstDay = firstDay == UsageStore.NO_DATE ? delta.firstReadingDay(i) : Math.min(firstDay, delta.firstReadingDay(i));
+                lastDay = Math.max(lastDay, delta.lastReadingDay(i));
+            }
+        }
+
+        Drop drop;
+        if (plan.drop >= 0) {
+            drop = drops.get(plan.drop);
+            drop.usage.mergeFrom(delta);
+            markChanged(delta);
+            if (firstDay != UsageStore.NO_DATE) {
+                drop.firstDay = drop.firstDay == UsageStore.NO_DATE ? firstDay : Math.min(drop.firstDay, firstDay);
+                drop.lastDay = Math.max(drop.lastDay, lastDay);
+            }
+        } else {
+            drop = null;
+            for (Drop known : drops) {
+                if (known.fileName.equals(plan.fileName) && firstDay != UsageStore.NO_DATE && known.firstDay == firstDay) {
+                    LOGGER.warning("The previously billed " + plan.fileName + " from " + LocalDate.ofEpochDay(firstDay)
+                            + " has changed; its totals are replaced.");
+                    drop = known;
+                    // Its bills change even for customers the new delivery no longer has readings for
+                    markChanged(known.usage);
+                    break;
+                }
+            }
+            if (drop == null) {
+                drop = new Drop();
+                drops.add(drop);
+            }
+            markChanged(delta);
+            drop.fileName = plan.fileName;
+            drop.usage = delta;
+            drop.firstDay = firstDay;
+            drop.lastDay = lastDay;
+        }
+        drop.offset = plan.to;
+        drop.checksum = plan.checksum;
+        drop.endsWithLineFeed = plan.endsWithLineFeed;
+        tariffFingerprint = tariff.getFingerprint();
+        forgetOldDrops();
+        sumDrops();
+    }
+
+    // Records every bucket of the store as changed
+    private void markChanged(UsageStore usage) {
+        for (int i = 0; i < usage.size(); i++) {
+            changed.getOrAdd(usage.customerId(i), usage.month(i));
+        }
+    }
+
+    // Keeps the drops with readings in the latest billing month or the month before it
+    private void forgetOldDrops() {
+        int latestMonth = DateCodec.NO_MONTH;
+        for (Drop drop : drops) {
+            if (drop.lastDay != UsageStore.NO_DATE) {
+                latestMonth = Math.max(latestMonth, DateCodec.monthOf(drop.lastDay));
+            }
+        }
+        if (latestMonth == DateCodec.NO_MONTH) {
+            return;
+        }
+        int oldestMonth = latestMonth - 1;
+        drops.removeIf(drop -> drop.lastDay != UsageStore.NO_DATE && DateCodec.monthOf(drop.lastDay) < oldestMonth);
+    }
+
+    // Adds up the drops in the order they were delivered, so issue dates are those of the earliest drop
+    private void sumDrops() {
+        UsageStore sum = new UsageStore();
+        for (Drop drop : drops) {
+            sum.mergeFrom(drop.usage);
+        }
+        totals = sum;
+    }
+
+    /**
+     * Returns the running totals of every drop billed so far.
+     *
+     * @return the totals; they are recomputed by {@link #apply(Plan, UsageStore)}
+     */
+    public UsageStore getTotals() {
+        return totals;
+    }
+
+    /**
+     * Returns the running totals of the customers' months that changed since their bills were last
+     * rendered, e.g. because a drop of this run added readings to them.
+     *
+     * @return the changed totals, in the insertion order of {@link #getTotals()}
+     */
+    public UsageStore getChangedTotals() {
+        UsageStore changedTotals = new UsageStore();
+        for (int i = 0; i < totals.size(); i++) {
+            if (changed.indexOf(totals.customerId(i), totals.month(i)) >= 0) {
+                changedTotals.mergeFrom(totals, i);
+            }
+        }
+        return changedTotals;
+    }
+
+    /**
+     * Records that the bills of the changed totals have been rendered, except those of the given
+     * customers, which are rendered again by the next run. Call {@link #save()} to keep the record.
+     *
+     * @param failedCustomerIds the customers whose bills failed to render
+     */
+    public void markRendered(Collection<String> failedCustomerIds) {
+        Set<String> failed = Set.copyOf(failedCustomerIds);
+        UsageStore stillChanged = new UsageStore();
+        for (int i = 0; i < changed.size(); i++) {
+            if (failed.contains(Long.toString(changed.customerId(i)))) {
+                stillChanged.getOrAdd(changed.customerId(i), changed.month(i));
+            }
+        }
+        changed = stillChanged;
+    }
+
+    /** @return the number of drops whose totals are kept */
+    public int getDropCount() {
+        return drops.size();
+    }
+
+    /**
+     * Writes the drops, their totals and watermarks, and the changed buckets to the state file. The file is replaced atomically, so
+     * a run that fails while saving leaves the previous state intact.
+     *
+     * @throws IOException if the state cannot be written
+     */
+    public void save() throws IOException {
+        Path directory = stateFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, stateFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(tariffFingerprint);
+                out.writeInt(drops.size());
+                for (Drop drop : drops) {
+                    out.writeUTF(drop.fileName);
+                    out.writeLong(drop.offset);
+                    out.writeLong(drop.checksum);
+                    out.writeBoolean(drop.endsWithLineFeed);
+                    out.writeInt(drop.firstDay);
+                    out.writeInt(drop.lastDay);
+                    drop.usage.writeTo(out);
+                    DailyUsage dailyUsage = drop.usage.getDailyUsage();
+                    out.writeBoolean(dailyUsage != null);
+                    if (dailyUsage != null) {
+                        dailyUsage.writeTo(out);
+                    }
+                }
+                changed.writeTo(out);
+            }
+            Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Returns the position after the line break at `position`, or -1 if there is none
+    private static long skipLineBreak(Path file, long position) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            in.skipNBytes(position);
+            int first = in.read();
+            if (first == '\n') {
+                return position + 1;
+            }
+            if (first == '\r') {
+                return in.read() == '\n' ? position + 2 : position + 1;
+            }
+            return -1;
+        }
+    }
+}
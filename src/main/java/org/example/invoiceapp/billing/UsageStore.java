@@ -0,0 +1,599 @@
+package org.example.invoiceapp.billing;
+
+import org.example.invoiceapp.data.CustomerUsage;
+import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.DateCodec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The `UsageStore` class aggregates daytime and nighttime usage, and its cost, per numeric customer ID
+ * and billing month without creating an object per customer or per reading. Alongside the usage it
+ * indexes, per bucket, the issue date, the first and last reading date and the number of readings, so
+ * that bills can look these up in constant time.
+ *
+ * <p>
+ * A bucket is keyed by the customer ID and the {@link DateCodec} month index of the reading date, so one
+ * pass over a file that spans several months yields one bucket, and one bill, per customer per month.
+ * Usage added without a date goes to the customer's {@link DateCodec#NO_MONTH} bucket.
+ * </p>
+ *
+ * <p>
+ * Buckets are kept in insertion order in dense, parallel primitive columns (customer ID, month, daytime
+ * and nighttime totals, their costs in ten-thousandths of a lev, dates and reading count). An
+ * open-addressing hash table with linear probing maps a (customer ID, month) pair to its column index.
+ * The columns can be held off-heap in direct buffers, so that millions of meters do not weigh on the
+ * garbage collector. `CustomerUsage` objects are only created on request, when a bill is rendered.
+ * </p>
+ *
+ * <p>
+ * A store can also keep the unpriced usage of every time slot per customer and day (see
+ * {@link #keepDailyUsage()}), so that its totals can be priced again when the tariff changes.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread-safe; use one store per thread and combine them with {@link #mergeFrom(UsageStore)}.
+ * </p>
+ */
+public class UsageStore {
+
+    private static final boolean OFF_HEAP = Boolean.parseBoolean(ConfigLoader.getProperty("usage.store.offheap"));
+    private static final String INITIAL_CAPACITY = ConfigLoader.getProperty("usage.store.initial.capacity");
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Returned by the date accessors when no date has been recorded for a customer.
+     */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    private final boolean offHeap;
+
+    // Hash table of column index + 1; 0 marks an empty slot
+    private int[] table;
+    private int mask;
+
+    // Dense columns, indexed by insertion order
+    private LongBuffer customerIds;
+    private IntBuffer months;
+    private LongBuffer daytimeUsage;
+    private LongBuffer nighttimeUsage;
+    private LongBuffer daytimeCost;
+    private LongBuffer nighttimeCost;
+    private IntBuffer issueDays;
+    private IntBuffer firstReadingDays;
+    private IntBuffer lastReadingDays;
+    private IntBuffer readingCounts;
+    private int size;
+
+    // Unpriced slot usage per customer and day, or null if it is not kept
+    private DailyUsage dailyUsage;
+
+    /**
+     * Creates a store configured from `usage.store.offheap` and `usage.store.initial.capacity`.
+     */
+    public UsageStore() {
+        this(INITIAL_CAPACITY == null ? DEFAULT_CAPACITY : Integer.parseInt(INITIAL_CAPACITY.trim()), OFF_HEAP);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param expectedCustomers the number of buckets to size the store for; it grows as needed
+     * @param offHeap           whether the usage columns are held in direct (off-heap) buffers
+     */
+    public UsageStore(int expectedCustomers, boolean offHeap) {
+        this.offHeap = offHeap;
+        int columnCapacity = Math.max(16, expectedCustomers);
+        this.customerIds = allocate(columnCapacity);
+        this.months = allocateInts(columnCapacity);
+        this.daytimeUsage = allocate(columnCapacity);
+        this.nighttimeUsage = allocate(columnCapacity);
+        this.daytimeCost = allocate(columnCapacity);
+        this.nighttimeCost = allocate(columnCapacity);
+        this.issueDays = allocateInts(columnCapacity);
+        this.firstReadingDays = allocateInts(columnCapacity);
+        this.lastReadingDays = allocateInts(columnCapacity);
+        this.readingCounts = allocateInts(columnCapacity);
+        this.table = new int[tableSizeFor(columnCapacity)];
+        this.mask = table.length - 1;
+    }
+
+    /**
+     * Adds usage to a customer's undated totals and counts it as one reading, registering the customer if
+     * it is not known yet. The reading date range is left unchanged.
+     *
+     * @param customerId     the numeric customer ID
+     * @param daytimeUsage   the daytime usage to add (in kWh)
+     * @param nighttimeUsage the nighttime usage to add (in kWh)
+     */
+    public void add(long customerId, long daytimeUsage, long nighttimeUsage) {
+        addAt(getOrAdd(customerId, DateCodec.NO_MONTH), daytimeUsage, nighttimeUsage, 0, 0, 1);
+    }
+
+    /**
+     * Adds the usage of one reading to the customer's totals for the month of the reading and extends
+     * their reading date range.
+     *
+     * @param customerId     the numeric customer ID
+     * @param epochDay       the reading date, as days since 1970-01-01
+     * @param daytimeUsage   the daytime usage to add (in kWh)
+     * @param nighttimeUsage the nighttime usage to add (in kWh)
+     */
+    public void add(long customerId, long epochDay, long daytimeUsage, long nighttimeUsage) {
+        add(customerId, epochDay, daytimeUsage, nighttimeUsage, 0, 0);
+    }
+
+    /**
+     * Adds the priced usage of one reading to the customer's totals for the month of the reading and
+     * extends their reading date range.
+     *
+     * @param customerId     the numeric customer ID
+     * @param epochDay       the reading date, as days since 1970-01-01
+     * @param daytimeUsage   the daytime usage to add (in kWh)
+     * @param nighttimeUsage the nighttime usage to add (in kWh)
+     * @param daytimeCost    the cost of the daytime usage, in ten-thousandths of a lev
+     * @param nighttimeCost  the cost of the nighttime usage, in ten-thousandths of a lev
+     */
+    public void add(long customerId, long epochDay, long daytimeUsage, long nighttimeUsage, long daytimeCost, long nighttimeCost) {
+        int index = getOrAdd(customerId, DateCodec.monthOf(epochDay));
+        addAt(index, daytimeUsage, nighttimeUsage, daytimeCost, nighttimeCost, 1);
+        extendReadingDays(index, (int) epochDay, (int) epochDay);
+    }
+
+    /**
+     * Records the date of a customer's reading as the issue date of its month, unless an earlier reading
+     * already set it. This is called for every parsed reading, valid or not, so the issue date is that of
+     * the customer's first reading of the month in the input.
+     *
+     * @param customerId the numeric customer ID
+     * @param epochDay   the reading date, as days since 1970-01-01
+     * @return true if this reading set the issue date, i.e. it is the first reading of the month
+     */
+    public boolean recordIssueDay(long customerId, long epochDay) {
+        int index = getOrAdd(customerId, DateCodec.monthOf(epochDay));
+        if (issueDays.get(index) == NO_DATE) {
+            issueDays.put(index, (int) epochDay);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Makes the store keep the unpriced usage of every time slot per customer and day, passed to
+     * {@link #addDailyUsage}, next to the priced totals. Call it before any usage is added.
+     */
+    void keepDailyUsage() {
+        dailyUsage = new DailyUsage();
+    }
+
+    /**
+     * Adds the unpriced usage of one reading to its customer's day, if the store keeps daily usage. The
+     * priced usage of the reading is added separately, with {@link #add(long, long, long, long, long, long)}.
+     *
+     * @param customerId the numeric customer ID
+     * @param epochDay   the reading date, as days since 1970-01-01
+     * @param usage1     usage in the period 00:00 - 05:59
+     * @param usage2     usage in the period 06:00 - 11:59
+     * @param usage3     usage in the period 12:00 - 17:59
+     * @param usage4     usage in the period 18:00 - 23:59
+     */
+    void addDailyUsage(long customerId, long epochDay, int usage1, int usage2, int usage3, int usage4) {
+        if (dailyUsage != null) {
+            dailyUsage.add(customerId, (int) epochDay, usage1, usage2, usage3, usage4);
+        }
+    }
+
+    /** @return the unpriced daily usage, or null if the store does not keep it */
+    DailyUsage getDailyUsage() {
+        return dailyUsage;
+    }
+
+    // Attaches daily usage restored from a file alongside the store
+    void setDailyUsage(DailyUsage dailyUsage) {
+        this.dailyUsage = dailyUsage;
+    }
+
+    /**
+     * Prices the totals again from the daily usage, with another tariff. The usage and costs of every
+     * bucket are replaced; reading counts, issue dates and reading date ranges are kept.
+     *
+     * @param tariff the tariff to price with
+     * @return true if the store was priced again, false if it keeps no daily usage and is left unchanged
+     */
+    boolean reprice(TariffEngine tariff) {
+        if (dailyUsage == null) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            daytimeUsage.put(i, 0);
+            nighttimeUsage.put(i, 0);
+            daytimeCost.put(i, 0);
+            nighttimeCost.put(i, 0);
+        }
+        dailyUsage.priceInto(tariff, this);
+        return true;
+    }
+
+    // Adds priced usage to the month of a day without counting a reading, used when pricing daily usage
+    void addPriced(long customerId, long epochDay, long daytimeUsage, long nighttimeUsage, long daytimeCost, long nighttimeCost) {
+        addAt(getOrAdd(customerId, DateCodec.monthOf(epochDay)), daytimeUsage, nighttimeUsage, daytimeCost, nighttimeCost, 0);
+    }
+
+    private void addAt(int index, long daytimeUsage, long nighttimeUsage, long daytimeCost, long nighttimeCost, int readings) {
+        this.daytimeUsage.put(index, this.daytimeUsage.get(index) + daytimeUsage);
+        this.nighttimeUsage.put(index, this.nighttimeUsage.get(index) + nighttimeUsage);
+        this.daytimeCost.put(index, this.daytimeCost.get(index) + daytimeCost);
+        this.nighttimeCost.put(index, this.nighttimeCost.get(index) + nighttimeCost);
+        this.readingCounts.put(index, this.readingCounts.get(index) + readings);
+    }
+
+    private void extendReadingDays(int index, int firstDay, int lastDay) {
+        if (firstDay < firstReadingDays.get(index)) {
+            firstReadingDays.put(index, firstDay);
+        }
+        if (lastDay > lastReadingDays.get(index)) {
+            lastReadingDays.put(index, lastDay);
+        }
+    }
+
+    /**
+     * Returns the column index of a customer's month, registering the bucket with zero usage if needed.
+     *
+     * @param customerId the numeric customer ID
+     * @param month      the month index, or {@link DateCodec#NO_MONTH} for undated usage
+     * @return the column index of the bucket
+     */
+    public int getOrAdd(long customerId, int month) {
+        int slot = hash(customerId, month) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (customerIds.get(entry - 1) == customerId && months.get(entry - 1) == month) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int index = size;
+        if (index == customerIds.capacity()) {
+            growColumns();
+        }
+        customerIds.put(index, customerId);
+        months.put(index, month);
+        issueDays.put(index, NO_DATE);
+        firstReadingDays.put(index, Integer.MAX_VALUE);
+        lastReadingDays.put(index, NO_DATE);
+        size++;
+        table[slot] = index + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the column index of a customer's month.
+     *
+     * @param customerId the numeric customer ID
+     * @param month      the month index, or {@link DateCodec#NO_MONTH} for undated usage
+     * @return the column index, or -1 if the customer has no usage for the month in this store
+     */
+    public int indexOf(long customerId, int month) {
+        int slot = hash(customerId, month) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (customerIds.get(entry - 1) == customerId && months.get(entry - 1) == month) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of (customer, month) buckets in the store.
+     *
+     * @return the number of buckets
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the customer ID stored at a column index.
+     *
+     * @param index a column index between 0 and {@link #size()} - 1, in insertion order
+     * @return the customer ID
+     */
+    public long customerId(int index) {
+        return customerIds.get(index);
+    }
+
+    /**
+     * Returns the billing month stored at a column index.
+     *
+     * @param index a column index
+     * @return the {@link DateCodec} month index, or {@link DateCodec#NO_MONTH} for undated usage
+     */
+    public int month(int index) {
+        return months.get(index);
+    }
+
+    /**
+     * Returns the aggregated daytime usage stored at a column index.
+     *
+     * @param index a column index
+     * @return the daytime usage (in kWh)
+     */
+    public long daytimeUsage(int index) {
+        return daytimeUsage.get(index);
+    }
+
+    /**
+     * Returns the aggregated nighttime usage stored at a column index.
+     *
+     * @param index a column index
+     * @return the nighttime usage (in kWh)
+     */
+    public long nighttimeUsage(int index) {
+        return nighttimeUsage.get(index);
+    }
+
+    /**
+     * Returns the aggregated cost of the daytime usage stored at a column index.
+     *
+     * @param index a column index
+     * @return the daytime cost, in ten-thousandths of a lev
+     */
+    public long daytimeCost(int index) {
+        return daytimeCost.get(index);
+    }
+
+    /**
+     * Returns the aggregated cost of the nighttime usage stored at a column index.
+     *
+     * @param index a column index
+     * @return the nighttime cost, in ten-thousandths of a lev
+     */
+    public long nighttimeCost(int index) {
+        return nighttimeCost.get(index);
+    }
+
+    /**
+     * Returns the number of valid readings aggregated for the customer stored at a column index.
+     * Customers with only an issue date (all of their readings were rejected) have a count of 0.
+     *
+     * @param index a column index
+     * @return the number of readings
+     */
+    public int readingCount(int index) {
+        return readingCounts.get(index);
+    }
+
+    /**
+     * Returns the issue date of the bucket stored at a column index: the date of the customer's first
+     * reading of the month in the input.
+     *
+     * @param index a column index
+     * @return the issue date as an epoch day, or {@link #NO_DATE}
+     */
+    public int issueDay(int index) {
+        return issueDays.get(index);
+    }
+
+    /**
+     * Returns the earliest reading date aggregated for the customer stored at a column index.
+     *
+     * @param index a column index
+     * @return the first reading date as an epoch day, or {@link #NO_DATE}
+     */
+    public int firstReadingDay(int index) {
+        int day = firstReadingDays.get(index);
+        return day == Integer.MAX_VALUE ? NO_DATE : day;
+    }
+
+    /**
+     * Returns the latest reading date aggregated for the customer stored at a column index.
+     *
+     * @param index a column index
+     * @return the last reading date as an epoch day, or {@link #NO_DATE}
+     */
+    public int lastReadingDay(int index) {
+        return lastReadingDays.get(index);
+    }
+
+    /**
+     * Creates a `CustomerUsage` object for the customer stored at a column index, priced with the
+     * aggregated costs.
+     *
+     * @param index a column index
+     * @return the customer's aggregated usage
+     * @throws ArithmeticException if a total does not fit into an int
+     */
+    public CustomerUsage toCustomerUsage(int index) {
+        return new CustomerUsage(Math.toIntExact(daytimeUsage.get(index)), Math.toIntExact(nighttimeUsage.get(index)),
+                daytimeCost.get(index), nighttimeCost.get(index));
+    }
+
+    /**
+     * Adds all totals of another store into this one. Buckets new to this store are appended in the
+     * other store's insertion order, and issue dates already set in this store win, so merging partial
+     * stores in file order gives the same result as aggregating the whole file in one store. If both
+     * stores keep daily usage, it is merged as well.
+     *
+     * @param other the store to merge into this one; it must cover input that follows this store's input
+     */
+    public void mergeFrom(UsageStore other) {
+        if (dailyUsage != null && other.dailyUsage != null) {
+            dailyUsage.mergeFrom(other.dailyUsage);
+        }
+        for (int i = 0; i < other.size; i++) {
+            mergeFrom(other, i);
+        }
+    }
+
+    /**
+     * Adds the totals of one bucket of another store into this one, like {@link #mergeFrom(UsageStore)}.
+     * Daily usage is not merged.
+     *
+     * @param other the store to merge from
+     * @param i     the column index of the bucket in the other store
+     */
+    void mergeFrom(UsageStore other, int i) {
+        int index = getOrAdd(other.customerIds.get(i), other.months.get(i));
+        addAt(index, other.daytimeUsage.get(i), other.nighttimeUsage.get(i), other.daytimeCost.get(i), other.nighttimeCost.get(i),
+                other.readingCounts.get(i));
+        extendReadingDays(index, other.firstReadingDays.get(i), other.lastReadingDays.get(i));
+        if (issueDays.get(index) == NO_DATE) {
+            issueDays.put(index, other.issueDays.get(i));
+        }
+    }
+
+    /**
+     * Materializes the store as a map of customer ID text to `CustomerUsage`, in insertion order, with
+     * the usage of all of a customer's months added up. Customers without valid readings are left out.
+     * Intended for callers of the map-based API; it creates one object per customer.
+     *
+     * @return a map where the keys are customer IDs and the values are the aggregated usage
+     */
+    public Map<String, CustomerUsage> toMap() {
+        Map<String, CustomerUsage> usageMap = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            if (readingCounts.get(i) == 0) {
+                continue;
+            }
+            usageMap.merge(Long.toString(customerIds.get(i)), toCustomerUsage(i), (a, b) -> new CustomerUsage(
+                    Math.addExact(a.getDaytimeUsage(), b.getDaytimeUsage()), Math.addExact(a.getNighttimeUsage(), b.getNighttimeUsage()),
+                    a.getDaytimeCost() + b.getDaytimeCost(), a.getNighttimeCost() + b.getNighttimeCost()));
+        }
+        return usageMap;
+    }
+
+    /**
+     * Writes every column of the store, in insertion order, so that {@link #readFrom(DataInput)} restores
+     * an identical store. Daily usage is not written.
+     *
+     * @param out where the store is written
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(customerIds.get(i));
+            out.writeInt(months.get(i));
+            out.writeLong(daytimeUsage.get(i));
+            out.writeLong(nighttimeUsage.get(i));
+            out.writeLong(daytimeCost.get(i));
+            out.writeLong(nighttimeCost.get(i));
+            out.writeInt(issueDays.get(i));
+            out.writeInt(firstReadingDays.get(i));
+            out.writeInt(lastReadingDays.get(i));
+            out.writeInt(readingCounts.get(i));
+        }
+    }
+
+    /**
+     * Reads a store written by {@link #writeTo(DataOutput)}. The store is created with the configured
+     * `usage.store.offheap` setting.
+     *
+     * @param in where the store is read from
+     * @return the restored store
+     * @throws IOException if reading fails or the data is not a valid store
+     */
+    public static UsageStore readFrom(DataInput in) throws IOException {
+        int customers = in.readInt();
+        if (customers < 0) {
+            throw new IOException("Invalid customer count: " + customers);
+        }
+        UsageStore store = new UsageStore(customers, OFF_HEAP);
+        for (int i = 0; i < customers; i++) {
+            long customerId = in.readLong();
+            int index = store.getOrAdd(customerId, in.readInt());
+            store.daytimeUsage.put(index, in.readLong());
+            store.nighttimeUsage.put(index, in.readLong());
+            store.daytimeCost.put(index, in.readLong());
+            store.nighttimeCost.put(index, in.readLong());
+            store.issueDays.put(index, in.readInt());
+            store.firstReadingDays.put(index, in.readInt());
+            store.lastReadingDays.put(index, in.readInt());
+            store.readingCounts.put(index, in.readInt());
+        }
+        return store;
+    }
+
+    private void growColumns() {
+        int capacity = customerIds.capacity() * 2;
+        customerIds = copyOf(customerIds, capacity);
+        months = copyOf(months, capacity);
+        daytimeUsage = copyOf(daytimeUsage, capacity);
+        nighttimeUsage = copyOf(nighttimeUsage, capacity);
+        daytimeCost = copyOf(daytimeCost, capacity);
+        nighttimeCost = copyOf(nighttimeCost, capacity);
+        issueDays = copyOf(issueDays, capacity);
+        firstReadingDays = copyOf(firstReadingDays, capacity);
+        lastReadingDays = copyOf(lastReadingDays, capacity);
+        readingCounts = copyOf(readingCounts, capacity);
+    }
+
+    private void rehash(int tableSize) {
+        int[] newTable = new int[tableSize];
+        int newMask = tableSize - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(customerIds.get(i), months.get(i)) & newMask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & newMask;
+            }
+            newTable[slot] = i + 1;
+        }
+        table = newTable;
+        mask = newMask;
+    }
+
+    private LongBuffer allocate(int capacity) {
+        if (offHeap) {
+            return ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        return LongBuffer.allocate(capacity);
+    }
+
+    private LongBuffer copyOf(LongBuffer column, int capacity) {
+        LongBuffer copy = allocate(capacity);
+        copy.put(0, column, 0, size);
+        return copy;
+    }
+
+    private IntBuffer allocateInts(int capacity) {
+        if (offHeap) {
+            return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.allocate(capacity);
+    }
+
+    private IntBuffer copyOf(IntBuffer column, int capacity) {
+        IntBuffer copy = allocateInts(capacity);
+        copy.put(0, column, 0, size);
+        return copy;
+    }
+
+    private static int tableSizeFor(int entries) {
+        return Integer.highestOneBit(Math.max(2, entries) * 2 - 1) * 2;
+    }
+
+    // Murmur3 finalizer, spreads sequential customer IDs and months over the whole table
+    private static int hash(long customerId, int month) {
+        long key = customerId ^ month * 0x9e3779b97f4a7c15L;
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
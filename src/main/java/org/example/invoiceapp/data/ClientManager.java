@@ -1,19 +1,25 @@
 package org.example.invoiceapp.data;
 
 import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.ConnectionPool;
+import org.example.invoiceapp.util.Metrics;
 
 import java.sql.*;
+import java.util.*;
 import java.util.logging.*;
 
 public class ClientManager {
-    private static final String DB_URL = ConfigLoader.getProperty("db.url");
-    private static final String DB_USER = ConfigLoader.getProperty("db.username");
-    private static final String DB_PASSWORD = ConfigLoader.getProperty("db.password");
     private static final Logger LOGGER = Logger.getLogger(ClientManager.class.getName());
+    private static final Metrics.Timer SYNC_TIMER = Metrics.timer("invoiceapp_db_clients_sync_seconds", "Time to synchronize the clients table with the lookup");
+    private static final Metrics.Counter CLIENTS_WRITTEN = Metrics.counter("invoiceapp_db_clients_rows_total", "Clients inserted or renamed in the database");
+    private static final String SYNC_BATCH_SIZE = ConfigLoader.getProperty("client.sync.batch.size");
+
+    // Last known content of the clients table, so repeated syncs in one process skip the full read
+    private static Map<String, String> clientsSnapshot;
 
     public static void addClient(String clientId, String clientName) {
         String sql = "INSERT INTO clients (client_id, client_name) VALUES (?, ?) ON DUPLICATE KEY UPDATE client_name = VALUES(client_name)";
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+        try (Connection conn = ConnectionPool.getInstance().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, clientId);
             pstmt.setString(2, clientName);
@@ -23,10 +29,106 @@ public class ClientManager {
             LOGGER.log(Level.SEVERE, "Failed to add or update client", e);
         }
     }
+
+    /**
+     * Brings the `clients` table in line with the customer lookup.
+     *
+     * <p>
+     * The table is read once (or taken from the snapshot left by the previous sync), compared with the
+     * lookup, and only new clients and renamed clients are written, as multi-row
+     * `INSERT ... ON DUPLICATE KEY UPDATE` statements of `client.sync.batch.size` rows in one transaction.
+     * Clients missing from the lookup are left untouched.
+     * </p>
+     *
+     * @param lookup the customer names by customer ID
+     * @return the number of clients inserted or renamed, or -1 if the sync failed
+     */
+    public static synchronized int syncClients(Map<String, String> lookup) {
+        long start = System.nanoTime();
+        try (Connection conn = ConnectionPool.getInstance().getConnection()) {
+            if (clientsSnapshot == null) {
+                clientsSnapshot = loadClients(conn);
+            }
+            Map<String, String> delta = diffClients(clientsSnapshot, lookup);
+            if (!delta.isEmpty()) {
+                upsertClients(conn, delta);
+                clientsSnapshot.putAll(delta);
+                CLIENTS_WRITTEN.add(delta.size());
+            }
+            LOGGER.info("Clients synchronized: " + delta.size() + " inserted or renamed, " + (lookup.size() - delta.size()) + " unchanged.");
+            return delta.size();
+        } catch (SQLException e) {
+            // The table may be partly updated, so read it again next time
+            clientsSnapshot = null;
+            LOGGER.log(Level.SEVERE, "Failed to synchronize clients", e);
+            return -1;
+        } finally {
+            SYNC_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Returns the clients of the lookup that are missing from {@code existing} or have a different name there.
+     *
+     * @param existing the clients currently stored
+     * @param lookup   the clients as they should be stored
+     * @return the clients to insert or rename
+     */
+    public static Map<String, String> diffClients(Map<String, String> existing, Map<String, String> lookup) {
+        Map<String, String> delta = new LinkedHashMap<>();
+        for (Map.Entry<String, String> client : lookup.entrySet()) {
+            if (!client.getValue().equals(existing.get(client.getKey()))) {
+                delta.put(client.getKey(), client.getValue());
+            }
+        }
+        return delta;
+    }
+
+    private static Map<String, String> loadClients(Connection conn) throws SQLException {
+        Map<String, String> clients = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT client_id, client_name FROM clients")) {
+            while (rs.next()) {
+                clients.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return clients;
+    }
+
+    private static void upsertClients(Connection conn, Map<String, String> clients) throws SQLException {
+        int batchSize = SYNC_BATCH_SIZE == null ? 500 : Math.max(1, Integer.parseInt(SYNC_BATCH_SIZE.trim()));
+        List<Map.Entry<String, String>> rows = new ArrayList<>(clients.entrySet());
+        conn.setAutoCommit(false);
+        try {
+            for (int from = 0; from < rows.size(); from += batchSize) {
+                int count = Math.min(batchSize, rows.size() - from);
+                try (PreparedStatement pstmt = conn.prepareStatement(multiRowUpsert(count))) {
+                    for (int i = 0; i < count; i++) {
+                        pstmt.setString(2 * i + 1, rows.get(from + i).getKey());
+                        pstmt.setString(2 * i + 2, rows.get(from + i).getValue());
+                    }
+                    pstmt.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        }
+    }
+
+    private static String multiRowUpsert(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO clients (client_id, client_name) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+        }
+        return sql.append(" ON DUPLICATE KEY UPDATE client_name = VALUES(client_name)").toString();
+    }
+
     //this method checks if a client exists in the database, but it is not used in the application code
     public static boolean isClientExists(String clientId) {
         String sql = "SELECT COUNT(*) FROM clients WHERE client_id = ?";
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+        try (Connection conn = ConnectionPool.getInstance().getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, clientId);
             try (ResultSet rs = pstmt.executeQuery()) {
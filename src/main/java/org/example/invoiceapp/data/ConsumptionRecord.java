@@ -0,0 +1,358 @@
+package org.example.invoiceapp.data;
+
+import org.example.invoiceapp.util.DateCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The `ConsumptionRecord` class is a reusable, mutable view over a single line of consumption data.
+ *
+ * <p>
+ * A record is decoded straight from bytes into primitive fields, so parsing a line creates no garbage.
+ * Text values (the customer ID, the raw line and the error description) are only turned into strings
+ * when they are asked for. Because the same instance is refilled for every line, stages must copy out
+ * whatever they need to keep before returning.
+ * </p>
+ *
+ * <p>
+ * The expected layout is `id,dd.MM.yyyy,u1,u2,u3,u4,quality,code,desc`. A line is considered
+ * well-formed when the customer ID is numeric, the date is a valid calendar date, the four usage
+ * values are integers and the line carries at least the first seven fields.
+ * </p>
+ */
+public class ConsumptionRecord {
+
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    // Backing data of the current line; either a (mapped) buffer or the original string
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+    private String lineText;
+    private final byte[] scratch = new byte[MAX_LINE_LENGTH];
+
+    private boolean wellFormed;
+    private long customerId;
+    private int idStart;
+    private int idEnd;
+    private String customerIdText;
+    private int day;
+    private int month;
+    private int year;
+    private long epochDay;
+    private int usage1;
+    private int usage2;
+    private int usage3;
+    private int usage4;
+    private char quality;
+    private int errorCode;
+    private int descriptionStart;
+    private String description;
+    private int fieldEnd; // End of the last integer field read by nextInt
+
+    /**
+     * Creates a record view from a line that has already been read as a string.
+     *
+     * @param line a consumption record line
+     * @return a new record holding the parsed line
+     */
+    public static ConsumptionRecord of(String line) {
+        ConsumptionRecord record = new ConsumptionRecord();
+        record.reset(line);
+        return record;
+    }
+
+    /**
+     * Refills this record from a line that has already been read as a string.
+     *
+     * @param line a consumption record line
+     */
+    public void reset(String line) {
+        reset(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)), 0, -1);
+        this.lineText = line;
+    }
+
+    /**
+     * Refills this record from the bytes {@code [start, end)} of the given buffer.
+     * A trailing carriage return is ignored. The buffer is read with absolute gets only.
+     *
+     * @param buffer the buffer holding the line
+     * @param start  the index of the first byte of the line
+     * @param end    the index just past the last byte of the line, or -1 for the buffer's limit
+     */
+    public void reset(ByteBuffer buffer, int start, int end) {
+        if (end < 0) {
+            end = buffer.limit();
+        }
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+        this.lineText = null;
+        this.customerIdText = null;
+        this.description = null;
+        this.wellFormed = parse();
+    }
+
+    // Decodes all fields; returns false as soon as the line turns out to be malformed
+    private boolean parse() {
+        customerId = 0;
+        quality = '\0';
+        errorCode = -1;
+        descriptionStart = end;
+
+        // Field 1: customer ID (digits only)
+        int pos = start;
+        idStart = pos;
+        while (pos < end && buffer.get(pos) != ',') {
+            int digit = buffer.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            customerId = customerId * 10 + digit;
+            pos++;
+        }
+        idEnd = pos;
+        if (idEnd == idStart || idEnd - idStart > 18 || pos >= end) {
+            return false;
+        }
+        pos++;
+
+        // Field 2: date in dd.MM.yyyy format
+        if (pos + 10 > end || (pos + 10 < end && buffer.get(pos + 10) != ',')
+                || buffer.get(pos + 2) != '.' || buffer.get(pos + 5) != '.') {
+            return false;
+        }
+        day = digits(pos, 2);
+        month = digits(pos + 3, 2);
+        year = digits(pos + 6, 4);
+        if (year < 0 || day < 1 || month < 1 || month > 12 || day > DateCodec.lengthOfMonth(year, month)) {
+            return false;
+        }
+        epochDay = DateCodec.toEpochDay(year, month, day);
+        pos += 11;
+
+        // Fields 3-6: usage values
+        long value;
+        if ((value = nextInt(pos)) == Long.MIN_VALUE) return false;
+        usage1 = (int) value;
+        pos = fieldEnd + 1;
+        if ((value = nextInt(pos)) == Long.MIN_VALUE) return false;
+        usage2 = (int) value;
+        pos = fieldEnd + 1;
+        if ((value = nextInt(pos)) == Long.MIN_VALUE) return false;
+        usage3 = (int) value;
+        pos = fieldEnd + 1;
+        if ((value = nextInt(pos)) == Long.MIN_VALUE) return false;
+        usage4 = (int) value;
+        pos = fieldEnd + 1;
+
+        // Field 7: quality, a single character
+        int qualityStart = Math.min(pos, end);
+        int qualityEnd = indexOfComma(qualityStart);
+        if (qualityEnd - qualityStart == 1) {
+            quality = (char) buffer.get(qualityStart);
+        }
+
+        // Fields 8 and 9: optional error code and free-text description
+        boolean hasTrailingData = qualityEnd > qualityStart;
+        if (qualityEnd < end) {
+            int codeStart = qualityEnd + 1;
+            int codeEnd = indexOfComma(codeStart);
+            if (codeEnd > codeStart) {
+                hasTrailingData = true;
+                int code = 0;
+                for (int i = codeStart; i < codeEnd && code >= 0; i++) {
+                    int digit = buffer.get(i) - '0';
+                    code = (digit < 0 || digit > 9) ? -1 : code * 10 + digit;
+                }
+                errorCode = code;
+            }
+            descriptionStart = Math.min(codeEnd + 1, end);
+            hasTrailingData |= descriptionStart < end;
+        }
+
+        // Like String.split, trailing empty fields do not count towards the seven required fields
+        return hasTrailingData;
+    }
+
+    // Parses a signed integer field starting at pos; returns Long.MIN_VALUE if it is empty or invalid
+    private long nextInt(int pos) {
+        if (pos >= end) {
+            return Long.MIN_VALUE;
+        }
+        boolean negative = buffer.get(pos) == '-';
+        int i = negative ? pos + 1 : pos;
+        int digitsStart = i;
+        long value = 0;
+        while (i < end && buffer.get(i) != ',') {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+            i++;
+        }
+        fieldEnd = i;
+        if (i == digitsStart || value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+            return Long.MIN_VALUE;
+        }
+        return negative ? -value : value;
+    }
+
+    private int indexOfComma(int from) {
+        int i = from;
+        while (i < end && buffer.get(i) != ',') {
+            i++;
+        }
+        return i;
+    }
+
+    private int digits(int pos, int count) {
+        int value = 0;
+        for (int i = pos; i < pos + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private String decode(int from, int to) {
+        int length = to - from;
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(from, bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns whether the line could be decoded into all mandatory fields.
+     * Accessors other than {@link #line()} are only meaningful for well-formed records.
+     *
+     * @return true if the record is well-formed
+     */
+    public boolean isWellFormed() {
+        return wellFormed;
+    }
+
+    /**
+     * Returns the full line, without line terminator. The string is created on first use.
+     *
+     * @return the raw consumption record
+     */
+    public String line() {
+        if (lineText == null) {
+            lineText = decode(start, end);
+        }
+        return lineText;
+    }
+
+    /**
+     * Returns the numeric customer ID.
+     *
+     * @return the customer ID
+     */
+    public long customerId() {
+        return customerId;
+    }
+
+    /**
+     * Returns the customer ID exactly as written in the line. The string is created on first use.
+     *
+     * @return the customer ID text
+     */
+    public String customerIdText() {
+        if (customerIdText == null) {
+            customerIdText = decode(idStart, idEnd);
+        }
+        return customerIdText;
+    }
+
+    /**
+     * Returns the reading date as a count of days since 1970-01-01, as used by {@link java.time.LocalDate#ofEpochDay}.
+     *
+     * @return the reading date as an epoch day
+     */
+    public long epochDay() {
+        return epochDay;
+    }
+
+    /** @return the day of month of the reading date */
+    public int day() {
+        return day;
+    }
+
+    /** @return the month of the reading date, from 1 to 12 */
+    public int month() {
+        return month;
+    }
+
+    /** @return the year of the reading date */
+    public int year() {
+        return year;
+    }
+
+    /**
+     * Returns the reading date in the `dd.MM.yyyy` format used by the input file.
+     *
+     * @return the reading date text
+     */
+    public String dateText() {
+        return decode(idEnd + 1, idEnd + 11);
+    }
+
+    /** @return usage in the period 00:00 - 05:59 (nighttime) */
+    public int usage1() {
+        return usage1;
+    }
+
+    /** @return usage in the period 06:00 - 11:59 (daytime) */
+    public int usage2() {
+        return usage2;
+    }
+
+    /** @return usage in the period 12:00 - 17:59 (daytime) */
+    public int usage3() {
+        return usage3;
+    }
+
+    /** @return usage in the period 18:00 - 23:59 (nighttime) */
+    public int usage4() {
+        return usage4;
+    }
+
+    /**
+     * Returns the data quality indicator, or {@code '\0'} if the field is not a single character.
+     *
+     * @return 'A' for an actual reading, 'E' for an estimated one
+     */
+    public char quality() {
+        return quality;
+    }
+
+    /**
+     * Returns the error code carried by the line (e.g. 75 or 76).
+     *
+     * @return the error code, or -1 if the field is empty or not numeric
+     */
+    public int errorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Returns the free-text error description. The string is created on first use.
+     *
+     * @return the error description, or an empty string if there is none
+     */
+    public String description() {
+        if (description == null) {
+            description = descriptionStart < end ? decode(descriptionStart, end) : "";
+        }
+        return description;
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.invoiceapp.data;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * The `ConsumptionRecordParser` class reads a consumption data file through a memory mapping and
+ * decodes each line exactly once into a reusable {@link ConsumptionRecord}.
+ *
+ * <p>
+ * The file is mapped in windows of at most {@value #WINDOW_SIZE} bytes, so files larger than 2 GB are
+ * supported. Lines are never copied: the record decodes its fields directly from the mapped bytes,
+ * and the same record instance is handed to the consumer for every line.
+ * </p>
+ */
+public class ConsumptionRecordParser {
+
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    /**
+     * Parses every line of the given file.
+     *
+     * @param file     the consumption data file
+     * @param consumer receives the reusable record view for each line, in file order
+     * @return the number of lines parsed
+     * @throws IOException if the file cannot be mapped
+     */
+    public static long parse(Path file, Consumer<ConsumptionRecord> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return parse(channel, 0, channel.size(), consumer);
+        }
+    }
+
+    /**
+     * Parses the lines of the byte range {@code [from, to)} of an open file.
+     * The range must start at the beginning of a line and end either just after a line feed or at
+     * the end of the file.
+     *
+     * @param channel  an open channel on the consumption data file
+     * @param from     the first byte of the range
+     * @param to       the byte just past the end of the range
+     * @param consumer receives the reusable record view for each line, in file order
+     * @return the number of lines parsed
+     * @throws IOException if the range cannot be mapped or contains a line longer than the mapping window
+     */
+    public static long parse(FileChannel channel, long from, long to, Consumer<ConsumptionRecord> consumer) throws IOException {
+        ConsumptionRecord record = new ConsumptionRecord();
+        long count = 0;
+        long position = from;
+
+        while (position < to) {
+            int length = (int) Math.min(WINDOW_SIZE, to - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            boolean lastWindow = position + length >= to;
+
+            // Hand out every complete line in this window
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(i) == '\n') {
+                    record.reset(buffer, lineStart, i);
+                    consumer.accept(record);
+                    count++;
+                    lineStart = i + 1;
+                }
+            }
+
+            if (lastWindow) {
+                // A final line without a line feed
+                if (lineStart < length) {
+                    record.reset(buffer, lineStart, length);
+                    consumer.accept(record);
+                    count++;
+                }
+                position = to;
+            } else if (lineStart == 0) {
+                throw new IOException("Line at offset " + position + " is longer than " + WINDOW_SIZE + " bytes");
+            } else {
+                // Re-map starting at the incomplete line
+                position += lineStart;
+            }
+        }
+        return count;
+    }
+}
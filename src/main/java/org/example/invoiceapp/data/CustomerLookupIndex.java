@@ -0,0 +1,443 @@
+package org.example.invoiceapp.data;
+
+import org.example.invoiceapp.util.ConfigLoader;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.logging.*;
+import java.util.zip.CRC32;
+
+/**
+ * The `CustomerLookupIndex` class looks up customer names in a compact, memory-mapped index of the
+ * customer lookup file, instead of a `HashMap` of every line.
+ *
+ * <p>
+ * The index file holds the customer IDs in ascending order, the offset of each customer's entry in a
+ * UTF-8 blob, and the blob itself. An entry is the ID as written in the lookup file, a comma and the
+ * name, so that iterating the index returns IDs such as `007` unchanged. A lookup is a binary search over the mapped IDs and decodes only
+ * the name that was found, so the lookup costs no heap per customer and opens in constant time. The
+ * index is built from the lookup file once, and rebuilt only when the size or CRC-32 checksum of the
+ * lookup file recorded in its header no longer matches.
+ * </p>
+ *
+ * <p>
+ * A billing run archives the lookup file. While it is missing, the index built from it is used as it is,
+ * so bills can still be reprinted from a reading snapshot after the run.
+ * </p>
+ *
+ * <p>
+ * Lookup lines are `ID,Name`; as with the former map, the last line wins for a duplicate ID. Lines
+ * without a name or with a non-numeric ID cannot be billed and are left out.
+ * </p>
+ */
+public class CustomerLookupIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(CustomerLookupIndex.class.getName());
+    private static final String LOOKUP_FILE = ConfigLoader.getProperty("customer.lookup.path");
+    private static final String INDEX_FILE = ConfigLoader.getProperty("customer.index.path");
+    private static final int MAGIC = 0x4941434C; // "IACL"
+    private static final int VERSION = 2;
+    // magic, version, source size, source checksum, customer count, blob size
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+
+    private static CustomerLookupIndex instance;
+    private static long instanceSourceSize;
+    private static long instanceSourceModified;
+
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final int offsetsStart;
+    private final int blobStart;
+    private final boolean rebuilt;
+
+    private CustomerLookupIndex(MappedByteBuffer buffer, boolean rebuilt) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(24);
+        this.offsetsStart = HEADER_SIZE + size * 8;
+        this.blobStart = offsetsStart + (size + 1) * 4;
+        this.rebuilt = rebuilt;
+    }
+
+    /**
+     * Returns the index of the configured `customer.lookup.path`, kept at `customer.index.path`. The open
+     * index is reused as long as the lookup file's size and modification time are unchanged, or as long as
+     * the lookup file is missing.
+     *
+     * @return the index
+     * @throws IOException if the lookup file cannot be read or the index cannot be written, or if both
+     *                     are missing
+     */
+    public static synchronized CustomerLookupIndex getInstance() throws IOException {
+        Path source = Path.of(LOOKUP_FILE);
+        if (Files.notExists(source)) {
+            if (instance == null) {
+                instance = open(source, Path.of(INDEX_FILE));
+                instanceSourceSize = -1;
+            }
+            return instance;
+        }
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        if (instance == null || instanceSourceSize != attributes.size()
+                || instanceSourceModified != attributes.lastModifiedTime().toMillis()) {
+            instance = open(source, Path.of(INDEX_FILE));
+            instanceSourceSize = attributes.size();
+            instanceSourceModified = attributes.lastModifiedTime().toMillis();
+        }
+        return instance;
+    }
+
+    /**
+     * Opens the index of a lookup file, building it first if the index file is missing, unreadable or
+     * was built from different contents. If the lookup file itself is missing, e.g. because it was
+     * archived, the existing index is opened without checking it against the lookup file.
+     *
+     * @param source    the customer lookup file
+     * @param indexFile where the index is kept
+     * @return the index
+     * @throws IOException if the lookup file cannot be read or the index cannot be written, or if the
+     *                     lookup file is missing and there is no readable index
+     */
+    public static CustomerLookupIndex open(Path source, Path indexFile) throws IOException {
+        if (Files.notExists(source)) {
+            MappedByteBuffer buffer = map(indexFile);
+            if (buffer == null) {
+                throw new NoSuchFileException(source.toString(), null, "No customer lookup index at " + indexFile);
+            }
+            CustomerLookupIndex index = new CustomerLookupIndex(buffer, false);
+            LOGGER.info("Customer lookup file " + source + " is missing; opened the index built from it: " + index.size + " customers.");
+            return index;
+        }
+        long sourceSize = Files.size(source);
+        long checksum = checksum(source);
+        MappedByteBuffer buffer = mapIfCurrent(indexFile, sourceSize, checksum);
+        boolean rebuilt = buffer == null;
+        if (rebuilt) {
+            build(source, indexFile, sourceSize, checksum);
+            buffer = mapIfCurrent(indexFile, sourceSize, checksum);
+            if (buffer == null) {
+                throw new IOException("Customer lookup index " + indexFile + " could not be read back");
+            }
+        }
+        CustomerLookupIndex index = new CustomerLookupIndex(buffer, rebuilt);
+        LOGGER.info("Customer lookup index " + (rebuilt ? "built" : "opened") + ": " + index.size + " customers.");
+        return index;
+    }
+
+    /**
+     * Looks up a customer's name.
+     *
+     * @param customerId the numeric customer ID
+     * @return the name, or null if the customer is not in the lookup
+     */
+    public String getName(long customerId) {
+        int position = find(customerId);
+        return position < 0 ? null : nameAt(position);
+    }
+
+    /**
+     * Looks up a customer's name by the ID text of the input files.
+     *
+     * @param customerId the customer ID
+     * @return the name, or null if the customer is not in the lookup or the ID is not numeric
+     */
+    public String getName(String customerId) {
+        try {
+            return getName(Long.parseLong(customerId));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** @return the number of customers in the index */
+    public int size() {
+        return size;
+    }
+
+    /** @return true if the index was built when it was opened, false if an existing index was reused */
+    public boolean isRebuilt() {
+        return rebuilt;
+    }
+
+    /**
+     * Returns a read-only map view of the index, keyed by customer ID text and iterated in ascending ID
+     * order. Lookups go to the index; only iteration creates entry objects. Iteration returns the IDs as
+     * written in the lookup file, e.g. with leading zeros, while lookups match any text of the same number.
+     *
+     * @return the map view
+     */
+    public Map<String, String> asMap() {
+        return new AbstractMap<>() {
+            @Override
+            public String get(Object key) {
+                return key instanceof String ? getName((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return get(key) != null;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Set<Entry<String, String>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public Iterator<Entry<String, String>> iterator() {
+                        return new Iterator<>() {
+                            private int position;
+
+                            @Override
+                            public boolean hasNext() {
+                                return position < size;
+                            }
+
+                            @Override
+                            public Entry<String, String> next() {
+                                if (position >= size) {
+                                    throw new NoSuchElementException();
+                                }
+                                Entry<String, String> entry = new SimpleImmutableEntry<>(idTextAt(position), nameAt(position));
+                                position++;
+                                return entry;
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    private long idAt(int position) {
+        return buffer.getLong(HEADER_SIZE + position * 8);
+    }
+
+    private String nameAt(int position) {
+        int start = buffer.getInt(offsetsStart + position * 4);
+        int end = buffer.getInt(offsetsStart + (position + 1) * 4);
+        int separator = separatorAt(start, end);
+        byte[] name = new byte[end - separator - 1];
+        buffer.get(blobStart + separator + 1, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private String idTextAt(int position) {
+        int start = buffer.getInt(offsetsStart + position * 4);
+        int end = buffer.getInt(offsetsStart + (position + 1) * 4);
+        byte[] id = new byte[separatorAt(start, end) - start];
+        buffer.get(blobStart + start, id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    // Returns the blob offset of the comma between the ID text and the name of an entry
+    private int separatorAt(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(blobStart + i) == ',') {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Corrupt customer lookup index entry at offset " + start);
+    }
+
+    // Binary search over the sorted IDs; returns the position, or -1 if absent
+    private int find(long customerId) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long id = idAt(middle);
+            if (id < customerId) {
+                low = middle + 1;
+            } else if (id > customerId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // Maps the index file if it exists and was built from a lookup file with this size and checksum
+    private static MappedByteBuffer mapIfCurrent(Path indexFile, long sourceSize, long checksum) {
+        MappedByteBuffer buffer = map(indexFile);
+        if (buffer == null || buffer.getLong(8) != sourceSize || buffer.getLong(16) != checksum) {
+            return null;
+        }
+        return buffer;
+    }
+
+    // Maps the index file if it exists and is a complete index of this version
+    private static MappedByteBuffer map(Path indexFile) {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            long expectedSize = HEADER_SIZE + buffer.getInt(24) * 12L + 4 + buffer.getInt(28);
+            return buffer.capacity() == expectedSize ? buffer : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void build(Path source, Path indexFile, long sourceSize, long checksum) throws IOException {
+        long start = System.nanoTime();
+        long[] ids = new long[1024];
+        int[] nameEnds = new int[1024];
+        ByteArrayOutputStream blob = new ByteArrayOutputStream();
+        int count = 0;
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(source)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                String idText = fields[0].trim();
+                long id;
+                try {
+                    id = Long.parseLong(idText);
+                } catch (NumberFormatException e) {
+                    skipped++;
+                    continue;
+                }
+                if (fields.length < 2) {
+                    skipped++;
+                    continue;
+                }
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                    nameEnds = Arrays.copyOf(nameEnds, count * 2);
+                }
+                // Split on commas, so neither the ID text nor the name contains one
+                blob.writeBytes(idText.getBytes(StandardCharsets.UTF_8));
+                blob.write(',');
+                blob.writeBytes(fields[1].getBytes(StandardCharsets.UTF_8));
+                ids[count] = id;
+                nameEnds[count] = blob.size();
+                count++;
+            }
+        }
+        if (skipped > 0) {
+            LOGGER.warning("Skipped " + skipped + " customer lookup lines without a numeric ID and a name.");
+        }
+
+        // Sort line numbers by ID, keeping file order among duplicates so the last line wins
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        sortById(order, new int[count], 0, count, ids);
+
+        byte[] names = blob.toByteArray();
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i + 1 < count && ids[order[i + 1]] == ids[order[i]]) {
+                continue;
+            }
+            order[unique++] = order[i];
+        }
+
+        Path directory = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, indexFile.getFileName().toString(), ".tmp");
+        try {
+            int blobSize = 0;
+            for (int i = 0; i < unique; i++) {
+                int line = order[i];
+                blobSize += nameEnds[line] - (line == 0 ? 0 : nameEnds[line - 1]);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(checksum);
+                out.writeInt(unique);
+                out.writeInt(blobSize);
+                for (int i = 0; i < unique; i++) {
+                    out.writeLong(ids[order[i]]);
+                }
+                int offset = 0;
+                out.writeInt(0);
+                for (int i = 0; i < unique; i++) {
+                    int line = order[i];
+                    offset += nameEnds[line] - (line == 0 ? 0 : nameEnds[line - 1]);
+                    out.writeInt(offset);
+                }
+                for (int i = 0; i < unique; i++) {
+                    int line = order[i];
+                    int nameStart = line == 0 ? 0 : nameEnds[line - 1];
+                    out.write(names, nameStart, nameEnds[line] - nameStart);
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        LOGGER.info("Customer lookup index written to " + indexFile + " in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+    // Stable merge sort of line numbers by their ID
+    private static void sortById(int[] order, int[] scratch, int from, int to, long[] ids) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sortById(order, scratch, from, middle, ids);
+        sortById(order, scratch, middle, to, ids);
+        if (ids[order[middle - 1]] <= ids[order[middle]]) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && ids[scratch[left]] <= ids[scratch[right]])) {
+                order[i] = scratch[left++];
+            } else {
+                order[i] = scratch[right++];
+            }
+        }
+    }
+
+    private static long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                crc.update(chunk, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+}
@@ -3,9 +3,19 @@ package org.example.invoiceapp.data;
 /**
  * The `CustomerUsage` class represents a customer's electricity usage,
  * specifically divided into daytime and nighttime usage.
+ *
+ * <p>
+ * Usage aggregated from readings also carries its cost, priced reading by reading with the customer's
+ * tariff, in ten-thousandths of a lev. Usage that was only given as totals is not priced.
+ * </p>
  */
 public class CustomerUsage {
 
+    /**
+     * Returned by the cost accessors when the usage has not been priced.
+     */
+    public static final long NOT_PRICED = Long.MIN_VALUE;
+
     /**
      * The amount of electricity (in kWh) consumed during the daytime.
      */
@@ -16,6 +26,16 @@ public class CustomerUsage {
      */
     private int nighttimeUsage;
 
+    /**
+     * The cost of the daytime usage in ten-thousandths of a lev, or {@link #NOT_PRICED}.
+     */
+    private long daytimeCost = NOT_PRICED;
+
+    /**
+     * The cost of the nighttime usage in ten-thousandths of a lev, or {@link #NOT_PRICED}.
+     */
+    private long nighttimeCost = NOT_PRICED;
+
     /**
      * Constructs a new `CustomerUsage` object with specified initial values for
      * daytime and nighttime usage.
@@ -28,6 +48,21 @@ public class CustomerUsage {
         this.nighttimeUsage = nighttimeUsage;
     }
 
+    /**
+     * Constructs a new `CustomerUsage` object for usage that has already been priced.
+     *
+     * @param daytimeUsage   amount of daytime electricity usage (in kWh)
+     * @param nighttimeUsage amount of nighttime electricity usage (in kWh)
+     * @param daytimeCost    cost of the daytime usage, in ten-thousandths of a lev
+     * @param nighttimeCost  cost of the nighttime usage, in ten-thousandths of a lev
+     */
+    public CustomerUsage(int daytimeUsage, int nighttimeUsage, long daytimeCost, long nighttimeCost) {
+        this.daytimeUsage = daytimeUsage;
+        this.nighttimeUsage = nighttimeUsage;
+        this.daytimeCost = daytimeCost;
+        this.nighttimeCost = nighttimeCost;
+    }
+
     /**
      * Constructs a new `CustomerUsage` object with zero usage for both daytime
      * and nighttime.
@@ -72,4 +107,31 @@ public class CustomerUsage {
     public int getNighttimeUsage() {
         return nighttimeUsage;
     }
+
+    /**
+     * Returns whether the usage carries its cost. Adding usage afterwards leaves the cost unchanged.
+     *
+     * @return true if the usage has been priced
+     */
+    public boolean isPriced() {
+        return daytimeCost != NOT_PRICED && nighttimeCost != NOT_PRICED;
+    }
+
+    /**
+     * Returns the cost of the daytime usage.
+     *
+     * @return the cost in ten-thousandths of a lev, or {@link #NOT_PRICED}
+     */
+    public long getDaytimeCost() {
+        return daytimeCost;
+    }
+
+    /**
+     * Returns the cost of the nighttime usage.
+     *
+     * @return the cost in ten-thousandths of a lev, or {@link #NOT_PRICED}
+     */
+    public long getNighttimeCost() {
+        return nighttimeCost;
+    }
 }
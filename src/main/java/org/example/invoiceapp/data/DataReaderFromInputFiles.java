@@ -1,12 +1,14 @@
 package org.example.invoiceapp.data;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.*;
 import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.Metrics;
 
-import static org.example.invoiceapp.data.ClientManager.addClient;
 
 /**
  * The `DataReader` class is responsible for reading data files related to consumption
@@ -15,53 +17,129 @@ public class DataReaderFromInputFiles {
     // Static configuration properties loaded via ConfigLoader
     private static final Logger LOGGER = Logger.getLogger(DataReaderFromInputFiles.class.getName());
     private static final String CONSUMPTION_DATA_PATH = ConfigLoader.getProperty("consumption.data.path");
-    private static final String CUSTOMER_LOOKUP_PATH = ConfigLoader.getProperty("customer.lookup.path");
+    private static final Metrics.Timer READ_TIMER = Metrics.timer("invoiceapp_read_consumption_seconds", "Time to read the consumption file");
+    private static final Metrics.Counter RECORDS_READ = Metrics.counter("invoiceapp_records_read_total", "Consumption records read");
 
     /**
      * Reads consumption data from a file and returns it as a list of strings.
      * Each line in the file represents a separate record.
      *
+     * <p>
+     * This is a thin wrapper over {@link #streamConsumptionData(Consumer)} that collects every line;
+     * prefer the streaming variant when the file does not need to be held in memory.
+     * </p>
      *
      * @return a list of strings representing the consumption records.
      */
     public static List<String> readConsumptionData() {
         List<String> records = new ArrayList<>();
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(CONSUMPTION_DATA_PATH))) {
+        if (streamConsumptionData(Paths.get(CONSUMPTION_DATA_PATH), records::add) >= 0) {
+            LOGGER.info("Consumption data loaded successfully in memory.");
+        }
+        return records;
+    }
+
+    /**
+     * Reads consumption data from a file and hands each line to the given consumer as soon as it is read.
+     * No line is retained after the consumer returns, so memory use does not depend on the file size.
+     *
+     * @param consumer receives each consumption record, in file order
+     * @return the number of records read, or -1 if the file could not be read
+     */
+    public static long streamConsumptionData(Consumer<String> consumer) {
+        return streamConsumptionData(Paths.get(CONSUMPTION_DATA_PATH), consumer);
+    }
+
+    /**
+     * Reads the lines of the given consumption file like {@link #streamConsumptionData(Consumer)}.
+     *
+     * @param file     the consumption file
+     * @param consumer receives each consumption record, in file order
+     * @return the number of records read, or -1 if the file could not be read
+     */
+    public static long streamConsumptionData(Path file, Consumer<String> consumer) {
+        long start = System.nanoTime();
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
             String line;
-            // Read each line of the consumption data file and add it to the records list.
+            // Pass each line of the consumption data file straight to the consumer.
             while ((line = reader.readLine()) != null) {
-                records.add(line);
+                consumer.accept(line);
+                count++;
             }
-            LOGGER.info("Consumption data loaded successfully in memory.");
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             // Log an error message if reading the consumption data fails.
             LOGGER.log(Level.SEVERE, "Failed to load consumption data", e);
+            return -1;
+        } finally {
+            RECORDS_READ.add(count);
+            READ_TIMER.recordSince(start);
         }
-        return records;
+        return count;
     }
 
     /**
-     * Reads customer lookup data from a file and returns it as a map.
-     * The map keys are customer IDs (as strings), and the values are customer names (as strings).
+     * Parses consumption data straight from a memory mapping of the file and hands each line to the
+     * given consumer as a reusable {@link ConsumptionRecord}. Every line is decoded exactly once and no
+     * per-line objects are created; the consumer must not keep the record after it returns.
      *
+     * @param consumer receives the record view for each line, in file order
+     * @return the number of records read, or -1 if the file could not be read
+     */
+    public static long streamConsumptionRecords(Consumer<ConsumptionRecord> consumer) {
+        try {
+            return streamConsumptionRecords(Paths.get(CONSUMPTION_DATA_PATH), 0, Long.MAX_VALUE, consumer);
+        } catch (IOException | UncheckedIOException e) {
+            // Log an error message if reading the consumption data fails.
+            LOGGER.log(Level.SEVERE, "Failed to load consumption data", e);
+            return -1;
+        }
+    }
+
+    /**
+     * Parses the byte range {@code [from, to)} of a consumption file like
+     * {@link #streamConsumptionRecords(Consumer)}, so that only the readings appended since a previous
+     * run are read.
+     *
+     * @param file     the consumption file
+     * @param from     the first byte to read; it must be the start of a line
+     * @param to       the byte just past the last one to read, capped at the file size
+     * @param consumer receives the record view for each line, in file order
+     * @return the number of records read
+     * @throws IOException if the file cannot be read
+     */
+    public static long streamConsumptionRecords(Path file, long from, long to, Consumer<ConsumptionRecord> consumer) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long count = ConsumptionRecordParser.parse(channel, from, Math.min(to, channel.size()), consumer);
+            RECORDS_READ.add(count);
+            return count;
+        } finally {
+            // In the streaming pipeline this includes validating and aggregating each record
+            READ_TIMER.recordSince(start);
+        }
+    }
+
+    /**
+     * Reads customer lookup data and returns it as a map.
+     * The map keys are customer IDs (as strings), and the values are customer names (as strings).
+     * The map is a read-only view of the shared {@link CustomerLookupIndex}, so the lookup is not copied
+     * onto the heap. The `clients` table is then synchronized with the lookup, see
+     * {@link ClientManager#syncClients(Map)}.
      *
      * @return a map containing customer IDs and names.
      */
     public static Map<String, String> readCustomerLookup() {
-        Map<String, String> customerNames = new HashMap<>();
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(CUSTOMER_LOOKUP_PATH))) {
-            String line;
-            // Read each line of the customer lookup file, split by comma, and add the customer ID and name to the map.
-            while ((line = reader.readLine()) != null) {
-                String[] fields = line.split(",");
-                customerNames.put(fields[0], fields[1]);
-                addClient(fields[0], fields[1]);
-            }
-            LOGGER.info("Customer lookup data loaded successfully in memory.");
+        try {
+            Map<String, String> customerNames = CustomerLookupIndex.getInstance().asMap();
+            LOGGER.info("Customer lookup data loaded successfully.");
+            // Push only the new and renamed clients to the database
+            ClientManager.syncClients(customerNames);
+            return customerNames;
         } catch (IOException e) {
             // Log an error message if reading the customer lookup data fails.
             LOGGER.log(Level.SEVERE, "Failed to load customer lookup data", e);
+            return Collections.emptyMap();
         }
-        return customerNames;
     }
 }
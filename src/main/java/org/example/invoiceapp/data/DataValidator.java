@@ -1,16 +1,12 @@
 package org.example.invoiceapp.data;
 
 import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.Metrics;
 
 import java.io.*;
 import java.nio.file.*;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.logging.*;
 
 /**
@@ -28,11 +24,11 @@ import java.util.logging.*;
  */
 public class DataValidator {
     // Static configuration properties loaded via ConfigLoader
-    private static final String DB_URL = ConfigLoader.getProperty("db.url");
-    private static final String DB_USER = ConfigLoader.getProperty("db.username");
-    private static final String DB_PASSWORD = ConfigLoader.getProperty("db.password");
     private static final String ERROR_FILE = ConfigLoader.getProperty("error.file.path");
     private static final Logger LOGGER = Logger.getLogger(DataValidator.class.getName());
+    private static final Metrics.Timer VALIDATION_TIMER = Metrics.timer("invoiceapp_validate_records_seconds", "Time to validate a list of consumption records");
+    private static final Metrics.Counter VALID_RECORDS = Metrics.counter("invoiceapp_records_valid_total", "Consumption records that passed validation");
+    private static final Metrics.Counter INVALID_RECORDS = Metrics.counter("invoiceapp_records_invalid_total", "Consumption records that failed validation or could not be parsed");
 
     /**
      * Validates a list of consumption records and separates valid records from invalid ones.
@@ -40,8 +36,9 @@ public class DataValidator {
      * <p>
      * The method processes a list of records, checking each record against the following criteria:
      * - The record must contain at least 7 fields.
-     * - The "Quality" field (index 6) must be either "A" (actual) or "E" (estimated).
-     * - The usage values (Usage1, Usage2, Usage3, Usage4) must all be greater than 0.
+     * - The record must pass the {@link ValidationRules} configured by `validation.rules`; by default the
+     *   "Quality" field (index 6) must be either "A" (actual) or "E" (estimated) and the usage values
+     *   (Usage1, Usage2, Usage3, Usage4) must all be greater than 0.
      * </p>
      *
      * <p>
@@ -50,80 +47,208 @@ public class DataValidator {
      * returned in the list of valid records.
      * </p>
      *
+     * <p>
+     * Records that cannot be parsed (see {@link ConsumptionRecord#isWellFormed()}) are written to the
+     * error file only. This is a thin wrapper over {@link #openValidationStream(Consumer)} that collects
+     * the valid records.
+     * </p>
+     *
      * @param records a list of strings representing consumption records in the format:
      *                "Customer ID,Date,Usage1,Usage2,Usage3,Usage4,Quality,..."
      * @return a list of valid records that meet the validation criteria
      */
     public static List<String> validateRecords(List<String> records) {
+        try {
+            return validateRecords(records, ErrorRecordSink.open(Paths.get(ERROR_FILE)));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Failed to validate records", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Validates a list of consumption records like {@link #validateRecords(List)}, handing the invalid
+     * records to the given sink instead of the configured error file and database.
+     *
+     * @param records   the consumption record lines
+     * @param errorSink receives the invalid records; it is closed when validation completes
+     * @return a list of valid records that meet the validation criteria
+     */
+    public static List<String> validateRecords(List<String> records, ErrorRecordSink errorSink) {
+        long start = System.nanoTime();
         List<String> validRecords = new ArrayList<>();
 
-        // Try-with-resources block for writing invalid records to the error file
-        try (BufferedWriter writerForE_Errors = Files.newBufferedWriter(Paths.get(ERROR_FILE));
-             Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-
-            // Prepare the SQL statement once
-            String sql = "INSERT INTO error_records (customer_id, reading_date, usage1, usage2, usage3, usage4, quality, error_code, error_description) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-                // Process each record in the provided list
-                for (String line : records) {
-                    String[] fields = line.split(",");
-
-                    // Check if the record has at least 7 fields, else consider it invalid
-                    if (fields.length < 7) {
-                        writerForE_Errors.write(line);  // Write invalid record to the error file
-                        writerForE_Errors.newLine();
-                        continue;
-                    }
-
-                    // Extract quality and usage values from the record
-                    String quality = fields[6];
-                    int energyUsageEarlyMorning = Integer.parseInt(fields[2]);
-                    int energyUsageMorning = Integer.parseInt(fields[3]);
-                    int energyUsageAfternoon = Integer.parseInt(fields[4]);
-                    int energyUsageEvening = Integer.parseInt(fields[5]);
-
-                    // Validate the record based on the criteria
-                    if (("A".equals(quality) || "E".equals(quality)) && energyUsageEarlyMorning > 0 && energyUsageMorning > 0 && energyUsageAfternoon > 0 && energyUsageEvening > 0) {
-                        validRecords.add(line);  // Add valid record to the result list
-                    } else {
-                        writerForE_Errors.write(line);  // Write invalid record to the error file
-                        writerForE_Errors.newLine();
-
-                        // Extract necessary fields for the error record
-                        String customerId = fields[0];
-                        String readingDate = fields[1];
-                        int errorCode = 0000;  // Example error code by default
-                        String errorDescription = "Invalid record";
-
-                        // Convert readingDate to java.sql.Date
-                        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy");
-                        LocalDate localDate = LocalDate.parse(readingDate, formatter);
-                        java.sql.Date sqlDate = java.sql.Date.valueOf(localDate);
-
-                        // Bind parameters to the prepared statement
-                        pstmt.setString(1, customerId);
-                        pstmt.setDate(2, sqlDate);
-                        pstmt.setInt(3, energyUsageEarlyMorning);
-                        pstmt.setInt(4, energyUsageMorning);
-                        pstmt.setInt(5, energyUsageAfternoon);
-                        pstmt.setInt(6, energyUsageEvening);
-                        pstmt.setString(7, quality);
-                        pstmt.setInt(8, errorCode);
-                        pstmt.setString(9, errorDescription);
-                        pstmt.executeUpdate();
-                        LOGGER.info("Error record saved to database for customer ID: " + customerId);
-                    }
-                }
+        try (ValidationStream validator = openValidationStream(record -> validRecords.add(record.line()), errorSink)) {
+            // Process each record in the provided list
+            for (String line : records) {
+                validator.accept(line);
             }
-
-            // Log a message when the validation process is complete
-            LOGGER.info("Records validated. Invalid records dumped to E_records.txt.");
-        } catch (IOException | SQLException e) {
+        } catch (IOException | UncheckedIOException | ValidationException e) {
             // Log a SEVERE error if file writing or reading fails
             LOGGER.log(Level.SEVERE, "Failed to validate records", e);
         }
 
+        VALIDATION_TIMER.recordSince(start);
         return validRecords;
     }
+
+    /**
+     * Checks a record against the validation criteria without any side effects.
+     * The record must be well-formed and pass the configured {@link ValidationRules}.
+     *
+     * @param record the parsed consumption record
+     * @return true if the record is valid
+     */
+    public static boolean isValid(ConsumptionRecord record) {
+        return record.isWellFormed() && ValidationRules.getInstance().accepts(record);
+    }
+
+    /**
+     * Opens a validation stream that checks records one at a time.
+     *
+     * <p>
+     * Valid records are passed on to {@code validRecordConsumer} immediately; invalid records are
+     * handed to an {@link ErrorRecordSink}, which writes them to the error file and the `error_records`
+     * table in batches on its own thread. The stream must be closed once all records have been fed to it;
+     * closing waits until every invalid record has been written.
+     * </p>
+     *
+     * @param validRecordConsumer receives each record that passes validation, in input order; the record
+     *                            view is reused, so it must not be kept after the consumer returns
+     * @return an open validation stream
+     * @throws IOException if the error file cannot be opened
+     */
+    public static ValidationStream openValidationStream(Consumer<ConsumptionRecord> validRecordConsumer) throws IOException {
+        ErrorRecordSink errorSink = ErrorRecordSink.open(Paths.get(ERROR_FILE));
+        return new ValidationStream(validRecordConsumer, errorSink::add, errorSink);
+    }
+
+    /**
+     * Opens the error sink for the configured error file and database, e.g. to write the
+     * {@link ErrorRecordSink.Buffer}s of {@link #openBufferedValidationStream(Consumer, ErrorRecordSink.Buffer)}.
+     *
+     * @return an open error sink; the caller must close it
+     * @throws IOException if the error file cannot be opened
+     */
+    public static ErrorRecordSink openErrorSink() throws IOException {
+        return ErrorRecordSink.open(Paths.get(ERROR_FILE));
+    }
+
+    /**
+     * Opens a validation stream that hands invalid records to the given sink.
+     *
+     * @param validRecordConsumer receives each record that passes validation, in input order
+     * @param errorSink           receives the invalid records; it is closed together with the stream
+     * @return an open validation stream
+     */
+    public static ValidationStream openValidationStream(Consumer<ConsumptionRecord> validRecordConsumer, ErrorRecordSink errorSink) {
+        return new ValidationStream(validRecordConsumer, errorSink::add, errorSink);
+    }
+
+    /**
+     * Opens a validation stream that holds invalid records back in a buffer, e.g. one per consumption
+     * file validated concurrently. The caller passes the buffer to {@link ErrorRecordSink#addAll} once the
+     * whole file has been read, so that the error file lists each file's records together and in file
+     * order, and a file that fails partway through leaves no records behind.
+     *
+     * @param validRecordConsumer receives each record that passes validation, in input order
+     * @param errorBuffer         receives the invalid records
+     * @return an open validation stream
+     */
+    public static ValidationStream openBufferedValidationStream(Consumer<ConsumptionRecord> validRecordConsumer, ErrorRecordSink.Buffer errorBuffer) {
+        return new ValidationStream(validRecordConsumer, errorBuffer::add, null);
+    }
+
+    /**
+     * A push-based validator: each record passed to {@link #accept(ConsumptionRecord)} is validated and either
+     * forwarded to the downstream consumer or queued for the error sink, or buffered, with the error code of
+     * the first rule it fails.
+     * An interrupt while waiting for room in the sink's queue is rethrown as a {@link ValidationException}.
+     */
+    public static class ValidationStream implements Consumer<ConsumptionRecord>, AutoCloseable {
+        private final Consumer<ConsumptionRecord> validRecordConsumer;
+        private final ConsumptionRecord lineRecord = new ConsumptionRecord();
+        private final ErrorTarget errors;
+        private final ErrorRecordSink closedSink;
+        private final ValidationRules rules = ValidationRules.getInstance();
+
+        // Where invalid records go: a sink's queue or a buffer
+        private interface ErrorTarget {
+            void add(ErrorRecordSink.ErrorRecord record) throws InterruptedException;
+        }
+
+        private ValidationStream(Consumer<ConsumptionRecord> validRecordConsumer, ErrorTarget errors, ErrorRecordSink closedSink) {
+            this.validRecordConsumer = validRecordConsumer;
+            this.errors = errors;
+            this.closedSink = closedSink;
+        }
+
+        /**
+         * Parses and validates a single line.
+         *
+         * @param line a consumption record line
+         */
+        public void accept(String line) {
+            lineRecord.reset(line);
+            accept(lineRecord);
+        }
+
+        @Override
+        public void accept(ConsumptionRecord record) {
+            try {
+                validate(record);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ValidationException("Interrupted while queueing error record", e);
+            }
+        }
+
+        private void validate(ConsumptionRecord record) throws InterruptedException {
+            // Records with fewer than 7 fields or unparsable values go to the error file only
+            if (!record.isWellFormed()) {
+                INVALID_RECORDS.increment();
+                errors.add(new ErrorRecordSink.ErrorRecord(record.line(), null, 0, 0, 0, 0, 0, "", 0, ""));
+                return;
+            }
+
+            // Validate the record based on the rules; the first failing rule classifies it
+            int failed = rules.firstFailure(record);
+            if (failed < 0) {
+                VALID_RECORDS.increment();
+                validRecordConsumer.accept(record);  // Pass valid record downstream
+            } else {
+                INVALID_RECORDS.increment();
+                char quality = record.quality();
+                int errorCode = rules.errorCode(failed);
+                String errorDescription = rules.errorDescription(failed, record);
+
+                // The record view is reused for the next line, so copy the fields out
+                errors.add(new ErrorRecordSink.ErrorRecord(record.line(), record.customerIdText(), record.epochDay(),
+                        record.usage1(), record.usage2(), record.usage3(), record.usage4(),
+                        quality == '\0' ? "" : String.valueOf(quality), errorCode, errorDescription));
+                LOGGER.fine("Error record queued for customer ID: " + record.customerIdText());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closedSink == null) {
+                return;
+            }
+            closedSink.close();
+            // Log a message when the validation process is complete
+            LOGGER.info("Records validated. Invalid records dumped to E_records.txt.");
+        }
+    }
+
+    /**
+     * Thrown by a {@link ValidationStream} when an invalid record cannot be persisted.
+     */
+    public static class ValidationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public ValidationException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
 }
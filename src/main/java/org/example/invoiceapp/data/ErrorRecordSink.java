@@ -0,0 +1,297 @@
+package org.example.invoiceapp.data;
+
+import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.ConnectionPool;
+import org.example.invoiceapp.util.Metrics;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.*;
+
+/**
+ * The `ErrorRecordSink` class writes invalid consumption records to the error file and the
+ * `error_records` table off the validation thread.
+ *
+ * <p>
+ * Records are handed over through a bounded queue; when the queue is full, {@link #add(ErrorRecord)}
+ * blocks, so a flood of invalid readings slows validation down instead of exhausting memory. A single
+ * writer thread drains the queue, appends every line to the error file in the order it was added, and
+ * inserts the database rows with JDBC batches of `error.sink.batch.size` rows. A partial batch is
+ * flushed after `error.sink.flush.interval.ms` without new records, and when the sink is closed.
+ * </p>
+ *
+ * <p>
+ * Records of files validated at the same time are collected in a {@link Buffer} per file and added with
+ * {@link #addAll(Buffer)} once the file has been read, so that they are not interleaved.
+ * </p>
+ */
+public class ErrorRecordSink implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ErrorRecordSink.class.getName());
+    private static final String INSERT_ERROR_SQL = "INSERT INTO error_records (customer_id, reading_date, usage1, usage2, usage3, usage4, quality, error_code, error_description) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final Metrics.Timer DB_WRITE_TIMER = Metrics.timer("invoiceapp_db_error_records_write_seconds", "Time to insert one batch of error records");
+    private static final Metrics.Counter DB_ROWS = Metrics.counter("invoiceapp_db_error_records_rows_total", "Error records inserted into the database");
+    private static final Metrics.Counter DB_FAILED_ROWS = Metrics.counter("invoiceapp_db_error_records_failed_rows_total", "Error records that could not be inserted");
+    private static final ErrorRecord END_OF_STREAM = new ErrorRecord("", null, 0, 0, 0, 0, 0, "", 0, "");
+
+    private final BlockingQueue<ErrorRecord> queue;
+    private final BufferedWriter errorFileWriter;
+    private final DataSource dataSource;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Thread writerThread;
+    private final AtomicLong fileRecords = new AtomicLong();
+    private final AtomicLong databaseRecords = new AtomicLong();
+    private final AtomicLong failedRecords = new AtomicLong();
+    private volatile IOException fileFailure;
+
+    /**
+     * An invalid reading, copied out of the reusable {@link ConsumptionRecord} view.
+     */
+    public static class ErrorRecord {
+        final String line;
+        final String customerId; // null if the line could not be parsed; such records only go to the file
+        final long epochDay;
+        final int usage1;
+        final int usage2;
+        final int usage3;
+        final int usage4;
+        final String quality;
+        final int errorCode;
+        final String errorDescription;
+
+        public ErrorRecord(String line, String customerId, long epochDay, int usage1, int usage2, int usage3, int usage4,
+                           String quality, int errorCode, String errorDescription) {
+            this.line = line;
+            this.customerId = customerId;
+            this.epochDay = epochDay;
+            this.usage1 = usage1;
+            this.usage2 = usage2;
+            this.usage3 = usage3;
+            this.usage4 = usage4;
+            this.quality = quality;
+            this.errorCode = errorCode;
+            this.errorDescription = errorDescription;
+        }
+    }
+
+    /**
+     * Invalid records held back until their input file has been read completely. They are kept in memory,
+     * so a buffer grows with the number of invalid records of one file. Not thread-safe.
+     */
+    public static class Buffer {
+        private final List<ErrorRecord> records = new ArrayList<>();
+
+        /**
+         * Appends a record.
+         *
+         * @param record the record to write later
+         */
+        public void add(ErrorRecord record) {
+            records.add(record);
+        }
+
+        /** @return the number of buffered records */
+        public int size() {
+            return records.size();
+        }
+    }
+
+    /**
+     * Opens a sink on the configured error file and the shared connection pool, using the
+     * `error.sink.*` properties.
+     *
+     * @param errorFile the error file to (re)create
+     * @return an open sink
+     * @throws IOException if the error file cannot be created
+     */
+    public static ErrorRecordSink open(Path errorFile) throws IOException {
+        return new ErrorRecordSink(errorFile, ConnectionPool.getInstance(),
+                intProperty("error.sink.batch.size", 500),
+                intProperty("error.sink.flush.interval.ms", 1000),
+                intProperty("error.sink.queue.capacity", 10000));
+    }
+
+    /**
+     * Opens a sink.
+     *
+     * @param errorFile           the error file to (re)create
+     * @param dataSource          where the `error_records` rows are inserted, or null to write the file only
+     * @param batchSize           the number of rows per JDBC batch
+     * @param flushIntervalMillis how long a partial batch may wait for more rows
+     * @param queueCapacity       the number of records that may be waiting for the writer
+     * @throws IOException if the error file cannot be created
+     */
+    public ErrorRecordSink(Path errorFile, DataSource dataSource, int batchSize, long flushIntervalMillis, int queueCapacity) throws IOException {
+        this.errorFileWriter = Files.newBufferedWriter(errorFile);
+        this.dataSource = dataSource;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writerThread = new Thread(this::drain, "error-record-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues an invalid record, blocking while the queue is full.
+     *
+     * @param record the record to write
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    public void add(ErrorRecord record) throws InterruptedException {
+        queue.put(record);
+    }
+
+    /**
+     * Queues the records of a buffer in the order they were added, blocking while the queue is full.
+     * The records of concurrent callers are not interleaved.
+     *
+     * @param buffer the records to write
+     * @throws InterruptedException if interrupted while waiting for space in the queue
+     */
+    public synchronized void addAll(Buffer buffer) throws InterruptedException {
+        for (ErrorRecord record : buffer.records) {
+            queue.put(record);
+        }
+    }
+
+    // Runs on the writer thread until the end-of-stream marker is taken
+    private void drain() {
+        List<ErrorRecord> batch = new ArrayList<>(batchSize);
+        long batchStarted = 0;
+        try {
+            while (true) {
+                long wait = batch.isEmpty() ? Long.MAX_VALUE : batchStarted + flushIntervalMillis - System.currentTimeMillis();
+                ErrorRecord record = wait == Long.MAX_VALUE ? queue.take() : queue.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    flush(batch);
+                    continue;
+                }
+                if (record == END_OF_STREAM) {
+                    break;
+                }
+
+                writeLine(record.line);
+                if (record.customerId != null && dataSource != null) {
+                    if (batch.isEmpty()) {
+                        batchStarted = System.currentTimeMillis();
+                    }
+                    batch.add(record);
+                    if (batch.size() >= batchSize) {
+                        flush(batch);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flush(batch);
+        }
+    }
+
+    private void writeLine(String line) {
+        if (fileFailure != null) {
+            return;
+        }
+        try {
+            errorFileWriter.write(line);
+            errorFileWriter.newLine();
+            fileRecords.incrementAndGet();
+        } catch (IOException e) {
+            fileFailure = e;
+            LOGGER.log(Level.SEVERE, "Failed to write to the error file", e);
+        }
+    }
+
+    // Inserts the batch in one transaction; a failed batch is logged and counted, not retried
+    private void flush(List<ErrorRecord> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(INSERT_ERROR_SQL)) {
+            conn.setAutoCommit(false);
+            for (ErrorRecord record : batch) {
+                pstmt.setString(1, record.customerId);
+                pstmt.setDate(2, java.sql.Date.valueOf(LocalDate.ofEpochDay(record.epochDay)));
+                pstmt.setInt(3, record.usage1);
+                pstmt.setInt(4, record.usage2);
+                pstmt.setInt(5, record.usage3);
+                pstmt.setInt(6, record.usage4);
+                pstmt.setString(7, record.quality);
+                pstmt.setInt(8, record.errorCode);
+                pstmt.setString(9, record.errorDescription);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+            conn.commit();
+            databaseRecords.addAndGet(batch.size());
+            DB_ROWS.add(batch.size());
+            LOGGER.fine("Saved " + batch.size() + " error records to database.");
+        } catch (SQLException e) {
+            failedRecords.addAndGet(batch.size());
+            DB_FAILED_ROWS.add(batch.size());
+            LOGGER.log(Level.SEVERE, "Failed to save " + batch.size() + " error records to database", e);
+        }
+        DB_WRITE_TIMER.recordSince(start);
+        batch.clear();
+    }
+
+    /**
+     * Flushes all queued records, stops the writer thread and closes the error file.
+     *
+     * @throws IOException if writing or closing the error file failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END_OF_STREAM);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writerThread.interrupt();
+        } finally {
+            errorFileWriter.close();
+        }
+        LOGGER.info("Error records written: " + fileRecords.get() + " to file, " + databaseRecords.get()
+                + " to database, " + failedRecords.get() + " failed.");
+        if (fileFailure != null) {
+            throw fileFailure;
+        }
+    }
+
+    /** @return the number of lines written to the error file */
+    public long getFileRecordCount() {
+        return fileRecords.get();
+    }
+
+    /** @return the number of rows inserted into `error_records` */
+    public long getDatabaseRecordCount() {
+        return databaseRecords.get();
+    }
+
+    /** @return the number of rows that could not be inserted */
+    public long getFailedRecordCount() {
+        return failedRecords.get();
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        String value = ConfigLoader.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+}
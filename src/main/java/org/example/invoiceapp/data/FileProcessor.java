@@ -4,55 +4,197 @@ import org.example.invoiceapp.util.ConfigLoader;
 
 import java.io.*;
 import java.nio.file.*;
+import java.util.*;
 import java.util.logging.*;
 
+/**
+ * The `FileProcessor` class finds the input files of a run and archives them afterwards.
+ *
+ * <p>
+ * A run bills one or more consumption files against the customer lookup file. If
+ * `consumption.manifest.path` names an existing manifest, the consumption files are the ones it lists,
+ * one per line and relative to `input.data.path`; otherwise they are the files in `input.data.path`
+ * matching `consumption.data.glob`. Files are billed in name (or manifest) order.
+ * </p>
+ *
+ * <p>
+ * After the run every consumption file is moved on its own, to the "done" directory if it was billed or
+ * to the "interrupted" directory if it failed, so one bad file does not hold back the others.
+ * </p>
+ */
 public class FileProcessor {
     private static final Logger LOGGER = Logger.getLogger(FileProcessor.class.getName());
     private static final Path INPUT_DIR = Path.of(ConfigLoader.getProperty("input.data.path"));
     private static final Path DONE_DIR = Paths.get(ConfigLoader.getProperty("done.dir"));
     private static final Path INTERRUPTED_DIR = Paths.get(ConfigLoader.getProperty("error.dir"));
+    private static final Path CONSUMPTION_FILE = Path.of(ConfigLoader.getProperty("consumption.data.path"));
+    private static final Path LOOKUP_FILE = Path.of(ConfigLoader.getProperty("customer.lookup.path"));
+    private static final String CONSUMPTION_GLOB = ConfigLoader.getProperty("consumption.data.glob");
+    private static final String MANIFEST_PATH = ConfigLoader.getProperty("consumption.manifest.path");
 
-    public static void processFiles() {
+    /**
+     * Returns the consumption files of the next run, in the order they are billed.
+     *
+     * @return the consumption files; empty if there are none, or if the manifest lists a file that does
+     * not exist yet
+     */
+    public static List<Path> findConsumptionFiles() {
+        return findConsumptionFiles(INPUT_DIR, CONSUMPTION_GLOB, manifest(), CONSUMPTION_FILE);
+    }
+
+    /**
+     * Returns the consumption files in an input directory, in the order they are billed.
+     *
+     * @param inputDir    the input directory
+     * @param glob        the pattern of the consumption file names, or null to bill `defaultFile` only
+     * @param manifest    the manifest listing the consumption files, or null if there is none
+     * @param defaultFile the consumption file billed when no glob is set
+     * @return the consumption files; empty if there are none, or if the manifest lists a file that does
+     * not exist yet
+     */
+    public static List<Path> findConsumptionFiles(Path inputDir, String glob, Path manifest, Path defaultFile) {
         try {
-            // Check if both input files exist
-            if (Files.exists(INPUT_DIR.resolve("input.txt")) && Files.exists(INPUT_DIR.resolve("lookup.txt"))) {
-                // Process the files (input.txt and lookup.txt)
-                processFile(INPUT_DIR.resolve("input.txt"));
-                processFile(INPUT_DIR.resolve("lookup.txt"));
-
-                // Move files to the "done" directory if everything is fine
-                moveFiles(DONE_DIR);
-                LOGGER.info("Files processed successfully and moved to 'done' directory.");
-            } else {
-                LOGGER.warning("One or both input files do not exist. No files to process.");
-                System.exit(1);
+            if (manifest != null) {
+                List<Path> files = new ArrayList<>();
+                for (String line : Files.readAllLines(manifest)) {
+                    if (line.isBlank() || line.startsWith("#")) {
+                        continue;
+                    }
+                    Path file = inputDir.resolve(line.trim());
+                    if (!Files.isRegularFile(file)) {
+                        LOGGER.fine("Consumption file listed in the manifest is missing: " + file);
+                        return List.of();
+                    }
+                    files.add(file);
+                }
+                return files;
+            }
+            if (glob == null || glob.isBlank()) {
+                return Files.isRegularFile(defaultFile) ? List.of(defaultFile) : List.of();
             }
-        } catch (Exception e) {
-            // Move files to the "interrupted" directory if an exception occurs
-            moveFiles(INTERRUPTED_DIR);
-            LOGGER.log(Level.SEVERE, "An error occurred during file processing. Files moved to 'interrupted' directory.", e);
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(inputDir, glob.trim())) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file)) {
+                        files.add(file);
+                    }
+                }
+            }
+            files.sort(Comparator.comparing(file -> file.getFileName().toString()));
+            return files;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to list the consumption files in " + inputDir, e);
+            return List.of();
         }
     }
 
-    private static void processFile(Path filePath) throws IOException {
-        // Implement your file processing logic here
-        // For example, read the file and perform some operations
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Process each line
-            }
+    /**
+     * Returns every input file of the next run: the lookup file, the manifest if there is one, and the
+     * consumption files.
+     *
+     * @return the input files, or an empty list if the lookup file or all consumption files are missing
+     */
+    public static List<Path> findInputFiles() {
+        List<Path> consumptionFiles = findConsumptionFiles();
+        if (consumptionFiles.isEmpty() || !Files.isRegularFile(LOOKUP_FILE)) {
+            return List.of();
         }
+        List<Path> files = new ArrayList<>();
+        files.add(LOOKUP_FILE);
+        Path manifest = manifest();
+        if (manifest != null) {
+            files.add(manifest);
+        }
+        files.addAll(consumptionFiles);
+        return files;
+    }
+
+    /**
+     * Archives the input files of a completed run. Every consumption file is moved to the "done" or the
+     * "interrupted" directory on its own; the lookup file and the manifest go to the "done" directory.
+     *
+     * @param billedFiles the consumption files that were billed
+     * @param failedFiles the consumption files that could not be read
+     * @return true if every file was moved to the "done" directory
+     */
+    public static boolean processFiles(List<Path> billedFiles, List<Path> failedFiles) {
+        List<Path> runFiles = new ArrayList<>();
+        Path manifest = manifest();
+        if (manifest != null) {
+            runFiles.add(manifest);
+        }
+        runFiles.add(LOOKUP_FILE);
+        return processFiles(billedFiles, failedFiles, runFiles, DONE_DIR, INTERRUPTED_DIR);
     }
 
-    private static void moveFiles(Path targetDir) {
+    /**
+     * Archives the input files of a completed run to the given directories. Every consumption file is
+     * moved on its own; a file that cannot be moved to the "done" directory is moved to the "interrupted"
+     * directory instead.
+     *
+     * @param billedFiles    the consumption files that were billed
+     * @param failedFiles    the consumption files that could not be read
+     * @param runFiles       the other files of the run, e.g. the lookup file; they go to the "done" directory
+     * @param doneDir        the "done" directory
+     * @param interruptedDir the "interrupted" directory
+     * @return true if every file was moved to the "done" directory
+     */
+    public static boolean processFiles(List<Path> billedFiles, List<Path> failedFiles, List<Path> runFiles, Path doneDir, Path interruptedDir) {
+        boolean allDone = failedFiles.isEmpty();
+        for (Path file : billedFiles) {
+            allDone &= archive(file, doneDir, interruptedDir);
+        }
+        for (Path file : failedFiles) {
+            archive(file, interruptedDir, interruptedDir);
+            LOGGER.warning("Consumption file " + file.getFileName() + " could not be billed and was moved to 'interrupted' directory.");
+        }
+        for (Path file : runFiles) {
+            allDone &= archive(file, doneDir, interruptedDir);
+        }
+        if (allDone) {
+            LOGGER.info("Files processed successfully and moved to 'done' directory.");
+        }
+        return allDone;
+    }
+
+    /**
+     * Archives all current input files to the "done" directory.
+     *
+     * @return true if every file was moved to the "done" directory
+     */
+    public static boolean processFiles() {
+        List<Path> consumptionFiles = findConsumptionFiles();
+        if (consumptionFiles.isEmpty() || !Files.exists(LOOKUP_FILE)) {
+            LOGGER.warning("One or both input files do not exist. No files to process.");
+            return false;
+        }
+        return processFiles(consumptionFiles, List.of());
+    }
+
+    // Moves a file to the target directory; if that fails, tries the "interrupted" directory instead
+    private static boolean archive(Path file, Path targetDir, Path interruptedDir) {
         try {
             Files.createDirectories(targetDir);
-            Files.move(INPUT_DIR.resolve("input.txt"), targetDir.resolve("input.txt"), StandardCopyOption.REPLACE_EXISTING);
-            Files.move(INPUT_DIR.resolve("lookup.txt"), targetDir.resolve("lookup.txt"), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(file, targetDir.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+            return true;
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Failed to move files", e);
+            if (targetDir.equals(interruptedDir)) {
+                LOGGER.log(Level.SEVERE, "Failed to move " + file, e);
+                return false;
+            }
+            LOGGER.log(Level.SEVERE, "An error occurred while archiving " + file + ". Moving it to 'interrupted' directory.", e);
+            archive(file, interruptedDir, interruptedDir);
+            return false;
+        }
+    }
+
+    // The manifest, if one is configured and present
+    private static Path manifest() {
+        if (MANIFEST_PATH == null || MANIFEST_PATH.isBlank()) {
+            return null;
         }
+        Path manifest = Path.of(MANIFEST_PATH.trim());
+        return Files.isRegularFile(manifest) ? manifest : null;
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,363 @@
+package org.example.invoiceapp.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The `ReadingSnapshot` class stores validated readings in a compact binary file, so they can be
+ * aggregated again without reading, parsing and validating the text input.
+ *
+ * <p>
+ * After an 8-byte header (magic and version) the file is a sequence of blocks of up to
+ * {@value #BLOCK_SIZE} readings. A block starts with its reading count and the smallest and largest
+ * customer ID and reading date it contains, followed by its columns: customer IDs (8 bytes each), reading
+ * dates as epoch days (4 bytes), the four usage values (4 bytes each, one column per time slot) and the
+ * quality indicators (1 byte). All values are little-endian. Every block is self-contained, so readings
+ * can be appended to an existing snapshot by writing further blocks.
+ * </p>
+ *
+ * <p>
+ * Besides readings, a block may hold issue day markers: entries with quality 0 and no usage that record
+ * the date of a customer's first reading of a month as it was parsed. That reading sets the date of the
+ * bill even when it is rejected and therefore missing from the snapshot. Version 1 snapshots have no
+ * markers; appending to one upgrades its header.
+ * </p>
+ *
+ * <p>
+ * {@link #scan} reads the file through a memory mapping. Blocks whose customer ID or date range cannot
+ * match the filter are skipped after reading their header, and the columns of the other blocks are read
+ * with absolute gets, without creating an object per reading.
+ * </p>
+ */
+public class ReadingSnapshot {
+
+    /**
+     * The number of readings per block.
+     */
+    public static final int BLOCK_SIZE = 4096;
+
+    private static final int MAGIC = 0x49415253; // "IARS"
+    private static final int VERSION = 2;
+    private static final byte ISSUE_DAY = 0;
+    private static final int HEADER_SIZE = 8;
+    private static final int BLOCK_HEADER_SIZE = 4 + 8 + 8 + 4 + 4;
+    private static final int BYTES_PER_READING = 8 + 4 + 4 * 4 + 1;
+    private static final int WINDOW_SIZE = 1 << 28;
+
+    /**
+     * Receives the readings of a snapshot.
+     */
+    public interface ReadingConsumer {
+        /**
+         * @param customerId the numeric customer ID
+         * @param epochDay   the reading date, as days since 1970-01-01
+         * @param usage1     usage in the period 00:00 - 05:59
+         * @param usage2     usage in the period 06:00 - 11:59
+         * @param usage3     usage in the period 12:00 - 17:59
+         * @param usage4     usage in the period 18:00 - 23:59
+         * @param quality    the data quality indicator
+         */
+        void accept(long customerId, int epochDay, int usage1, int usage2, int usage3, int usage4, char quality);
+    }
+
+    /**
+     * Receives the issue day markers of a snapshot.
+     */
+    public interface IssueDayConsumer {
+        /**
+         * @param customerId the numeric customer ID
+         * @param epochDay   the date of the customer's first reading of the month, as days since 1970-01-01
+         */
+        void accept(long customerId, int epochDay);
+    }
+
+    /**
+     * Writes readings to a snapshot, one block at a time. Not thread-safe.
+     */
+    public static class Writer implements Consumer<ConsumptionRecord>, AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + BLOCK_SIZE * BYTES_PER_READING).order(ByteOrder.LITTLE_ENDIAN);
+        private final long[] customerIds = new long[BLOCK_SIZE];
+        private final int[] epochDays = new int[BLOCK_SIZE];
+        private final int[] usage1 = new int[BLOCK_SIZE];
+        private final int[] usage2 = new int[BLOCK_SIZE];
+        private final int[] usage3 = new int[BLOCK_SIZE];
+        private final int[] usage4 = new int[BLOCK_SIZE];
+        private final byte[] quality = new byte[BLOCK_SIZE];
+        private int count;
+        private long written;
+        private long markers;
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Adds a valid reading to the current block, writing the block once it is full.
+         *
+         * @param record a well-formed consumption record
+         * @throws UncheckedIOException if a full block cannot be written
+         */
+        @Override
+        public void accept(ConsumptionRecord record) {
+            add(record.customerId(), (int) record.epochDay(), record.usage1(), record.usage2(), record.usage3(), record.usage4(), record.quality());
+        }
+
+        /**
+         * Adds a reading to the current block, writing the block once it is full. The values are those
+         * passed to {@link ReadingConsumer#accept} when the snapshot is scanned.
+         *
+         * @throws UncheckedIOException if a full block cannot be written
+         */
+        public void add(long customerId, int epochDay, int usage1, int usage2, int usage3, int usage4, char quality) {
+            customerIds[count] = customerId;
+            epochDays[count] = epochDay;
+            this.usage1[count] = usage1;
+            this.usage2[count] = usage2;
+            this.usage3[count] = usage3;
+            this.usage4[count] = usage4;
+            this.quality[count] = (byte) quality;
+            if (++count == BLOCK_SIZE) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * Adds an issue day marker: the date of the first reading of a customer's month, whether that
+         * reading is valid or not. Markers are not counted as readings.
+         *
+         * @param customerId the numeric customer ID
+         * @param epochDay   the reading date, as days since 1970-01-01
+         * @throws UncheckedIOException if a full block cannot be written
+         */
+        public void addIssueDay(long customerId, int epochDay) {
+            markers++;
+            add(customerId, epochDay, 0, 0, 0, 0, (char) ISSUE_DAY);
+        }
+
+        private void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            long minId = Long.MAX_VALUE;
+            long maxId = Long.MIN_VALUE;
+            int minDay = Integer.MAX_VALUE;
+            int maxDay = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                minId = Math.min(minId, customerIds[i]);
+                maxId = Math.max(maxId, customerIds[i]);
+                minDay = Math.min(minDay, epochDays[i]);
+                maxDay = Math.max(maxDay, epochDays[i]);
+            }
+            block.clear();
+            block.putInt(count).putLong(minId).putLong(maxId).putInt(minDay).putInt(maxDay);
+            for (int i = 0; i < count; i++) {
+                block.putLong(customerIds[i]);
+            }
+            putInts(epochDays);
+            putInts(usage1);
+            putInts(usage2);
+            putInts(usage3);
+            putInts(usage4);
+            block.put(quality, 0, count);
+            block.flip();
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+            written += count;
+            count = 0;
+        }
+
+        private void putInts(int[] column) {
+            for (int i = 0; i < count; i++) {
+                block.putInt(column[i]);
+            }
+        }
+
+        /** @return the number of readings written or buffered by this writer, without the issue day markers */
+        public long getReadingCount() {
+            return written + count - markers;
+        }
+
+        /**
+         * Writes the last, partial block and closes the file.
+         *
+         * @throws IOException if writing fails
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Opens a snapshot for writing.
+     *
+     * @param file   the snapshot file
+     * @param append true to add blocks to an existing snapshot, false to replace it; a missing or empty
+     *               file is created either way
+     * @return a writer; the caller closes it
+     * @throws IOException if the file cannot be opened or is not a snapshot
+     */
+    public static Writer create(Path file, boolean append) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (append && channel.size() > 0) {
+                if (checkHeader(channel) < VERSION) {
+                    ByteBuffer version = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(VERSION).flip();
+                    while (version.hasRemaining()) {
+                        channel.write(version, 4 + version.position());
+                    }
+                }
+                channel.position(channel.size());
+            } else {
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN).putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            }
+            return new Writer(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Returns the version of a snapshot file
+    private static int checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int read = 0;
+        while (header.hasRemaining() && read >= 0) {
+            read = channel.read(header, header.position());
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) < 1 || header.getInt(4) > VERSION) {
+            throw new IOException("Not a reading snapshot");
+        }
+        return header.getInt(4);
+    }
+
+    /**
+     * Passes the readings of a snapshot that match a filter to a consumer, in the order they were written.
+     *
+     * @param file        the snapshot file
+     * @param customerIds the customers to read, sorted in ascending order, or null for all customers
+     * @param fromDay     the earliest reading date to read, as an epoch day
+     * @param toDay       the latest reading date to read, as an epoch day
+     * @param consumer    receives the matching readings
+     * @return the number of readings passed to the consumer
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static long scan(Path file, long[] customerIds, long fromDay, long toDay, ReadingConsumer consumer) throws IOException {
+        return scan(file, customerIds, fromDay, toDay, consumer, null);
+    }
+
+    /**
+     * Passes the readings and the issue day markers of a snapshot that match a filter to two consumers, in
+     * the order they were written.
+     *
+     * @param file               the snapshot file
+     * @param customerIds        the customers to read, sorted in ascending order, or null for all customers
+     * @param fromDay            the earliest reading date to read, as an epoch day
+     * @param toDay              the latest reading date to read, as an epoch day
+     * @param consumer           receives the matching readings
+     * @param issueDayConsumer   receives the matching issue day markers, or null to skip them
+     * @return the number of readings passed to the consumer
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static long scan(Path file, long[] customerIds, long fromDay, long toDay, ReadingConsumer consumer, IssueDayConsumer issueDayConsumer) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            checkHeader(channel);
+            long size = channel.size();
+            long position = HEADER_SIZE;
+            while (position < size) {
+                int length = (int) Math.min(WINDOW_SIZE, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+                int offset = 0;
+                while (offset + BLOCK_HEADER_SIZE <= length) {
+                    int readings = window.getInt(offset);
+                    int blockLength = BLOCK_HEADER_SIZE + readings * BYTES_PER_READING;
+                    if (readings <= 0 || readings > BLOCK_SIZE) {
+                        throw new IOException("Invalid snapshot block at offset " + (position + offset));
+                    }
+                    if (offset + blockLength > length) {
+                        break;
+                    }
+                    long minId = window.getLong(offset + 4);
+                    long maxId = window.getLong(offset + 12);
+                    int minDay = window.getInt(offset + 20);
+                    int maxDay = window.getInt(offset + 24);
+                    if (maxDay >= fromDay && minDay <= toDay && overlaps(customerIds, minId, maxId)) {
+                        count += scanBlock(window, offset + BLOCK_HEADER_SIZE, readings, customerIds, fromDay, toDay, consumer, issueDayConsumer);
+                    }
+                    offset += blockLength;
+                }
+                if (offset == 0) {
+                    throw new IOException("Truncated snapshot block at offset " + position);
+                }
+                position += offset;
+            }
+        }
+        return count;
+    }
+
+    // Returns whether one of the sorted customer IDs lies in [minId, maxId]
+    private static boolean overlaps(long[] customerIds, long minId, long maxId) {
+        if (customerIds == null) {
+            return true;
+        }
+        int index = Arrays.binarySearch(customerIds, minId);
+        if (index >= 0) {
+            return true;
+        }
+        int next = -index - 1;
+        return next < customerIds.length && customerIds[next] <= maxId;
+    }
+
+    private static long scanBlock(ByteBuffer block, int columns, int readings, long[] customerIds, long fromDay, long toDay,
+                                  ReadingConsumer consumer, IssueDayConsumer issueDayConsumer) {
+        int days = columns + readings * 8;
+        int usage1 = days + readings * 4;
+        int usage2 = usage1 + readings * 4;
+        int usage3 = usage2 + readings * 4;
+        int usage4 = usage3 + readings * 4;
+        int quality = usage4 + readings * 4;
+        long count = 0;
+        for (int i = 0; i < readings; i++) {
+            long customerId = block.getLong(columns + i * 8);
+            int epochDay = block.getInt(days + i * 4);
+            if (epochDay < fromDay || epochDay > toDay || (customerIds != null && Arrays.binarySearch(customerIds, customerId) < 0)) {
+                continue;
+            }
+            byte readingQuality = block.get(quality + i);
+            if (readingQuality == ISSUE_DAY) {
+                if (issueDayConsumer != null) {
+                    issueDayConsumer.accept(customerId, epochDay);
+                }
+                continue;
+            }
+            consumer.accept(customerId, epochDay, block.getInt(usage1 + i * 4), block.getInt(usage2 + i * 4),
+                    block.getInt(usage3 + i * 4), block.getInt(usage4 + i * 4), (char) (readingQuality & 0xff));
+            count++;
+        }
+        return count;
+    }
+}
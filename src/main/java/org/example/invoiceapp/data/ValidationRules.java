@@ -0,0 +1,268 @@
+package org.example.invoiceapp.data;
+
+import org.example.invoiceapp.util.ConfigLoader;
+import org.example.invoiceapp.util.Metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The `ValidationRules` class is the ordered list of checks a well-formed consumption record must pass.
+ *
+ * <p>
+ * The rules are compiled once from a specification such as `quality(AE):1001,usage(1):1002`: every
+ * entry names a rule, its optional argument in parentheses and the error code stored for the records it
+ * rejects. Rules are checked in the given order and the first failing rule classifies the record, so
+ * cheap and common failures belong first. The rules are:
+ * - `quality(AE)`: the quality indicator must be one of the given characters.
+ * - `usage(n)`: all four usage values must be at least `n`.
+ * - `maxUsage(n)`: no usage value may exceed `n`.
+ * - `flagged(75|76)`: the line must not carry one of the given error codes; without an argument, any code.
+ * </p>
+ *
+ * <p>
+ * Each rule counts the records it rejects in the counter `invoiceapp_records_rejected_<code>_total`,
+ * shared by all rules with the same error code. The error description names the failed check and, when
+ * the line carries an error code of its own (e.g. `75,meter tamper alarm`), adds that code and its
+ * description. A compiled list is immutable and can be used from several threads.
+ * </p>
+ */
+public class ValidationRules {
+
+    private static final String DEFAULT_RULES = "quality(AE):1001,usage(1):1002";
+
+    private static volatile ValidationRules instance;
+
+    // One compiled check; the record is well-formed
+    private interface Rule {
+        boolean accepts(ConsumptionRecord record);
+    }
+
+    private final String[] names;
+    private final Rule[] rules;
+    private final int[] codes;
+    private final String[] descriptions;
+    private final Metrics.Counter[] rejected;
+
+    private ValidationRules(List<String> names, List<Rule> rules, List<Integer> codes, List<String> descriptions) {
+        int count = rules.size();
+        this.names = names.toArray(new String[0]);
+        this.rules = rules.toArray(new Rule[0]);
+        this.codes = new int[count];
+        this.descriptions = descriptions.toArray(new String[0]);
+        this.rejected = new Metrics.Counter[count];
+        for (int i = 0; i < count; i++) {
+            this.codes[i] = codes.get(i);
+            this.rejected[i] = Metrics.counter("invoiceapp_records_rejected_" + codes.get(i) + "_total",
+                    "Consumption records rejected with error code " + codes.get(i));
+        }
+    }
+
+    /**
+     * Returns the rules configured by `validation.rules`, compiling them on first use.
+     *
+     * @return the configured rules
+     * @throws IllegalStateException if the configured specification is invalid
+     */
+    public static ValidationRules getInstance() {
+        ValidationRules rules = instance;
+        if (rules == null) {
+            synchronized (ValidationRules.class) {
+                rules = instance;
+                if (rules == null) {
+                    String spec = ConfigLoader.getProperty("validation.rules");
+                    try {
+                        rules = compile(spec == null || spec.isBlank() ? DEFAULT_RULES : spec);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalStateException("Invalid validation.rules: " + e.getMessage(), e);
+                    }
+                    instance = rules;
+                }
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Compiles a rule specification.
+     *
+     * @param spec comma-separated `rule(argument):code` entries, in the order they are checked
+     * @return the compiled rules
+     * @throws IllegalArgumentException if a rule, argument or code is invalid
+     */
+    public static ValidationRules compile(String spec) {
+        List<String> names = new ArrayList<>();
+        List<Rule> rules = new ArrayList<>();
+        List<Integer> codes = new ArrayList<>();
+        List<String> descriptions = new ArrayList<>();
+        for (String entry : spec.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int colon = entry.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Validation rule without an error code: " + entry);
+            }
+            String rule = entry.substring(0, colon).trim();
+            String argument = null;
+            int open = rule.indexOf('(');
+            if (open >= 0) {
+                if (!rule.endsWith(")")) {
+                    throw new IllegalArgumentException("Unterminated argument of validation rule: " + entry);
+                }
+                argument = rule.substring(open + 1, rule.length() - 1).trim();
+                rule = rule.substring(0, open).trim();
+            }
+            int code;
+            try {
+                code = Integer.parseInt(entry.substring(colon + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid error code of validation rule: " + entry, e);
+            }
+            if (code < 0) {
+                throw new IllegalArgumentException("Negative error code of validation rule: " + entry);
+            }
+
+            switch (rule) {
+                case "quality" -> {
+                    String accepted = argument == null ? "AE" : argument;
+                    if (accepted.isEmpty()) {
+                        throw new IllegalArgumentException("The quality rule needs the accepted indicators: " + entry);
+                    }
+                    // A quality field that is not a single character reads as '\0'
+                    rules.add(record -> record.quality() != '\0' && accepted.indexOf(record.quality()) >= 0);
+                    descriptions.add("Quality is not one of " + accepted);
+                }
+                case "usage" -> {
+                    int min = argument == null ? 1 : intArgument(argument, entry);
+                    rules.add(record -> record.usage1() >= min && record.usage2() >= min && record.usage3() >= min && record.usage4() >= min);
+                    descriptions.add("Usage below " + min);
+                }
+                case "maxUsage" -> {
+                    if (argument == null) {
+                        throw new IllegalArgumentException("The maxUsage rule needs a limit: " + entry);
+                    }
+                    int max = intArgument(argument, entry);
+                    rules.add(record -> record.usage1() <= max && record.usage2() <= max && record.usage3() <= max && record.usage4() <= max);
+                    descriptions.add("Usage above " + max);
+                }
+                case "flagged" -> {
+                    if (argument == null || argument.isEmpty()) {
+                        rules.add(record -> record.errorCode() < 0);
+                    } else {
+                        String[] parts = argument.split("\\|");
+                        int[] flags = new int[parts.length];
+                        for (int i = 0; i < parts.length; i++) {
+                            flags[i] = intArgument(parts[i], entry);
+                        }
+                        rules.add(record -> {
+                            int carried = record.errorCode();
+                            for (int flag : flags) {
+                                if (carried == flag) {
+                                    return false;
+                                }
+                            }
+                            return true;
+                        });
+                    }
+                    descriptions.add("Flagged by the meter");
+                }
+                default -> throw new IllegalArgumentException("Unknown validation rule: " + entry);
+            }
+            names.add(rule);
+            codes.add(code);
+        }
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException("No validation rules given");
+        }
+        return new ValidationRules(names, rules, codes, descriptions);
+    }
+
+    private static int intArgument(String argument, String entry) {
+        try {
+            return Integer.parseInt(argument.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid argument of validation rule: " + entry, e);
+        }
+    }
+
+    /**
+     * Checks a record against the rules in order, stopping at the first failure, and counts the failure.
+     *
+     * @param record a well-formed consumption record
+     * @return the index of the rule the record fails, or -1 if it passes all rules
+     */
+    public int firstFailure(ConsumptionRecord record) {
+        Rule[] rules = this.rules;
+        for (int i = 0; i < rules.length; i++) {
+            if (!rules[i].accepts(record)) {
+                rejected[i].increment();
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks a record against the rules without counting a failure.
+     *
+     * @param record a well-formed consumption record
+     * @return true if the record passes all rules
+     */
+    public boolean accepts(ConsumptionRecord record) {
+        for (Rule rule : rules) {
+            if (!rule.accepts(record)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the number of rules */
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * @param rule the index of a rule
+     * @return the name of the rule, e.g. `quality`
+     */
+    public String name(int rule) {
+        return names[rule];
+    }
+
+    /**
+     * @param rule the index of a rule
+     * @return the error code stored for the records the rule rejects
+     */
+    public int errorCode(int rule) {
+        return codes[rule];
+    }
+
+    /**
+     * Returns the error description of a record rejected by a rule.
+     *
+     * @param rule   the index of the failed rule
+     * @param record the rejected record
+     * @return the description of the check, followed by the error code and description carried by the line, if any
+     */
+    public String errorDescription(int rule, ConsumptionRecord record) {
+        if (record.errorCode() < 0) {
+            return descriptions[rule];
+        }
+        String carried = record.description();
+        return descriptions[rule] + " (" + (carried.isEmpty() ? record.errorCode() : record.errorCode() + " " + carried) + ")";
+    }
+
+    /**
+     * Returns the number of records rejected with a rule's error code since the process started, by any
+     * rules with that code.
+     *
+     * @param rule the index of a rule
+     * @return the number of rejected records
+     */
+    public long rejectedCount(int rule) {
+        return rejected[rule].getCount();
+    }
+}
@@ -0,0 +1,508 @@
+package org.example.invoiceapp.util;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.*;
+
+/**
+ * The `ConnectionPool` class is a small pooled {@link DataSource} shared by every class that talks to
+ * the database, so that a TCP connection and MySQL handshake are not paid for on every statement.
+ *
+ * <p>
+ * The pool is configured from the `db.*` properties:
+ * - `db.url`, `db.username`, `db.password`: connection details.
+ * - `db.pool.min` / `db.pool.max`: number of connections opened by {@link #warmUp()} / allowed at most.
+ * - `db.pool.connection.timeout.ms`: how long a caller waits for a free connection.
+ * - `db.pool.validation.interval.ms`: idle time after which a connection is validated before reuse.
+ * - `db.pool.leak.detection.ms`: borrow time after which a connection is reported as leaked (0 disables).
+ * </p>
+ *
+ * <p>
+ * Connections handed out are proxies: closing one returns the underlying connection to the pool.
+ * Connections are created lazily, so the application starts even when the database is unreachable.
+ * </p>
+ */
+public class ConnectionPool implements DataSource {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+    private static volatile ConnectionPool instance;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long connectionTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final long leakDetectionMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition connectionReturned = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final Map<PooledConnection, Boolean> borrowed = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leakDetector;
+    private int totalConnections;
+    private boolean closed;
+
+    // Metrics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * Returns the process-wide pool, creating it from the application properties on first use.
+     *
+     * @return the shared connection pool
+     */
+    public static ConnectionPool getInstance() {
+        ConnectionPool pool = instance;
+        if (pool == null) {
+            synchronized (ConnectionPool.class) {
+                pool = instance;
+                if (pool == null) {
+                    pool = new ConnectionPool(
+                            ConfigLoader.getProperty("db.url"),
+                            ConfigLoader.getProperty("db.username"),
+                            ConfigLoader.getProperty("db.password"),
+                            intProperty("db.pool.min", 2),
+                            intProperty("db.pool.max", 10),
+                            intProperty("db.pool.connection.timeout.ms", 30000),
+                            intProperty("db.pool.validation.interval.ms", 5000),
+                            intProperty("db.pool.leak.detection.ms", 60000));
+                    registerMetrics(pool);
+                    instance = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    // Exposes the shared pool's state as gauges
+    private static void registerMetrics(ConnectionPool pool) {
+        Metrics.gauge("invoiceapp_db_pool_active_connections", "Connections currently borrowed from the pool", pool::getActiveConnections);
+        Metrics.gauge("invoiceapp_db_pool_idle_connections", "Connections idle in the pool", pool::getIdleConnections);
+        Metrics.gauge("invoiceapp_db_pool_borrows", "Connections borrowed from the pool", pool::getBorrowCount);
+        Metrics.gauge("invoiceapp_db_pool_timeouts", "Borrow attempts that timed out", pool::getTimeoutCount);
+        Metrics.gauge("invoiceapp_db_pool_leaks", "Connections reported as leaked", pool::getLeakCount);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param url                      the JDBC URL
+     * @param username                 the database user
+     * @param password                 the database password
+     * @param minSize                  the number of connections opened by {@link #warmUp()}
+     * @param maxSize                  the maximum number of open connections
+     * @param connectionTimeoutMillis  how long {@link #getConnection()} waits for a free connection
+     * @param validationIntervalMillis idle time after which a connection is validated before reuse
+     * @param leakDetectionMillis      borrow time after which a connection is reported as leaked, 0 to disable
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long connectionTimeoutMillis, long validationIntervalMillis, long leakDetectionMillis) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.min(Math.max(0, minSize), this.maxSize);
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.leakDetectionMillis = leakDetectionMillis;
+
+        if (leakDetectionMillis > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-leak-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1000, leakDetectionMillis / 2);
+            leakDetector.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            leakDetector = null;
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle and the pool is not full.
+     * Closing the returned connection gives it back to the pool.
+     *
+     * @return a pooled connection
+     * @throws SQLException if no connection becomes available within the timeout or a new one cannot be opened
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(connectionTimeoutMillis);
+
+        while (true) {
+            PooledConnection pooled = null;
+            boolean create = false;
+            lock.lock();
+            try {
+                while (!closed && idle.isEmpty() && totalConnections >= maxSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLException("Timed out after " + connectionTimeoutMillis + " ms waiting for a database connection");
+                    }
+                    connectionReturned.awaitNanos(remaining);
+                }
+                if (closed) {
+                    throw new SQLException("Connection pool is closed");
+                }
+                if (!idle.isEmpty()) {
+                    pooled = idle.pollFirst();
+                } else {
+                    totalConnections++;
+                    create = true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                pooled = openConnection();
+            } else if (!isUsable(pooled)) {
+                discard(pooled);
+                continue;
+            }
+
+            totalWaitNanos.addAndGet(System.nanoTime() - start);
+            borrowCount.incrementAndGet();
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowStack = leakDetectionMillis > 0 ? new Exception("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.put(pooled, Boolean.TRUE);
+            return pooled.newHandle();
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        try {
+            PooledConnection pooled = new PooledConnection(DriverManager.getConnection(url, username, password));
+            createdCount.incrementAndGet();
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                totalConnections--;
+                connectionReturned.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    // Validates connections that have been idle for longer than the validation interval
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.returnedAt < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            if (pooled.physical.isValid(2)) {
+                return true;
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Connection validation failed", e);
+        }
+        validationFailureCount.incrementAndGet();
+        return false;
+    }
+
+    // Puts a connection back into the pool, or closes it if it can no longer be used
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        boolean reusable;
+        try {
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            reusable = !pooled.physical.isClosed();
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        lock.lock();
+        try {
+            if (reusable && !closed) {
+                pooled.returnedAt = System.currentTimeMillis();
+                idle.addFirst(pooled);
+                connectionReturned.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        discard(pooled);
+    }
+
+    /**
+     * Opens connections until the pool holds at least `db.pool.min` of them, so the first statements of
+     * a run do not pay for the handshake. Failures are logged and otherwise ignored.
+     */
+    public void warmUp() {
+        List<Connection> opened = new ArrayList<>();
+        try {
+            while (getTotalConnections() < minSize) {
+                opened.add(getConnection());
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not pre-open database connections", e);
+        } finally {
+            for (Connection connection : opened) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    LOGGER.log(Level.FINE, "Failed to return database connection", e);
+                }
+            }
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        lock.lock();
+        try {
+            totalConnections--;
+            connectionReturned.signal();
+        } finally {
+            lock.unlock();
+        }
+        closeQuietly(pooled);
+    }
+
+    private static void closeQuietly(PooledConnection pooled) {
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Failed to close database connection", e);
+        }
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pooled : borrowed.keySet()) {
+            if (!pooled.leakReported && now - pooled.borrowedAt > leakDetectionMillis) {
+                pooled.leakReported = true;
+                leakCount.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Possible connection leak: connection borrowed " + (now - pooled.borrowedAt) + " ms ago", pooled.borrowStack);
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones. Borrowed connections are closed
+     * when they are returned.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            closed = true;
+            while (!idle.isEmpty()) {
+                totalConnections--;
+                closeQuietly(idle.pollFirst());
+            }
+            connectionReturned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+        LOGGER.info("Connection pool closed. " + this);
+    }
+
+    // ----- Metrics -----
+
+    /** @return the number of connections currently borrowed */
+    public int getActiveConnections() {
+        return borrowed.size();
+    }
+
+    /** @return the number of open connections waiting in the pool */
+    public int getIdleConnections() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the number of open connections, borrowed or idle */
+    public int getTotalConnections() {
+        lock.lock();
+        try {
+            return totalConnections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return the number of successful borrows since the pool was created */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /** @return the number of physical connections opened since the pool was created */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /** @return the number of borrows that timed out waiting for a connection */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /** @return the number of connections reported as leaked */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /** @return the number of idle connections that failed validation */
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    /** @return the average time spent in {@link #getConnection()}, in milliseconds */
+    public double getAverageBorrowMillis() {
+        long borrows = borrowCount.get();
+        return borrows == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / borrows;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool[active=%d, idle=%d, total=%d, borrows=%d, created=%d, timeouts=%d, leaks=%d, avgBorrow=%.2f ms]",
+                getActiveConnections(), getIdleConnections(), getTotalConnections(), getBorrowCount(), getCreatedCount(),
+                getTimeoutCount(), getLeakCount(), getAverageBorrowMillis());
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        String value = ConfigLoader.getProperty(key);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    // ----- DataSource boilerplate -----
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only hands out connections for the configured user");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        // Logging goes through java.util.logging
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() {
+        return LOGGER;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * A physical connection owned by the pool, with its borrow bookkeeping.
+     */
+    private class PooledConnection {
+        final Connection physical;
+        volatile long borrowedAt;
+        volatile long returnedAt = System.currentTimeMillis();
+        volatile Exception borrowStack;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        // Creates the proxy handed to a caller; closing it returns the physical connection exactly once
+        Connection newHandle() {
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean handleClosed;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!handleClosed) {
+                                handleClosed = true;
+                                release(PooledConnection.this);
+                            }
+                            return null;
+                        case "isClosed":
+                            return handleClosed || physical.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "Pooled" + physical;
+                        default:
+                            if (handleClosed) {
+                                throw new SQLException("Connection is closed");
+                            }
+                            try {
+                                return method.invoke(physical, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                    }
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+    }
+}
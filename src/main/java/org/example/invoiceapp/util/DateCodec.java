@@ -0,0 +1,142 @@
+package org.example.invoiceapp.util;
+
+/**
+ * The `DateCodec` class converts dates to and from compact integers without creating `LocalDate`
+ * objects.
+ *
+ * <p>
+ * Dates are epoch days, the number of days since 1970-01-01 as used by
+ * {@link java.time.LocalDate#ofEpochDay}. Billing months are month indexes, the number of months since
+ * January 1970, so consecutive months are consecutive integers and a month fits in an `int` column next
+ * to a customer ID. The conversions use the proleptic Gregorian calendar, like `LocalDate`.
+ * </p>
+ */
+public class DateCodec {
+
+    /**
+     * The month index of usage that is not tied to a reading date.
+     */
+    public static final int NO_MONTH = Integer.MIN_VALUE;
+
+    // Days from 0000-03-01 to 1970-01-01, and per 400-year era
+    private static final long DAYS_0000_TO_1970 = 719_468;
+    private static final long DAYS_PER_ERA = 146_097;
+
+    /**
+     * Returns the epoch day of a date. The date must be valid.
+     *
+     * @param year  the year
+     * @param month the month, from 1 to 12
+     * @param day   the day of month
+     * @return the date as an epoch day
+     */
+    public static long toEpochDay(int year, int month, int day) {
+        long y = year;
+        long total = 365 * y;
+        total += (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total -= isLeapYear(year) ? 1 : 2;
+        }
+        return total - 719528;
+    }
+
+    /**
+     * @param year  the year
+     * @param month the month, from 1 to 12
+     * @return the number of days in the month
+     */
+    public static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Returns the month index of a year and month.
+     *
+     * @param year  the year
+     * @param month the month, from 1 to 12
+     * @return the number of months since January 1970
+     */
+    public static int monthIndex(int year, int month) {
+        return (year - 1970) * 12 + month - 1;
+    }
+
+    /**
+     * Returns the month index of the month an epoch day falls in.
+     *
+     * @param epochDay the date as an epoch day
+     * @return the number of months since January 1970
+     */
+    public static int monthOf(long epochDay) {
+        // Civil-from-days on a calendar whose years start on March 1st, so leap days end a year
+        long days = epochDay + DAYS_0000_TO_1970;
+        long era = Math.floorDiv(days, DAYS_PER_ERA);
+        long dayOfEra = days - era * DAYS_PER_ERA;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153; // 0 = March
+        long year = yearOfEra + era * 400 + (shiftedMonth >= 10 ? 1 : 0);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        return monthIndex((int) year, month);
+    }
+
+    /**
+     * @param monthIndex a month index
+     * @return the year of the month
+     */
+    public static int yearOf(int monthIndex) {
+        return Math.floorDiv(monthIndex, 12) + 1970;
+    }
+
+    /**
+     * @param monthIndex a month index
+     * @return the month of the year, from 1 to 12
+     */
+    public static int monthOfYear(int monthIndex) {
+        return Math.floorMod(monthIndex, 12) + 1;
+    }
+
+    /**
+     * @param monthIndex a month index
+     * @return the epoch day of the first day of the month
+     */
+    public static long firstDayOf(int monthIndex) {
+        return toEpochDay(yearOf(monthIndex), monthOfYear(monthIndex), 1);
+    }
+
+    /**
+     * @param monthIndex a month index
+     * @return the epoch day of the last day of the month
+     */
+    public static long lastDayOf(int monthIndex) {
+        int year = yearOf(monthIndex);
+        int month = monthOfYear(monthIndex);
+        return toEpochDay(year, month, lengthOfMonth(year, month));
+    }
+
+    /**
+     * Formats a month index as `yyyy-MM`, e.g. for file names.
+     *
+     * @param monthIndex a month index of a year from 0 to 9999
+     * @return the formatted month
+     */
+    public static String format(int monthIndex) {
+        int month = monthOfYear(monthIndex);
+        return String.format("%04d-%02d", yearOf(monthIndex), month);
+    }
+}
@@ -7,7 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.logging.*;
@@ -19,9 +19,6 @@ public class Initializer {
     private static final String OUTPUT_DIR_TXT = ConfigLoader.getProperty("txt.output.path");
     private static final String ERROR_FILE = ConfigLoader.getProperty("errorTxt.file.path");
     private static final Logger LOGGER = Logger.getLogger(Initializer.class.getName());
-    private static final String DB_URL = ConfigLoader.getProperty("db.url");
-    private static final String DB_USER = ConfigLoader.getProperty("db.username");
-    private static final String DB_PASSWORD = ConfigLoader.getProperty("db.password");
 
     public static void initialize() {
         try {
@@ -31,7 +28,8 @@ public class Initializer {
             createDirectoryIfNotExists(Paths.get(OUTPUT_DIR_PDF));
             createDirectoryIfNotExists(Paths.get(ERROR_FILE));
 
-            // Create database tables
+            // Open the first pooled connections and create database tables
+            ConnectionPool.getInstance().warmUp();
             createDatabaseTables();
 
         } catch (IOException e) {
@@ -47,7 +45,7 @@ public class Initializer {
     }
 
     private static void createDatabaseTables() {
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+        try (Connection conn = ConnectionPool.getInstance().getConnection();
              Statement stmt = conn.createStatement()) {
             String createErrorRecordsTable = "CREATE TABLE IF NOT EXISTS error_records (" +
                     "error_id INT AUTO_INCREMENT PRIMARY KEY," +
@@ -67,11 +65,14 @@ public class Initializer {
                     "id INT AUTO_INCREMENT PRIMARY KEY," +
                     "customer_id VARCHAR(255) NOT NULL," +
                     "customer_name VARCHAR(255) NOT NULL," +
+                    "billing_period VARCHAR(7)," +
                     "daytime_usage INT NOT NULL," +
                     "nighttime_usage INT NOT NULL," +
                     "daytime_cost DOUBLE NOT NULL," +
-                    "nighttime_cost DOUBLE NOT NULL)";
+                    "nighttime_cost DOUBLE NOT NULL," +
+                    "UNIQUE KEY uk_bills_customer_period (customer_id, billing_period))";
             stmt.execute(createBillsTable);
+            addBillingPeriod(conn, stmt);
             LOGGER.info("Database table 'bills' created or already exists.");
 
 
@@ -85,4 +86,17 @@ public class Initializer {
             LOGGER.log(Level.SEVERE, "Database table creation failed", e);
         }
     }
+
+    // Bill rows are keyed by customer and billing period; tables created before that get the column and key.
+    // Existing rows keep a NULL period, so they never collide with new rows or with each other
+    private static void addBillingPeriod(Connection conn, Statement stmt) throws SQLException {
+        try (ResultSet columns = conn.getMetaData().getColumns(conn.getCatalog(), null, "bills", "billing_period")) {
+            if (columns.next()) {
+                return;
+            }
+        }
+        stmt.execute("ALTER TABLE bills ADD COLUMN billing_period VARCHAR(7) AFTER customer_name," +
+                " ADD UNIQUE KEY uk_bills_customer_period (customer_id, billing_period)");
+        LOGGER.info("Database table 'bills' keyed by customer and billing period.");
+    }
 }
@@ -0,0 +1,173 @@
+package org.example.invoiceapp.util;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.*;
+
+/**
+ * The `InputWatcher` class runs a task every time a complete set of input files has been dropped into a
+ * directory.
+ *
+ * <p>
+ * The directory is watched with a {@link WatchService}. A drop is complete when the supplier of input files
+ * returns a non-empty list and none of those files has changed size or modification time for the settle
+ * period, so files that are still being copied are not read half-written. The task runs on the thread that called {@link #run()}; it is
+ * expected to move the files away. Files that are still there unchanged after the task are not processed
+ * again until they change.
+ * </p>
+ *
+ * <p>
+ * {@link #close()} stops watching and waits until a task that is in progress has finished, so it can be
+ * called from a shutdown hook to drain in-flight work.
+ * </p>
+ */
+public class InputWatcher implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(InputWatcher.class.getName());
+
+    private final Path directory;
+    private final Supplier<List<Path>> inputFiles;
+    private final long settleMillis;
+    private final Runnable task;
+    private final WatchService watchService;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running;
+    private volatile boolean closed;
+
+    /**
+     * Creates a watcher; watching starts with {@link #run()}.
+     *
+     * @param directory    the directory the files are dropped into
+     * @param inputFiles   returns the files of a complete drop, or an empty list while the drop is incomplete
+     * @param settleMillis how long the files must stay unchanged before the task runs
+     * @param task         processes a complete drop
+     * @throws IOException if the directory cannot be watched
+     */
+    public InputWatcher(Path directory, Supplier<List<Path>> inputFiles, long settleMillis, Runnable task) throws IOException {
+        this.directory = directory;
+        this.inputFiles = inputFiles;
+        this.settleMillis = settleMillis;
+        this.task = task;
+        Files.createDirectories(directory);
+        this.watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    /**
+     * Watches the directory and runs the task for every complete drop, including one that is already there
+     * when watching starts. Returns when the watcher is closed.
+     */
+    public void run() {
+        running = true;
+        LOGGER.info("Watching " + directory + " for input files");
+        List<String> candidate = null;
+        long candidateSince = 0;
+        List<String> processed = null;
+        try {
+            while (!closed) {
+                List<String> current = snapshot();
+                if (current != null && !current.equals(processed)) {
+                    if (!current.equals(candidate)) {
+                        candidate = current;
+                        candidateSince = System.currentTimeMillis();
+                    } else if (System.currentTimeMillis() - candidateSince >= settleMillis) {
+                        runTask();
+                        processed = snapshot();
+                        candidate = null;
+                        continue;
+                    }
+                    // Wait for the rest of the settle period, or for the files to change again
+                    WatchKey key = watchService.poll(Math.max(1, candidateSince + settleMillis - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    reset(key);
+                } else {
+                    if (current == null) {
+                        processed = null;
+                    }
+                    candidate = null;
+                    reset(watchService.take());
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed while waiting for the next drop
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warning("Interrupted while watching " + directory);
+        } finally {
+            stopped.countDown();
+        }
+        LOGGER.info("Stopped watching " + directory);
+    }
+
+    // Runs the task once for the current drop; a failure is logged and does not stop the watcher
+    private void runTask() {
+        if (closed) {
+            return;
+        }
+        LOGGER.info("Input files complete in " + directory + ", processing.");
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Processing the input files failed", e);
+        }
+    }
+
+    private static void reset(WatchKey key) {
+        if (key != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    // Name, size and modification time of every input file, or null if the drop is incomplete
+    private List<String> snapshot() {
+        List<Path> files = inputFiles.get();
+        if (files.isEmpty()) {
+            return null;
+        }
+        List<String> snapshot = new ArrayList<>(files.size());
+        for (Path file : files) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                snapshot.add(file + ":" + attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Stops watching and waits until the task in progress, if any, has finished. Calling this method
+     * more than once has no effect.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to close the watch service", e);
+        }
+        if (!running) {
+            return;
+        }
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
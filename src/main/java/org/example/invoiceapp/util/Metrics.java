@@ -0,0 +1,329 @@
+package org.example.invoiceapp.util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.*;
+
+/**
+ * The `Metrics` class is a small process-wide metrics registry.
+ *
+ * <p>
+ * Three kinds of metrics are supported:
+ * - {@link Counter}: a monotonically increasing count, e.g. records read.
+ * - {@link Timer}: a latency histogram with fixed buckets from 100µs to 60s, plus count, sum and maximum.
+ * - gauges: a value read from a {@link LongSupplier} at export time, e.g. active pool connections.
+ * </p>
+ *
+ * <p>
+ * Metrics are created on first use and shared by name, so instrumented classes keep them in static
+ * fields. When `metrics.jmx.enabled` is true, each metric is registered as an MXBean named
+ * `org.example.invoiceapp:type=Metrics,name=<metric>`. {@link #writePrometheusFile()} writes all metrics
+ * in the Prometheus text format to `metrics.prometheus.file` at the end of a run.
+ * </p>
+ */
+public class Metrics {
+
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+    private static final String PROMETHEUS_FILE = ConfigLoader.getProperty("metrics.prometheus.file");
+    private static final boolean JMX_ENABLED = !"false".equalsIgnoreCase(ConfigLoader.getProperty("metrics.jmx.enabled"));
+    private static final String JMX_DOMAIN = "org.example.invoiceapp";
+
+    // Upper bounds of the timer buckets, in seconds
+    private static final double[] BUCKET_BOUNDS = {0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60};
+
+    // Sorted by name, so the export is stable across runs
+    private static final Map<String, Metric> METRICS = new ConcurrentSkipListMap<>();
+
+    private interface Metric {
+        void writePrometheus(String name, StringBuilder out);
+    }
+
+    /**
+     * JMX view of a {@link Counter}.
+     */
+    public interface CounterMXBean {
+        long getCount();
+    }
+
+    /**
+     * JMX view of a {@link Timer}.
+     */
+    public interface TimerMXBean {
+        long getCount();
+
+        double getTotalSeconds();
+
+        double getMeanMillis();
+
+        double getMaxMillis();
+    }
+
+    /**
+     * JMX view of a gauge.
+     */
+    public interface GaugeMXBean {
+        long getValue();
+    }
+
+    /**
+     * A monotonically increasing count.
+     */
+    public static class Counter implements Metric, CounterMXBean {
+        private final String help;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(String help) {
+            this.help = help;
+        }
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public void writePrometheus(String name, StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(getCount()).append('\n');
+        }
+    }
+
+    /**
+     * A latency histogram. Durations are recorded in nanoseconds and exported in seconds.
+     */
+    public static class Timer implements Metric, TimerMXBean {
+        private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS.length];
+
+        static {
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                BUCKET_BOUNDS_NANOS[i] = Math.round(BUCKET_BOUNDS[i] * 1e9);
+            }
+        }
+
+        private final String help;
+        // One more bucket than bounds, for durations above the last bound
+        private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Timer(String help) {
+            this.help = help;
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(long nanos) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * Records the time elapsed since a {@link System#nanoTime()} reading.
+         *
+         * @param startNanos the reading taken when the timed operation started
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public double getTotalSeconds() {
+            return sumNanos.sum() / 1e9;
+        }
+
+        @Override
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : sumNanos.sum() / 1e6 / n;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        @Override
+        public void writePrometheus(String name, StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                cumulative += buckets[i].sum();
+                out.append(name).append("_bucket{le=\"").append(BUCKET_BOUNDS[i]).append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += buckets[BUCKET_BOUNDS.length].sum();
+            out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+            out.append(name).append("_sum ").append(getTotalSeconds()).append('\n');
+            out.append(name).append("_count ").append(cumulative).append('\n');
+        }
+    }
+
+    private static class Gauge implements Metric, GaugeMXBean {
+        private final String help;
+        private final LongSupplier value;
+
+        private Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+
+        @Override
+        public long getValue() {
+            return value.getAsLong();
+        }
+
+        @Override
+        public void writePrometheus(String name, StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            out.append(name).append(' ').append(getValue()).append('\n');
+        }
+    }
+
+    /**
+     * Returns the counter with the given name, creating it on first use.
+     *
+     * @param name the Prometheus metric name, ending in `_total`
+     * @param help a one-line description
+     * @return the counter
+     */
+    public static Counter counter(String name, String help) {
+        return register(name, Counter.class, () -> new Counter(help));
+    }
+
+    /**
+     * Returns the timer with the given name, creating it on first use.
+     *
+     * @param name the Prometheus metric name, ending in `_seconds`
+     * @param help a one-line description
+     * @return the timer
+     */
+    public static Timer timer(String name, String help) {
+        return register(name, Timer.class, () -> new Timer(help));
+    }
+
+    /**
+     * Registers a gauge whose value is read when metrics are exported. A gauge registered again under the
+     * same name replaces the previous one.
+     *
+     * @param name  the Prometheus metric name
+     * @param help  a one-line description
+     * @param value supplies the current value
+     */
+    public static void gauge(String name, String help, LongSupplier value) {
+        Gauge gauge = new Gauge(help, value);
+        METRICS.put(name, gauge);
+        registerMBean(name, gauge, true);
+    }
+
+    private static <T extends Metric> T register(String name, Class<T> type, Supplier<T> factory) {
+        Metric metric = METRICS.get(name);
+        if (metric == null) {
+            synchronized (METRICS) {
+                metric = METRICS.get(name);
+                if (metric == null) {
+                    metric = factory.get();
+                    METRICS.put(name, metric);
+                    registerMBean(name, metric, false);
+                }
+            }
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + metric.getClass().getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    private static void registerMBean(String name, Metric metric, boolean replace) {
+        if (!JMX_ENABLED) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + name);
+            if (replace && server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(metric, objectName);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register metric " + name + " with JMX", e);
+        }
+    }
+
+    /**
+     * Returns all metrics in the Prometheus text exposition format.
+     *
+     * @return the metrics text
+     */
+    public static String toPrometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Metric> entry : METRICS.entrySet()) {
+            entry.getValue().writePrometheus(entry.getKey(), out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes all metrics to `metrics.prometheus.file`. The file is replaced atomically, so a scraper never
+     * reads a half-written file. Does nothing if the property is not set.
+     */
+    public static void writePrometheusFile() {
+        if (PROMETHEUS_FILE == null || PROMETHEUS_FILE.isBlank()) {
+            return;
+        }
+        Path file = Paths.get(PROMETHEUS_FILE);
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(toPrometheusText());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Metrics written to " + file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write metrics file", e);
+        }
+    }}
@@ -0,0 +1,47 @@
+import org.example.invoiceapp.billing.BillOutputCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BillOutputCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRestoresStoredBills() throws IOException {
+        BillOutputCache cache = new BillOutputCache(directory.resolve("cache"));
+        Path output = directory.resolve("1_Ana_2024-01_bill.txt");
+        String key = BillOutputCache.key("layout 1", "1", "Ana", "150");
+
+        // A stale output is removed on a miss, so the bill is written as a new file
+        Files.writeString(output, "old bill");
+        assertFalse(cache.restore(key, "txt", output));
+        assertFalse(Files.exists(output));
+        Files.writeString(output, "bill");
+        cache.store(key, "txt", output);
+
+        assertTrue(cache.restore(key, "txt", output));
+        assertEquals("bill", Files.readString(output));
+        Files.delete(output);
+        assertTrue(cache.restore(key, "txt", output));
+        assertEquals("bill", Files.readString(output));
+        assertFalse(cache.restore(key, "pdf", output));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void testKeysDependOnEveryInput() {
+        assertEquals(BillOutputCache.key("1", "Ana"), BillOutputCache.key("1", "Ana"));
+        assertNotEquals(BillOutputCache.key("1", "Ana"), BillOutputCache.key("1", "Anna"));
+        assertNotEquals(BillOutputCache.key("1", "Ana"), BillOutputCache.key("1A", "na"));
+        assertNotEquals(BillOutputCache.key("1", null), BillOutputCache.key("1", "null"));
+        assertEquals(64, BillOutputCache.key().length());
+    }
+}
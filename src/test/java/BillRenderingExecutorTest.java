@@ -0,0 +1,96 @@
+import org.example.invoiceapp.billing.BillRenderingExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BillRenderingExecutorTest {
+
+    @Test
+    void testSubmitBlocksAtTheConcurrencyCap() throws Exception {
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            CountDownLatch started = new CountDownLatch(3);
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            try (BillRenderingExecutor renderer = new BillRenderingExecutor(3, virtualThreads)) {
+                CountDownLatch allSubmitted = new CountDownLatch(1);
+                Thread submitter = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 10; i++) {
+                            renderer.submit(Integer.toString(i), () -> {
+                                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                                started.countDown();
+                                release.await();
+                                running.decrementAndGet();
+                                return true;
+                            });
+                        }
+                        allSubmitted.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                submitter.start();
+
+                assertTrue(started.await(5, TimeUnit.SECONDS));
+                // The fourth bill waits for a free slot, so the caller cannot queue the other seven
+                assertFalse(allSubmitted.await(200, TimeUnit.MILLISECONDS));
+                release.countDown();
+                assertTrue(allSubmitted.await(5, TimeUnit.SECONDS));
+                submitter.join();
+
+                BillRenderingExecutor.Summary summary = renderer.awaitCompletion();
+                assertEquals(10, summary.getSucceeded());
+                assertEquals(3, maxRunning.get());
+            }
+        }
+    }
+
+    @Test
+    void testFailuresAreIsolatedPerCustomer() throws Exception {
+        BillRenderingExecutor.Summary summary;
+        try (BillRenderingExecutor renderer = new BillRenderingExecutor(2, false)) {
+            renderer.submit("1", () -> true);
+            renderer.submit("2", () -> false);
+            renderer.submit("3", () -> {
+                throw new IOException("Disk full");
+            });
+            renderer.submit("4", () -> null);
+            renderer.submit("5", () -> {
+                throw new ArithmeticException("integer overflow");
+            });
+            renderer.submit("6", () -> true);
+            summary = renderer.awaitCompletion();
+        }
+
+        assertEquals(2, summary.getSucceeded());
+        assertEquals(Set.of("2", "3", "4", "5"), Set.copyOf(summary.getFailedCustomerIds()));
+        assertThrows(UnsupportedOperationException.class, () -> summary.getFailedCustomerIds().add("7"));
+    }
+
+    @Test
+    void testSummaryReportsSuccessesAndFailures() throws Exception {
+        BillRenderingExecutor.Summary summary;
+        try (BillRenderingExecutor renderer = new BillRenderingExecutor(4, true)) {
+            renderer.submit("1", () -> true);
+            renderer.submit("2", () -> false);
+            summary = renderer.awaitCompletion();
+        }
+
+        assertEquals(1, summary.getSucceeded());
+        assertEquals(List.of("2"), summary.getFailedCustomerIds());
+        assertTrue(summary.toString().startsWith("Bills rendered: 1, failed: 1 [2]"), summary.toString());
+        if (summary.getCacheHits() >= 0) {
+            // No bill of this run went through the bill cache
+            assertEquals(0, summary.getCacheHits());
+            assertEquals(0, summary.getCacheMisses());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import org.example.invoiceapp.billing.BillRepository;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BillRepositoryTest {
+
+    // Data source whose statements count the upserted rows, or fail if `failing` is set
+    private static DataSource countingDataSource(AtomicInteger statements, AtomicInteger rows, boolean failing) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (ds, dsMethod, dsArgs) -> {
+                    if (!dsMethod.getName().equals("getConnection")) {
+                        return null;
+                    }
+                    return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                            (conn, connMethod, connArgs) -> {
+                                if (!connMethod.getName().equals("prepareStatement")) {
+                                    return null;
+                                }
+                                String sql = (String) connArgs[0];
+                                // Rows are upserted per customer and period; a plain insert counts no rows
+                                int placeholders = sql.contains(" ON DUPLICATE KEY UPDATE ") ? sql.split("\\?", -1).length - 1 : 0;
+                                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                                        (stmt, stmtMethod, stmtArgs) -> {
+                                            if (stmtMethod.getName().equals("executeUpdate")) {
+                                                if (failing) {
+                                                    throw new SQLException("Database is down");
+                                                }
+                                                statements.incrementAndGet();
+                                                rows.addAndGet(placeholders / 7);
+                                                return placeholders / 7;
+                                            }
+                                            return null;
+                                        });
+                            });
+                });
+    }
+
+    @Test
+    void testFlushWritesAllQueuedRowsInMultiRowBatches() throws InterruptedException {
+        AtomicInteger statements = new AtomicInteger();
+        AtomicInteger rows = new AtomicInteger();
+        BillRepository repository = new BillRepository(countingDataSource(statements, rows, false), 64, 10_000, 16);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(repository.save(Integer.toString(i), "Customer " + i, "2023-01", 10, 5, 1.0, 0.25));
+        }
+
+        assertEquals(1000, repository.flush());
+        assertEquals(1000, rows.get());
+        assertEquals((1000 + 63) / 64, statements.get());
+        repository.shutdown();
+        assertFalse(repository.save("1", "Late", "2023-01", 1, 1, 0.1, 0.05));
+    }
+
+    @Test
+    void testFailedBatchesAreCounted() throws InterruptedException {
+        BillRepository repository = new BillRepository(countingDataSource(new AtomicInteger(), new AtomicInteger(), true), 10, 10_000, 100);
+        for (int i = 0; i < 25; i++) {
+            repository.save(Integer.toString(i), "Customer " + i, "2023-01", 10, 5, 1.0, 0.25);
+        }
+
+        assertEquals(0, repository.flush());
+        assertEquals(25, repository.getFailedCount());
+        repository.shutdown();
+    }
+}
@@ -0,0 +1,29 @@
+import org.example.invoiceapp.data.ClientManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientManagerTest {
+
+    @Test
+    void testDiffClientsReturnsOnlyNewAndRenamedClients() {
+        Map<String, String> existing = new HashMap<>();
+        existing.put("1", "Ivan Ivanov");
+        existing.put("2", "Maria Petrova");
+        existing.put("3", "Georgi Georgiev");
+
+        Map<String, String> lookup = new HashMap<>();
+        lookup.put("1", "Ivan Ivanov");
+        lookup.put("2", "Maria Dimitrova");
+        lookup.put("4", "Elena Koleva");
+
+        Map<String, String> delta = ClientManager.diffClients(existing, lookup);
+
+        assertEquals(2, delta.size());
+        assertEquals("Maria Dimitrova", delta.get("2"));
+        assertEquals("Elena Koleva", delta.get("4"));
+    }
+}
@@ -0,0 +1,76 @@
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.example.invoiceapp.billing.CombinedPdfWriter;
+import org.example.invoiceapp.billing.PdfBillForm;
+import org.example.invoiceapp.data.CustomerUsage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CombinedPdfWriterTest {
+
+    private static final String FONT = "src/main/resources/fonts/DejaVuSans.ttf";
+    private static final String LOGO = "src/main/resources/logo/logo.png";
+
+    @TempDir
+    Path directory;
+
+    private static void writeBills(CombinedPdfWriter writer, int count) throws Exception {
+        for (int i = 1; i <= count; i++) {
+            writer.append(Integer.toString(i), "Customer " + i, new CustomerUsage(i * 10, i), "0.15", "0.05", i * 1.5, i * 0.05, i * 1.55, "2023", "01.02.2023",
+                    LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31));
+        }
+    }
+
+    // Checks that every index row points at the page showing that customer's bill
+    private void assertIndexMatchesPages(CombinedPdfWriter writer, int count) throws Exception {
+        List<String> index = Files.readAllLines(writer.getIndexFile());
+        assertEquals("customer_id,file,first_page,last_page", index.get(0));
+        assertEquals(count + 1, index.size());
+        for (String row : index.subList(1, index.size())) {
+            String[] fields = row.split(",");
+            PdfReader reader = new PdfReader(directory.resolve(fields[1]).toString());
+            try {
+                assertEquals(fields[2], fields[3], row);
+                String text = PdfTextExtractor.getTextFromPage(reader, Integer.parseInt(fields[2]));
+                assertTrue(text.contains("Customer " + fields[0] + "\n") || text.endsWith("Customer " + fields[0]), row + ": " + text);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    void testSplitsBillsIntoFilesOfAtMostKPages() throws Exception {
+        CombinedPdfWriter writer = new CombinedPdfWriter(directory, "batch", 2, FONT, LOGO, null);
+        try (writer) {
+            writeBills(writer, 5);
+        }
+
+        assertEquals(List.of(directory.resolve("batch_001.pdf"), directory.resolve("batch_002.pdf"), directory.resolve("batch_003.pdf")), writer.getFiles());
+        PdfReader last = new PdfReader(directory.resolve("batch_003.pdf").toString());
+        assertEquals(1, last.getNumberOfPages());
+        last.close();
+        assertIndexMatchesPages(writer, 5);
+    }
+
+    @Test
+    void testStampsFormBillsIntoOneDocument() throws Exception {
+        CombinedPdfWriter writer = new CombinedPdfWriter(directory, "forms", 0, FONT, LOGO, PdfBillForm.getInstance(FONT, LOGO));
+        try (writer) {
+            writeBills(writer, 4);
+        }
+
+        assertEquals(1, writer.getFiles().size());
+        PdfReader reader = new PdfReader(writer.getFiles().get(0).toString());
+        assertEquals(4, reader.getNumberOfPages());
+        reader.close();
+        assertIndexMatchesPages(writer, 4);
+    }
+}
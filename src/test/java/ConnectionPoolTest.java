@@ -0,0 +1,106 @@
+import org.example.invoiceapp.util.ConnectionPool;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+
+    // Minimal driver for "jdbc:fake:" URLs whose connections are always valid
+    static class FakeDriver implements Driver {
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            boolean[] closed = {false};
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "close" -> closed[0] = true;
+                        case "isClosed" -> closed[0];
+                        case "isValid", "getAutoCommit" -> true;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == args[0];
+                        default -> null;
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:fake:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getGlobal();
+        }
+    }
+
+    @BeforeAll
+    static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(new FakeDriver());
+    }
+
+    @Test
+    void testConnectionsAreReused() throws SQLException {
+        ConnectionPool pool = new ConnectionPool("jdbc:fake:db", "user", "pass", 1, 2, 1000, 5000, 0);
+        for (int i = 0; i < 5; i++) {
+            try (Connection connection = pool.getConnection()) {
+                assertFalse(connection.isClosed());
+                assertEquals(1, pool.getActiveConnections());
+            }
+        }
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(5, pool.getBorrowCount());
+        assertEquals(1, pool.getIdleConnections());
+        pool.shutdown();
+    }
+
+    @Test
+    void testBorrowTimesOutWhenPoolIsExhausted() throws SQLException {
+        ConnectionPool pool = new ConnectionPool("jdbc:fake:db", "user", "pass", 0, 1, 50, 5000, 0);
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+            assertThrows(SQLException.class, pool::getConnection);
+        }
+        assertEquals(1, pool.getTimeoutCount());
+        pool.shutdown();
+    }
+
+    @Test
+    void testClosedHandleCannotBeUsed() throws SQLException {
+        ConnectionPool pool = new ConnectionPool("jdbc:fake:db", "user", "pass", 0, 1, 50, 5000, 0);
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1"));
+        assertEquals(1, pool.getTotalConnections());
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,62 @@
+import org.example.invoiceapp.data.ConsumptionRecord;
+import org.example.invoiceapp.data.ConsumptionRecordParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsumptionRecordParserTest {
+
+    @Test
+    void testParseValidRecord() {
+        ConsumptionRecord record = ConsumptionRecord.of("69,03.01.2019,75,248,273,851,A,,");
+        assertTrue(record.isWellFormed());
+        assertEquals(69, record.customerId());
+        assertEquals("69", record.customerIdText());
+        assertEquals(LocalDate.of(2019, 1, 3).toEpochDay(), record.epochDay());
+        assertEquals("03.01.2019", record.dateText());
+        assertEquals(75, record.usage1());
+        assertEquals(248, record.usage2());
+        assertEquals(273, record.usage3());
+        assertEquals(851, record.usage4());
+        assertEquals('A', record.quality());
+        assertEquals(-1, record.errorCode());
+        assertEquals("", record.description());
+    }
+
+    @Test
+    void testParseRecordWithErrorCode() {
+        ConsumptionRecord record = ConsumptionRecord.of("123,01.01.2019,0,0,0,0,E,75,meter tamper alarm");
+        assertTrue(record.isWellFormed());
+        assertEquals('E', record.quality());
+        assertEquals(75, record.errorCode());
+        assertEquals("meter tamper alarm", record.description());
+    }
+
+    @Test
+    void testParseMalformedRecords() {
+        assertFalse(ConsumptionRecord.of("invalid_input.txt").isWellFormed());
+        assertFalse(ConsumptionRecord.of("").isWellFormed());
+        assertFalse(ConsumptionRecord.of("1,31.02.2019,1,2,3,4,A").isWellFormed());
+        assertFalse(ConsumptionRecord.of("1,01.01.2019,1,x,3,4,A").isWellFormed());
+        assertFalse(ConsumptionRecord.of("1,01.01.2019,1,2,3,4,,,").isWellFormed());
+    }
+
+    @Test
+    void testParseMappedFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("input.txt");
+        Files.writeString(file, "1,01.01.2019,1,2,3,4,A,,\r\n2,02.01.2019,5,6,7,8,E,,\nbroken\n3,03.01.2019,9,10,11,12,A,,");
+
+        List<String> lines = new ArrayList<>();
+        long count = ConsumptionRecordParser.parse(file, record -> lines.add(record.line()));
+
+        assertEquals(4, count);
+        assertEquals(List.of("1,01.01.2019,1,2,3,4,A,,", "2,02.01.2019,5,6,7,8,E,,", "broken", "3,03.01.2019,9,10,11,12,A,,"), lines);
+    }
+}
@@ -0,0 +1,90 @@
+import org.example.invoiceapp.data.CustomerLookupIndex;
+import org.example.invoiceapp.data.FileProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerLookupIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testLooksUpNamesInIdOrder() throws IOException {
+        Path lookup = Files.writeString(directory.resolve("lookup.txt"),
+                "123,Gerard Kelley\n107,Heather Webster\nabc,Not A Customer\n117,Sabrina Romero\n123,Gérard Kelley\n");
+
+        CustomerLookupIndex index = CustomerLookupIndex.open(lookup, directory.resolve("lookup.idx"));
+
+        assertEquals(3, index.size());
+        assertEquals("Heather Webster", index.getName(107));
+        assertEquals("Gérard Kelley", index.getName("123"));
+        assertNull(index.getName(999));
+        assertNull(index.getName("abc"));
+        Map<String, String> names = index.asMap();
+        assertEquals(List.of("107", "117", "123"), List.copyOf(names.keySet()));
+        assertEquals("Sabrina Romero", names.get("117"));
+    }
+
+    @Test
+    void testRebuildsOnlyWhenTheLookupChanges() throws IOException {
+        Path lookup = Files.writeString(directory.resolve("lookup.txt"), "1,Ivan Ivanov\n");
+        Path indexFile = directory.resolve("lookup.idx");
+
+        assertTrue(CustomerLookupIndex.open(lookup, indexFile).isRebuilt());
+        assertFalse(CustomerLookupIndex.open(lookup, indexFile).isRebuilt());
+
+        // Same size, different contents
+        Files.writeString(lookup, "1,Ivan Petrov\n");
+        CustomerLookupIndex index = CustomerLookupIndex.open(lookup, indexFile);
+        assertTrue(index.isRebuilt());
+        assertEquals("Ivan Petrov", index.getName(1));
+    }
+
+    @Test
+    void testKeepsTheIdTextOfTheLookup() throws IOException {
+        Path lookup = Files.writeString(directory.resolve("lookup.txt"), "007,James Bond\n12,Ana Petrova\n");
+
+        CustomerLookupIndex index = CustomerLookupIndex.open(lookup, directory.resolve("lookup.idx"));
+
+        assertEquals(List.of("007", "12"), List.copyOf(index.asMap().keySet()));
+        assertEquals("James Bond", index.asMap().get("007"));
+        assertEquals("James Bond", index.getName("7"));
+    }
+
+    @Test
+    void testNamesRemainAvailableAfterTheLookupIsArchived() throws IOException {
+        Path lookup = Files.writeString(directory.resolve("lookup.txt"), "123,Gerard Kelley\n107,Heather Webster\n");
+        Path indexFile = directory.resolve("lookup.idx");
+        CustomerLookupIndex.open(lookup, indexFile);
+
+        // The billing run archives the lookup file; a reprint afterwards still finds every name
+        assertTrue(FileProcessor.processFiles(List.of(), List.of(), List.of(lookup),
+                directory.resolve("done"), directory.resolve("interrupted")));
+        assertFalse(Files.exists(lookup));
+
+        CustomerLookupIndex index = CustomerLookupIndex.open(lookup, indexFile);
+        assertFalse(index.isRebuilt());
+        assertEquals(2, index.size());
+        assertEquals("Gerard Kelley", index.getName(123));
+        assertEquals(List.of("107", "123"), List.copyOf(index.asMap().keySet()));
+    }
+
+    @Test
+    void testFailsWithoutTheLookupAndItsIndex() throws IOException {
+        Path lookup = directory.resolve("lookup.txt");
+        Path indexFile = directory.resolve("lookup.idx");
+
+        assertThrows(IOException.class, () -> CustomerLookupIndex.open(lookup, indexFile));
+
+        Files.writeString(indexFile, "not an index");
+        assertThrows(IOException.class, () -> CustomerLookupIndex.open(lookup, indexFile));
+    }
+}
@@ -0,0 +1,33 @@
+import org.example.invoiceapp.util.DateCodec;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DateCodecTest {
+
+    @Test
+    void testMatchesLocalDate() {
+        for (long epochDay = LocalDate.of(1600, 1, 1).toEpochDay(); epochDay <= LocalDate.of(2500, 12, 31).toEpochDay(); epochDay++) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            int month = DateCodec.monthOf(epochDay);
+            assertEquals(DateCodec.monthIndex(date.getYear(), date.getMonthValue()), month, date.toString());
+            assertEquals(date.getYear(), DateCodec.yearOf(month));
+            assertEquals(date.getMonthValue(), DateCodec.monthOfYear(month));
+            assertEquals(epochDay, DateCodec.toEpochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+            if (date.getDayOfMonth() == 1) {
+                assertEquals(epochDay, DateCodec.firstDayOf(month));
+                assertEquals(date.withDayOfMonth(date.lengthOfMonth()).toEpochDay(), DateCodec.lastDayOf(month));
+            }
+        }
+    }
+
+    @Test
+    void testFormatsMonths() {
+        assertEquals(0, DateCodec.monthIndex(1970, 1));
+        assertEquals(-1, DateCodec.monthOf(-1));
+        assertEquals("1969-12", DateCodec.format(-1));
+        assertEquals("2019-01", DateCodec.format(DateCodec.monthIndex(2019, 1)));
+    }
+}
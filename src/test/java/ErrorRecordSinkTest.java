@@ -0,0 +1,73 @@
+import org.example.invoiceapp.data.DataValidator;
+import org.example.invoiceapp.data.ErrorRecordSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErrorRecordSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testWritesErrorFileInOrderWithSmallQueue() throws Exception {
+        Path errorFile = tempDir.resolve("E_records.txt");
+        List<String> expected = new ArrayList<>();
+        List<String> valid = new ArrayList<>();
+
+        ErrorRecordSink sink = new ErrorRecordSink(errorFile, null, 8, 10, 4);
+        try (DataValidator.ValidationStream validator = DataValidator.openValidationStream(record -> valid.add(record.line()), sink)) {
+            for (int i = 0; i < 5_000; i++) {
+                String line = i % 3 == 0
+                        ? (i + 1) + ",01.08.2023,1,2,3,4,A"
+                        : (i + 1) + ",01.08.2023,0,2,3,4,A";
+                if (i % 3 != 0) {
+                    expected.add(line);
+                }
+                validator.accept(line);
+            }
+            validator.accept("not,a,record");
+            expected.add("not,a,record");
+        }
+
+        assertEquals(expected, Files.readAllLines(errorFile));
+        assertEquals(1667, valid.size());
+        assertEquals(expected.size(), sink.getFileRecordCount());
+    }
+
+    @Test
+    void testWritesBufferedRecordsPerFileInOrder() throws Exception {
+        Path errorFile = tempDir.resolve("E_records.txt");
+        ErrorRecordSink.Buffer first = new ErrorRecordSink.Buffer();
+        ErrorRecordSink.Buffer second = new ErrorRecordSink.Buffer();
+        List<String> expectedFirst = new ArrayList<>();
+        List<String> expectedSecond = new ArrayList<>();
+
+        // Both files are validated at the same time; their records must not be interleaved
+        try (DataValidator.ValidationStream firstValidator = DataValidator.openBufferedValidationStream(record -> { }, first);
+             DataValidator.ValidationStream secondValidator = DataValidator.openBufferedValidationStream(record -> { }, second)) {
+            for (int i = 0; i < 100; i++) {
+                String line = (i + 1) + ",01.08.2023,0,2,3,4,A";
+                firstValidator.accept("1" + line);
+                expectedFirst.add("1" + line);
+                secondValidator.accept("2" + line);
+                expectedSecond.add("2" + line);
+            }
+        }
+        assertEquals(100, first.size());
+
+        List<String> expected = new ArrayList<>(expectedFirst);
+        expected.addAll(expectedSecond);
+        try (ErrorRecordSink sink = new ErrorRecordSink(errorFile, null, 8, 10, 4)) {
+            sink.addAll(first);
+            sink.addAll(second);
+        }
+        assertEquals(expected, Files.readAllLines(errorFile));
+    }
+}
@@ -0,0 +1,134 @@
+import org.example.invoiceapp.data.FileProcessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileProcessorTest {
+
+    private static final String GLOB = "input*.txt";
+
+    @TempDir
+    Path directory;
+
+    private Path inputDir() throws IOException {
+        return Files.createDirectories(directory.resolve("input"));
+    }
+
+    private Path write(Path dir, String name) throws IOException {
+        return Files.writeString(dir.resolve(name), "1,01.01.2023,1,2,3,4,A,,\n");
+    }
+
+    @Test
+    void testGlobFilesAreBilledInNameOrder() throws IOException {
+        Path input = inputDir();
+        Path second = write(input, "input-2023-01-02.txt");
+        Path first = write(input, "input-2023-01-01.txt");
+        Path third = write(input, "input-2023-01-10.txt");
+        write(input, "lookup.txt");
+        Files.createDirectories(input.resolve("input-dir.txt"));
+
+        List<Path> files = FileProcessor.findConsumptionFiles(input, GLOB, null, input.resolve("input.txt"));
+
+        assertEquals(List.of(first, second, third), files);
+    }
+
+    @Test
+    void testWithoutGlobOnlyTheDefaultFileIsBilled() throws IOException {
+        Path input = inputDir();
+        Path defaultFile = input.resolve("input.txt");
+        write(input, "input-2023-01-01.txt");
+
+        assertEquals(List.of(), FileProcessor.findConsumptionFiles(input, "", null, defaultFile));
+
+        write(input, "input.txt");
+        assertEquals(List.of(defaultFile), FileProcessor.findConsumptionFiles(input, "", null, defaultFile));
+    }
+
+    @Test
+    void testManifestFilesAreBilledInManifestOrder() throws IOException {
+        Path input = inputDir();
+        Path a = write(input, "input-a.txt");
+        Path b = write(input, "input-b.txt");
+        Path other = write(input, "readings.csv");
+        write(input, "input-c.txt");
+        Path manifest = Files.writeString(input.resolve("manifest.txt"),
+                "# January\n" + "readings.csv\n" + "\n" + "input-b.txt\n" + "  input-a.txt  \n");
+
+        List<Path> files = FileProcessor.findConsumptionFiles(input, GLOB, manifest, input.resolve("input.txt"));
+
+        // The manifest wins over the glob: its files only, in its order
+        assertEquals(List.of(other, b, a), files);
+    }
+
+    @Test
+    void testManifestListingAMissingFileWaitsForIt() throws IOException {
+        Path input = inputDir();
+        write(input, "input-a.txt");
+        Path manifest = Files.writeString(input.resolve("manifest.txt"), "input-a.txt\ninput-b.txt\n");
+
+        assertEquals(List.of(), FileProcessor.findConsumptionFiles(input, GLOB, manifest, input.resolve("input.txt")));
+
+        Path b = write(input, "input-b.txt");
+        assertEquals(List.of(input.resolve("input-a.txt"), b),
+                FileProcessor.findConsumptionFiles(input, GLOB, manifest, input.resolve("input.txt")));
+    }
+
+    @Test
+    void testEveryFileIsArchivedOnItsOwn() throws IOException {
+        Path input = inputDir();
+        Path done = directory.resolve("done");
+        Path interrupted = directory.resolve("interrupted");
+        Path first = write(input, "input-1.txt");
+        Path broken = write(input, "input-2.txt");
+        Path third = write(input, "input-3.txt");
+        Path lookup = write(input, "lookup.txt");
+        Path manifest = write(input, "manifest.txt");
+
+        boolean allDone = FileProcessor.processFiles(List.of(first, third), List.of(broken),
+                List.of(manifest, lookup), done, interrupted);
+
+        assertFalse(allDone);
+        assertTrue(Files.isRegularFile(done.resolve("input-1.txt")));
+        assertTrue(Files.isRegularFile(done.resolve("input-3.txt")));
+        assertTrue(Files.isRegularFile(done.resolve("lookup.txt")));
+        assertTrue(Files.isRegularFile(done.resolve("manifest.txt")));
+        assertTrue(Files.isRegularFile(interrupted.resolve("input-2.txt")));
+        assertFalse(Files.exists(done.resolve("input-2.txt")));
+        assertFalse(Files.exists(interrupted.resolve("input-1.txt")));
+        try (var files = Files.list(input)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testArchivingReplacesAnEarlierFileOfTheSameName() throws IOException {
+        Path input = inputDir();
+        Path done = Files.createDirectories(directory.resolve("done"));
+        Files.writeString(done.resolve("input-1.txt"), "old");
+        Path file = write(input, "input-1.txt");
+
+        assertTrue(FileProcessor.processFiles(List.of(file), List.of(), List.of(), done, directory.resolve("interrupted")));
+
+        assertEquals("1,01.01.2023,1,2,3,4,A,,\n", Files.readString(done.resolve("input-1.txt")));
+        assertFalse(Files.exists(directory.resolve("interrupted")));
+    }
+
+    @Test
+    void testAFileThatCannotBeArchivedDoesNotHoldBackTheOthers() throws IOException {
+        Path input = inputDir();
+        Path done = directory.resolve("done");
+        Path interrupted = directory.resolve("interrupted");
+        Path missing = input.resolve("input-1.txt");
+        Path second = write(input, "input-2.txt");
+
+        assertFalse(FileProcessor.processFiles(List.of(missing, second), List.of(), List.of(), done, interrupted));
+
+        assertTrue(Files.isRegularFile(done.resolve("input-2.txt")));
+    }
+}
@@ -0,0 +1,118 @@
+import org.example.invoiceapp.util.InputWatcher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputWatcherTest {
+
+    private static final long SETTLE_MILLIS = 300;
+
+    @TempDir
+    Path directory;
+
+    // The input files of the directory, like FileProcessor.findInputFiles
+    private List<Path> inputFiles() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "input*.txt")) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return files;
+    }
+
+    private Thread start(InputWatcher watcher) {
+        Thread thread = new Thread(watcher::run, "input-watcher-test");
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    void testRunsOnceTheFilesHaveSettled() throws Exception {
+        Path input = directory.resolve("input.txt");
+        AtomicLong ranAt = new AtomicLong();
+        CountDownLatch ran = new CountDownLatch(1);
+        InputWatcher watcher = new InputWatcher(directory, this::inputFiles, SETTLE_MILLIS, () -> {
+            ranAt.set(System.currentTimeMillis());
+            try {
+                Files.delete(input);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ran.countDown();
+        });
+        Thread thread = start(watcher);
+        try {
+            Files.writeString(input, "1,01.01.2023,1,2,3,4,A,,\n");
+            Thread.sleep(SETTLE_MILLIS / 2);
+            // Still being written: the settle period starts again
+            Files.writeString(input, "1,02.01.2023,1,2,3,4,A,,\n", StandardOpenOption.APPEND);
+            long lastWrite = System.currentTimeMillis();
+
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+            assertTrue(ranAt.get() - lastWrite >= SETTLE_MILLIS, (ranAt.get() - lastWrite) + " ms");
+        } finally {
+            watcher.close();
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    void testRunsAgainOnlyWhenTheFilesChange() throws Exception {
+        Path input = Files.writeString(directory.resolve("input.txt"), "1,01.01.2023,1,2,3,4,A,,\n");
+        AtomicInteger runs = new AtomicInteger();
+        InputWatcher watcher = new InputWatcher(directory, this::inputFiles, SETTLE_MILLIS, runs::incrementAndGet);
+        Thread thread = start(watcher);
+        try {
+            // A drop that is already there is processed; left in place unchanged, it is not processed again
+            Thread.sleep(SETTLE_MILLIS * 4);
+            assertEquals(1, runs.get());
+
+            Files.writeString(input, "1,02.01.2023,1,2,3,4,A,,\n", StandardOpenOption.APPEND);
+            Thread.sleep(SETTLE_MILLIS * 4);
+            assertEquals(2, runs.get());
+        } finally {
+            watcher.close();
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    void testCloseWaitsForTheTaskInProgress() throws Exception {
+        Files.writeString(directory.resolve("input.txt"), "1,01.01.2023,1,2,3,4,A,,\n");
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        InputWatcher watcher = new InputWatcher(directory, this::inputFiles, SETTLE_MILLIS, () -> {
+            started.countDown();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.set(true);
+        });
+        Thread thread = start(watcher);
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        watcher.close();
+        assertTrue(finished.get());
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+    }
+}
@@ -0,0 +1,39 @@
+import org.example.invoiceapp.util.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void testTimerExportsCumulativeHistogram() {
+        Metrics.Timer timer = Metrics.timer("test_timer_seconds", "Test timer");
+        timer.record(TimeUnit.MICROSECONDS.toNanos(50));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(3));
+        timer.record(TimeUnit.SECONDS.toNanos(120));
+
+        String text = Metrics.toPrometheusText();
+        assertTrue(text.contains("# TYPE test_timer_seconds histogram\n"));
+        assertTrue(text.contains("test_timer_seconds_bucket{le=\"1.0E-4\"} 1\n"), text);
+        assertTrue(text.contains("test_timer_seconds_bucket{le=\"0.005\"} 2\n"), text);
+        assertTrue(text.contains("test_timer_seconds_bucket{le=\"60.0\"} 2\n"), text);
+        assertTrue(text.contains("test_timer_seconds_bucket{le=\"+Inf\"} 3\n"), text);
+        assertTrue(text.contains("test_timer_seconds_count 3\n"), text);
+        assertEquals(120_000, timer.getMaxMillis(), 0.001);
+    }
+
+    @Test
+    void testCounterIsSharedByNameAndExposedOverJmx() throws Exception {
+        Metrics.counter("test_records_total", "Test counter").add(5);
+        Metrics.counter("test_records_total", "Test counter").increment();
+
+        assertTrue(Metrics.toPrometheusText().contains("test_records_total 6\n"));
+        Object count = ManagementFactory.getPlatformMBeanServer()
+                .getAttribute(new ObjectName("org.example.invoiceapp:type=Metrics,name=test_records_total"), "Count");
+        assertEquals(6L, count);
+    }
+}
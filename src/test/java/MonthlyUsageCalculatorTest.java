@@ -0,0 +1,73 @@
+import org.example.invoiceapp.billing.MonthlyUsageCalculator;
+import org.example.invoiceapp.billing.UsageStore;
+import org.example.invoiceapp.data.ConsumptionRecordParser;
+import org.example.invoiceapp.data.CustomerUsage;
+import org.example.invoiceapp.data.DataValidator;
+import org.example.invoiceapp.util.Metrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MonthlyUsageCalculatorTest {
+
+    @Test
+    void testCalculateMonthlyUsage() {
+        Map<String, CustomerUsage> usage = MonthlyUsageCalculator.calculateMonthlyUsage(List.of(
+                "69,03.01.2019,75,248,273,851,A,,",
+                "69,04.01.2019,1,2,3,4,A,,"));
+        assertEquals(248 + 273 + 2 + 3, usage.get("69").getDaytimeUsage());
+        assertEquals(75 + 851 + 1 + 4, usage.get("69").getNighttimeUsage());
+    }
+
+    @Test
+    void testParallelMatchesSequential(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("input.txt");
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < 100_000; i++) {
+                int usage = random.nextInt(10) == 0 ? 0 : random.nextInt(1000);
+                writer.write((random.nextInt(5000) + 1) + ",0" + (random.nextInt(9) + 1) + ".01.2019,"
+                        + usage + "," + random.nextInt(1000) + "," + random.nextInt(1000) + "," + random.nextInt(1000) + ",A,,");
+                writer.newLine();
+            }
+        }
+
+        MonthlyUsageCalculator.UsageAccumulator sequential = new MonthlyUsageCalculator.UsageAccumulator();
+        List<String> sequentialRejected = new ArrayList<>();
+        long[] sequentialValid = new long[1];
+        ConsumptionRecordParser.parse(file, record -> {
+            sequential.recordIssueDay(record);
+            if (DataValidator.isValid(record)) {
+                sequentialValid[0]++;
+                sequential.accept(record);
+            } else {
+                sequentialRejected.add(record.line());
+            }
+        });
+
+        List<String> parallelRejected = new ArrayList<>();
+        Metrics.Counter validRecords = Metrics.counter("invoiceapp_records_valid_total", "Consumption records that passed validation");
+        long validBefore = validRecords.getCount();
+        UsageStore parallel = MonthlyUsageCalculator.calculateMonthlyUsageParallel(file, 4, parallelRejected::add);
+        assertEquals(sequentialValid[0], validRecords.getCount() - validBefore);
+
+        UsageStore expected = sequential.getStore();
+        assertEquals(expected.size(), parallel.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.customerId(i), parallel.customerId(i));
+            assertEquals(expected.daytimeUsage(i), parallel.daytimeUsage(i));
+            assertEquals(expected.nighttimeUsage(i), parallel.nighttimeUsage(i));
+            assertEquals(expected.readingCount(i), parallel.readingCount(i));
+            assertEquals(expected.issueDay(i), parallel.issueDay(i));
+            assertEquals(expected.firstReadingDay(i), parallel.firstReadingDay(i));
+            assertEquals(expected.lastReadingDay(i), parallel.lastReadingDay(i));
+        }
+        assertEquals(sequentialRejected, parallelRejected);
+    }
+}
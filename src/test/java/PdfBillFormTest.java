@@ -0,0 +1,95 @@
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import org.example.invoiceapp.billing.PdfBillForm;
+import org.example.invoiceapp.data.CustomerUsage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfBillFormTest {
+
+    private static final String FONT = "src/main/resources/fonts/DejaVuSans.ttf";
+    private static final String LOGO = "src/main/resources/logo/logo.png";
+
+    private static byte[] write(String customerName) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfBillForm.getInstance(FONT, LOGO).write(out, "123", customerName, new CustomerUsage(12_345, 6_789), "0.10", "0.05", 1234.5, 339.45, 1573.95,
+                "2023", "01.02.2023", LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31));
+        return out.toByteArray();
+    }
+
+    // The names of the embedded font subsets, e.g. `XCEUFH+DejaVuSans`
+    private static Set<String> fontSubsets(byte[] pdf) throws Exception {
+        PdfReader reader = new PdfReader(pdf);
+        try {
+            Set<String> subsets = new HashSet<>();
+            for (int i = 1; i < reader.getXrefSize(); i++) {
+                if (reader.getPdfObject(i) instanceof PdfDictionary font && font.getAsName(PdfName.BASEFONT) != null
+                        && PdfName.decodeName(font.getAsName(PdfName.BASEFONT).toString()).contains("+")) {
+                    subsets.add(PdfName.decodeName(font.getAsName(PdfName.BASEFONT).toString()));
+                }
+            }
+            return subsets;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static String render(String customerId, String customerName, CustomerUsage usage, LocalDate periodStart, LocalDate periodEnd) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PdfBillForm.getInstance(FONT, LOGO).write(out, customerId, customerName, usage, "0.10", "0.05", 1234.5, 339.45, 1573.95, "2023", "01.02.2023", periodStart, periodEnd);
+        PdfReader reader = new PdfReader(out.toByteArray());
+        try {
+            assertEquals(1, reader.getNumberOfPages());
+            return PdfTextExtractor.getTextFromPage(reader, 1);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    void testStampsCustomerValuesOntoTheLayout() throws Exception {
+        String text = render("123", "Иван Петров", new CustomerUsage(12_345, 6_789), LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 31));
+
+        assertTrue(text.contains("Фактура за електроенергия"), text);
+        assertTrue(text.contains("Иван Петров"), text);
+        assertTrue(text.contains("123"), text);
+        assertTrue(text.contains("01.02.2023"), text);
+        assertTrue(text.contains("Период: 01.01.2023 - 31.01.2023"), text);
+        assertTrue(text.contains("19134 kWh"), text);
+        assertTrue(text.contains(String.format("%.2f", 1573.95) + " лв."), text);
+    }
+
+    @Test
+    void testReusesTheBaseLayoutAcrossBills() throws Exception {
+        assertSame(PdfBillForm.getInstance(FONT, LOGO), PdfBillForm.getInstance(FONT, LOGO));
+
+        String first = render("1", "Ana", new CustomerUsage(10, 5), null, null);
+        String second = render("2", "Boris", new CustomerUsage(20, 5), null, null);
+        assertTrue(first.contains("Ana") && !first.contains("Boris"), first);
+        assertTrue(second.contains("Boris") && !second.contains("Ana"), second);
+        assertFalse(first.contains("Период"), first);
+    }
+
+    @Test
+    void testStampsValuesWithTheFontOfTheBasePage() throws Exception {
+        assertEquals(1, fontSubsets(write("Иван Петров")).size());
+        assertEquals(1, fontSubsets(write("Gerard O'Kelley")).size());
+        // Letters the base page has no glyphs for are embedded separately
+        byte[] accented = write("Jürgen Müller");
+        assertEquals(2, fontSubsets(accented).size());
+        PdfReader reader = new PdfReader(accented);
+        try {
+            assertTrue(PdfTextExtractor.getTextFromPage(reader, 1).contains("Jürgen Müller"));
+        } finally {
+            reader.close();
+        }
+    }
+}
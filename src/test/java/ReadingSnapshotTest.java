@@ -0,0 +1,137 @@
+import org.example.invoiceapp.billing.MonthlyUsageCalculator;
+import org.example.invoiceapp.billing.UsageStore;
+import org.example.invoiceapp.data.ConsumptionRecord;
+import org.example.invoiceapp.data.ReadingSnapshot;
+import org.example.invoiceapp.util.DateCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadingSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private static String line(int i) {
+        return (i % 1000 + 1) + "," + String.format("%02d.%02d.2023", i % 28 + 1, i / 4000 % 12 + 1) + "," + i % 7 + "," + i % 11 + "," + i % 13 + "," + i % 17 + "," + (i % 2 == 0 ? "A" : "E");
+    }
+
+    @Test
+    void testReplaysReadingsAcrossBlocksAndAppends() throws IOException {
+        Path file = directory.resolve("input.txt.snapshot");
+        MonthlyUsageCalculator.UsageAccumulator expected = new MonthlyUsageCalculator.UsageAccumulator();
+        ConsumptionRecord record = new ConsumptionRecord();
+        try (ReadingSnapshot.Writer writer = ReadingSnapshot.create(file, false)) {
+            for (int i = 0; i < 10_000; i++) {
+                record.reset(line(i));
+                expected.recordIssueDay(record);
+                expected.accept(record);
+                writer.accept(record);
+            }
+            assertEquals(10_000, writer.getReadingCount());
+        }
+        try (ReadingSnapshot.Writer writer = ReadingSnapshot.create(file, true)) {
+            for (int i = 10_000; i < 12_000; i++) {
+                record.reset(line(i));
+                expected.recordIssueDay(record);
+                expected.accept(record);
+                writer.accept(record);
+            }
+        }
+
+        UsageStore replayed = MonthlyUsageCalculator.calculateMonthlyUsageFromSnapshot(file, null);
+        UsageStore store = expected.getStore();
+        assertEquals(store.size(), replayed.size());
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(store.customerId(i), replayed.customerId(i));
+            assertEquals(store.month(i), replayed.month(i));
+            assertEquals(store.daytimeUsage(i), replayed.daytimeUsage(i));
+            assertEquals(store.nighttimeUsage(i), replayed.nighttimeUsage(i));
+            assertEquals(store.daytimeCost(i), replayed.daytimeCost(i));
+            assertEquals(store.readingCount(i), replayed.readingCount(i));
+            assertEquals(store.issueDay(i), replayed.issueDay(i));
+            assertEquals(store.lastReadingDay(i), replayed.lastReadingDay(i));
+        }
+    }
+
+    @Test
+    void testFiltersByCustomerAndDate() throws IOException {
+        Path file = directory.resolve("filtered.snapshot");
+        ConsumptionRecord record = new ConsumptionRecord();
+        try (ReadingSnapshot.Writer writer = ReadingSnapshot.create(file, false)) {
+            for (int i = 0; i < 9_000; i++) {
+                record.reset(line(i));
+                writer.accept(record);
+            }
+        }
+
+        List<String> readings = new ArrayList<>();
+        long march = DateCodec.toEpochDay(2023, 3, 1);
+        long count = ReadingSnapshot.scan(file, new long[]{5, 700}, march, march + 30,
+                (customerId, epochDay, usage1, usage2, usage3, usage4, quality) -> readings.add(customerId + "@" + epochDay + ":" + usage1 + quality));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 9_000; i++) {
+            ConsumptionRecord reading = ConsumptionRecord.of(line(i));
+            if ((reading.customerId() == 5 || reading.customerId() == 700) && reading.epochDay() >= march && reading.epochDay() <= march + 30) {
+                expected.add(reading.customerId() + "@" + reading.epochDay() + ":" + reading.usage1() + reading.quality());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, readings);
+        assertEquals(expected.size(), count);
+
+        Files.writeString(directory.resolve("not.snapshot"), "1,01.01.2023,1,2,3,4,A");
+        assertThrows(IOException.class, () -> ReadingSnapshot.scan(directory.resolve("not.snapshot"), null, 0, 0, (a, b, c, d, e, f, g) -> { }));
+    }
+
+    @Test
+    void testKeepsTheIssueDayOfARejectedFirstReading() throws IOException {
+        Path file = directory.resolve("input.txt.snapshot");
+        String[] lines = {
+                "123,01.01.2019,1,2,3,4,E,,",
+                "123,02.01.2019,1,2,3,4,A,,",
+                "107,05.01.2019,1,2,3,4,A,,",
+                "123,01.02.2019,1,2,3,4,E,,",
+                "123,03.02.2019,5,6,7,8,A,,",
+        };
+        MonthlyUsageCalculator.UsageAccumulator expected = new MonthlyUsageCalculator.UsageAccumulator();
+        ConsumptionRecord record = new ConsumptionRecord();
+        try (ReadingSnapshot.Writer writer = ReadingSnapshot.create(file, false)) {
+            // As in the streaming pipeline: every parsed reading may set the issue day, only actual readings pass
+            for (String line : lines) {
+                record.reset(line);
+                if (expected.recordIssueDay(record)) {
+                    writer.addIssueDay(record.customerId(), (int) record.epochDay());
+                }
+                if (record.quality() == 'A') {
+                    expected.accept(record);
+                    writer.accept(record);
+                }
+            }
+            assertEquals(3, writer.getReadingCount());
+        }
+
+        UsageStore replayed = MonthlyUsageCalculator.calculateMonthlyUsageFromSnapshot(file, new long[]{123});
+        assertEquals(2, replayed.size());
+        UsageStore store = expected.getStore();
+        for (int i = 0; i < replayed.size(); i++) {
+            int index = store.indexOf(replayed.customerId(i), replayed.month(i));
+            assertEquals(store.issueDay(index), replayed.issueDay(i));
+            assertEquals(store.readingCount(index), replayed.readingCount(i));
+            assertEquals(store.daytimeUsage(index), replayed.daytimeUsage(i));
+        }
+        assertEquals(DateCodec.toEpochDay(2019, 1, 1), replayed.issueDay(0));
+        assertEquals(DateCodec.toEpochDay(2019, 1, 2), replayed.firstReadingDay(0));
+        assertEquals(DateCodec.toEpochDay(2019, 2, 1), replayed.issueDay(1));
+
+        // Markers are not readings
+        assertEquals(3, ReadingSnapshot.scan(file, null, Long.MIN_VALUE, Long.MAX_VALUE, (a, b, c, d, e, f, quality) -> assertEquals('A', quality)));
+    }
+}
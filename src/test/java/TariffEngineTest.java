@@ -0,0 +1,67 @@
+import org.example.invoiceapp.billing.TariffEngine;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffEngineTest {
+
+    private static final String TARIFF = """
+            # Two plans; tou has three bands and a price change
+            plan standard day:day:2+3 night:night:1+4
+            price standard 2023-01-01 day=0.10 night=0.05
+            plan tou peak:day:2 shoulder:day:3 night:night:1+4
+            price tou 2024-07-01 peak=0.2001 shoulder=0.13 night=0.06
+            price tou 2023-01-01 peak=0.18 shoulder=0.12 night=0.05
+            default standard
+            """;
+
+    private static long day(int year, int month, int dayOfMonth) {
+        return LocalDate.of(year, month, dayOfMonth).toEpochDay();
+    }
+
+    @Test
+    void testPricesReadingsWithThePlanAndPricesInEffect() {
+        TariffEngine tariff = TariffEngine.compile(TARIFF, "7,tou\n8,tou\n8,standard\n");
+        assertEquals("standard", tariff.planName(tariff.planOf(1)));
+        assertEquals("tou", tariff.planName(tariff.planOf(7)));
+        assertEquals("standard", tariff.planName(tariff.planOf("8")));
+        assertEquals("standard", tariff.planName(tariff.planOf("not a number")));
+
+        long[] priced = new long[4];
+        tariff.price(tariff.planOf(1), day(2024, 8, 1), 1, 2, 3, 4, priced);
+        assertArrayEquals(new long[]{5, 5, 5 * 1000, 5 * 500}, priced);
+
+        int tou = tariff.planOf(7);
+        tariff.price(tou, day(2024, 6, 30), 1, 2, 3, 4, priced);
+        assertArrayEquals(new long[]{5, 5, 2 * 1800 + 3 * 1200, 5 * 500}, priced);
+        tariff.price(tou, day(2024, 7, 1), 1, 2, 3, 4, priced);
+        assertArrayEquals(new long[]{5, 5, 2 * 2001 + 3 * 1300, 5 * 600}, priced);
+        // The earliest prices also cover earlier readings
+        tariff.price(tou, day(2020, 1, 1), 0, 1, 0, 0, priced);
+        assertEquals(1800, priced[2 + TariffEngine.DAY]);
+
+        assertEquals(2001, tariff.rate(tou, TariffEngine.DAY, day(2025, 1, 1)));
+        assertEquals(600, tariff.rate(tou, TariffEngine.NIGHT, day(2025, 1, 1)));
+    }
+
+    @Test
+    void testFormatsRatesExactly() {
+        assertEquals("0.10", TariffEngine.formatRate(12_345 * 1000L, 12_345, 0));
+        assertEquals("0.2001", TariffEngine.formatRate(2001, 1, 0));
+        assertEquals("0.144", TariffEngine.formatRate(2 * 1800 + 3 * 1200 + 1, 5, 0));
+        assertEquals("0.05", TariffEngine.formatRate(0, 0, 500));
+        assertEquals(1573.95, TariffEngine.toLev(12_345 * 1000L + 6_789 * 500L));
+    }
+
+    @Test
+    void testRejectsInvalidTariffs() {
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.compile("plan p day:day:1+2 night:night:3\nprice p 2023-01-01 day=1 night=1", null));
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.compile("plan p day:day:1+2+3+4\nprice p 2023-01-01 day=0.00001", null));
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.compile("plan p day:day:1+2+3+4", null));
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.compile("plan p day:dusk:1+2+3+4\nprice p 2023-01-01 day=1", null));
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.compile(TARIFF, "7,unknown"));
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.compile(TARIFF, "x7,tou"));
+    }
+}
@@ -0,0 +1,86 @@
+import org.example.invoiceapp.billing.TxtBillTemplate;
+import org.example.invoiceapp.data.CustomerUsage;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TxtBillTemplateTest {
+
+    private static final String NL = System.lineSeparator();
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    // The layout as it was written with String.format before templates
+    private static String formatted(String customerId, String customerName, CustomerUsage usage, String dayPrice, String nightPrice, double daytimeCost,
+                                    double nighttimeCost, double totalCost, LocalDate periodStart, LocalDate periodEnd) {
+        StringBuilder out = new StringBuilder();
+        out.append("=========================================").append(NL);
+        out.append("              ФАКТУРА                   ").append(NL);
+        out.append("=========================================").append(NL);
+        out.append(String.format("%-20s: %s", "Име на клиент", customerName)).append(NL);
+        out.append(String.format("%-20s: %s", "Клиентски номер", customerId)).append(NL);
+        if (periodStart != null && periodEnd != null) {
+            out.append(String.format("%-20s: %s - %s", "Период", periodStart.format(DATE_FORMAT), periodEnd.format(DATE_FORMAT))).append(NL);
+        }
+        out.append("=========================================").append(NL);
+        out.append(String.format("%-20s: %d kWh @ %s лв./kWh = %.2f лв.", "Дневна консумация", usage.getDaytimeUsage(), dayPrice, daytimeCost)).append(NL);
+        out.append(String.format("%-20s: %d kWh @ %s лв./kWh = %.2f лв.", "Нощна консумация", usage.getNighttimeUsage(), nightPrice, nighttimeCost)).append(NL);
+        out.append("=========================================").append(NL);
+        out.append(String.format("%-20s: %d kWh", "Общо потребление", (usage.getDaytimeUsage() + usage.getNighttimeUsage()))).append(NL);
+        out.append(String.format("%-20s: %.2f лв.", "Обща сума", totalCost)).append(NL);
+        out.append("=========================================").append(NL);
+        return out.toString();
+    }
+
+    private static String rendered(TxtBillTemplate template, String customerId, String customerName, CustomerUsage usage, String dayPrice,
+                                   String nightPrice, double daytimeCost, double nighttimeCost, double totalCost, LocalDate periodStart, LocalDate periodEnd) {
+        StringBuilder out = new StringBuilder();
+        template.render(out, customerId, customerName, usage, dayPrice, nightPrice, daytimeCost, nighttimeCost, totalCost, periodStart, periodEnd);
+        return out.toString();
+    }
+
+    @Test
+    void testDefaultTemplateMatchesFormattedLayout() {
+        SplittableRandom random = new SplittableRandom(42);
+        double[] prices = {0.10, 0.05, 0.15, 0.1234, 0.005};
+        String[] rates = {"0.10", "0.05", "0.15", "0.1234", "0.005"};
+        for (int i = 0; i < 20_000; i++) {
+            int day = random.nextInt(-1000, 5_000_000);
+            int night = random.nextInt(-1000, 5_000_000);
+            CustomerUsage usage = new CustomerUsage(day, night);
+            double dayCost = day * prices[random.nextInt(prices.length)];
+            double nightCost = i % 7 == 0 ? random.nextDouble(-1, 1) / 1000 : night * prices[random.nextInt(prices.length)];
+            LocalDate start = i % 5 == 0 ? null : LocalDate.ofEpochDay(random.nextInt(0, 40_000));
+            LocalDate end = start == null ? null : start.plusDays(random.nextInt(0, 31));
+            String dayRate = rates[random.nextInt(rates.length)];
+            String nightRate = rates[random.nextInt(rates.length)];
+            String expected = formatted(Integer.toString(i), "Customer " + i, usage, dayRate, nightRate, dayCost, nightCost, dayCost + nightCost, start, end);
+            assertEquals(expected, rendered(TxtBillTemplate.DEFAULT, Integer.toString(i), "Customer " + i, usage, dayRate, nightRate, dayCost, nightCost,
+                    dayCost + nightCost, start, end));
+        }
+    }
+
+    @Test
+    void testRoundsHalfUpLikeFormat() {
+        CustomerUsage usage = new CustomerUsage(0, 0);
+        for (double cost : new double[]{0.125, 0.005, 1.005, 2.675, -0.125, -0.001, -0.0, 0.0, 1e15 + 0.125}) {
+            String expected = formatted("1", "A", usage, "0.15", "0.05", cost, cost, cost, null, null);
+            assertEquals(expected, rendered(TxtBillTemplate.DEFAULT, "1", "A", usage, "0.15", "0.05", cost, cost, cost, null, null), "cost " + cost);
+        }
+    }
+
+    @Test
+    void testCompilesCustomTemplates() {
+        TxtBillTemplate template = TxtBillTemplate.compile("Bill for ${customerName} (${customerId})\r\n"
+                + "Period ${periodStart}..${periodEnd}\n"
+                + "Total: ${totalUsage} kWh, ${totalCost}\n");
+        String bill = rendered(template, "7", "Ana", new CustomerUsage(10, 5), "0.10", "0.05", 1.0, 0.25, 1.25, null, null);
+        assertEquals("Bill for Ana (7)" + NL + String.format("Total: %d kWh, %.2f", 15, 1.25) + NL, bill);
+
+        assertThrows(IllegalArgumentException.class, () -> TxtBillTemplate.compile("${unknown}"));
+        assertThrows(IllegalArgumentException.class, () -> TxtBillTemplate.compile("${customerName"));
+    }
+}
@@ -0,0 +1,285 @@
+import org.example.invoiceapp.billing.MonthlyUsageCalculator;
+import org.example.invoiceapp.billing.TariffEngine;
+import org.example.invoiceapp.billing.UsageStateStore;
+import org.example.invoiceapp.billing.UsageStore;
+import org.example.invoiceapp.util.DateCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsageStateStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static UsageStore usage(long customerId, long day, long night) {
+        UsageStore store = new UsageStore(16, false);
+        store.add(customerId, day, night);
+        return store;
+    }
+
+    private static UsageStore usage(long customerId, LocalDate date, long day, long night) {
+        UsageStore store = new UsageStore(16, false);
+        store.add(customerId, date.toEpochDay(), day, night);
+        return store;
+    }
+
+    private static void append(Path file, String text) throws IOException {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    void testResumesAfterAppendedReadingsAcrossReloads() throws IOException {
+        Path input = directory.resolve("input.txt");
+        Path stateFile = directory.resolve("usage.state");
+        append(input, "1,01.01.2023,1,2,3,4,A,,\n");
+
+        UsageStateStore state = UsageStateStore.load(stateFile);
+        UsageStateStore.Plan plan = state.plan(input);
+        assertTrue(plan.isFullRecompute());
+        assertEquals(0, plan.getFrom());
+        state.apply(plan, usage(1, 10, 5));
+        state.save();
+
+        append(input, "1,02.01.2023,1,2,3,4,A,,\n");
+        UsageStateStore reloaded = UsageStateStore.load(stateFile);
+        plan = reloaded.plan(input);
+        assertFalse(plan.isFullRecompute());
+        assertEquals(25, plan.getFrom());
+        assertEquals(50, plan.getTo());
+        reloaded.apply(plan, usage(1, 7, 3));
+
+        UsageStore totals = reloaded.getTotals();
+        assertEquals(17, totals.daytimeUsage(totals.indexOf(1, DateCodec.NO_MONTH)));
+        assertEquals(8, totals.nighttimeUsage(totals.indexOf(1, DateCodec.NO_MONTH)));
+        assertEquals(2, totals.readingCount(totals.indexOf(1, DateCodec.NO_MONTH)));
+    }
+
+    @Test
+    void testChangedDropReplacesItsTotals() throws IOException {
+        Path input = directory.resolve("input.txt");
+        LocalDate january = LocalDate.of(2023, 1, 1);
+        int month = DateCodec.monthIndex(2023, 1);
+        append(input, "1,01.01.2023,1,2,3,4,A,,\n");
+        UsageStateStore state = UsageStateStore.load(directory.resolve("usage.state"));
+        UsageStateStore.Plan plan = state.plan(input);
+        state.apply(plan, usage(1, january, 10, 5));
+
+        Files.writeString(input, "1,01.01.2023,9,2,3,4,A,,\n1,02.01.2023,1,2,3,4,A,,\n", StandardCharsets.UTF_8);
+        plan = state.plan(input);
+        assertTrue(plan.isFullRecompute());
+        assertEquals(0, plan.getFrom());
+        state.apply(plan, usage(1, january, 4, 4));
+        assertEquals(1, state.getDropCount());
+        assertEquals(4, state.getTotals().daytimeUsage(state.getTotals().indexOf(1, month)));
+    }
+
+    @Test
+    void testSeparateDropsAddUpToTheMonth() throws IOException {
+        Path stateFile = directory.resolve("usage.state");
+        Path input = directory.resolve("input.txt");
+        int month = DateCodec.monthIndex(2023, 1);
+
+        // Each day's readings are delivered in a new file with the same name
+        Files.writeString(input, "1,01.01.2023,1,2,3,4,A,,\n");
+        UsageStateStore state = UsageStateStore.load(stateFile);
+        UsageStateStore.Plan plan = state.plan(input);
+        state.apply(plan, usage(1, LocalDate.of(2023, 1, 1), 10, 5));
+        state.save();
+
+        Files.writeString(input, "1,02.01.2023,5,6,7,8,A,,\n");
+        state = UsageStateStore.load(stateFile);
+        plan = state.plan(input);
+        assertTrue(plan.isFullRecompute());
+        state.apply(plan, usage(1, LocalDate.of(2023, 1, 2), 7, 3));
+        state.save();
+
+        UsageStore totals = UsageStateStore.load(stateFile).getTotals();
+        int index = totals.indexOf(1, month);
+        assertEquals(17, totals.daytimeUsage(index));
+        assertEquals(8, totals.nighttimeUsage(index));
+        assertEquals(2, totals.readingCount(index));
+        assertEquals((int) LocalDate.of(2023, 1, 1).toEpochDay(), totals.firstReadingDay(index));
+        assertEquals((int) LocalDate.of(2023, 1, 2).toEpochDay(), totals.lastReadingDay(index));
+
+        // The same drop delivered again unchanged adds nothing
+        state = UsageStateStore.load(stateFile);
+        plan = state.plan(input);
+        assertFalse(plan.isFullRecompute());
+        assertEquals(plan.getTo(), plan.getFrom());
+        state.apply(plan, new UsageStore());
+        assertEquals(17, state.getTotals().daytimeUsage(state.getTotals().indexOf(1, month)));
+        assertEquals(2, state.getDropCount());
+    }
+
+    @Test
+    void testForgetsDropsBeforeThePreviousMonth() throws IOException {
+        Path input = directory.resolve("input.txt");
+        UsageStateStore state = UsageStateStore.load(directory.resolve("usage.state"));
+        String[] dates = {"15.01.2023", "15.02.2023", "15.03.2023"};
+        for (String date : dates) {
+            Files.writeString(input, "1," + date + ",1,2,3,4,A,,\n");
+            LocalDate day = LocalDate.of(2023, Integer.parseInt(date.substring(3, 5)), 15);
+            state.apply(state.plan(input), usage(1, day, 10, 5));
+        }
+        assertEquals(2, state.getDropCount());
+        assertEquals(-1, state.getTotals().indexOf(1, DateCodec.monthIndex(2023, 1)));
+        assertTrue(state.getTotals().indexOf(1, DateCodec.monthIndex(2023, 3)) >= 0);
+    }
+
+    @Test
+    void testUnterminatedLastLineOnlyResumesAtALineBreak() throws IOException {
+        Path input = directory.resolve("input.txt");
+        append(input, "1,01.01.2023,1,2,3,4,A,,");
+        UsageStateStore state = UsageStateStore.load(directory.resolve("usage.state"));
+        state.apply(state.plan(input), usage(1, 10, 5));
+
+        append(input, "\r\n2,01.01.2023,1,2,3,4,A,,\n");
+        UsageStateStore.Plan plan = state.plan(input);
+        assertFalse(plan.isFullRecompute());
+        assertEquals(26, plan.getFrom());
+
+        // A reading that continues the last line changes a record that was already aggregated
+        Files.writeString(input, "1,01.01.2023,1,2,3,4,A,,");
+        state.apply(state.plan(input), usage(1, 10, 5));
+        append(input, "X\n");
+        assertTrue(state.plan(input).isFullRecompute());
+    }
+
+    @Test
+    void testCorruptStateFileMeansEmptyState() throws IOException {
+        Path stateFile = directory.resolve("usage.state");
+        Files.writeString(stateFile, "not a state file");
+        Path input = directory.resolve("input.txt");
+        append(input, "1,01.01.2023,1,2,3,4,A,,\n");
+
+        UsageStateStore state = UsageStateStore.load(stateFile);
+        assertEquals(0, state.getTotals().size());
+        assertTrue(state.plan(input).isFullRecompute());
+    }
+
+    // Aggregates readings the way the incremental pipeline does, keeping the daily usage
+    private static UsageStore readings(String... lines) {
+        MonthlyUsageCalculator.UsageAccumulator accumulator = new MonthlyUsageCalculator.UsageAccumulator(true);
+        for (String line : lines) {
+            accumulator.accept(line);
+        }
+        return accumulator.getStore();
+    }
+
+    private static TariffEngine tariff(String dayPrice, String nightPrice) {
+        return TariffEngine.compile("plan standard day:day:2+3 night:night:1+4\n"
+                + "price standard 2023-01-01 day=" + dayPrice + " night=" + nightPrice + "\n", null);
+    }
+
+    @Test
+    void testTariffChangePricesTheStoredUsageAgain() throws IOException {
+        Path stateFile = directory.resolve("usage.state");
+        Path input = directory.resolve("input.txt");
+        int month = DateCodec.monthIndex(2023, 1);
+        TariffEngine before = tariff("0.10", "0.05");
+        TariffEngine after = tariff("0.20", "0.07");
+
+        Files.writeString(input, "1,01.01.2023,1,2,3,4,A,,\n1,02.01.2023,1,2,3,4,A,,\n");
+        UsageStateStore state = UsageStateStore.load(stateFile, before);
+        state.apply(state.plan(input), readings("1,01.01.2023,1,2,3,4,A,,", "1,02.01.2023,1,2,3,4,A,,"));
+        state.save();
+        Files.writeString(input, "1,03.01.2023,5,6,7,8,A,,\n");
+        state = UsageStateStore.load(stateFile, before);
+        state.apply(state.plan(input), readings("1,03.01.2023,5,6,7,8,A,,"));
+        state.save();
+
+        // Both drops are kept and priced with the new tariff; the next drop is added to them
+        state = UsageStateStore.load(stateFile, after);
+        assertFalse(state.needsFullRecompute());
+        assertEquals(2, state.getDropCount());
+        UsageStore totals = state.getTotals();
+        int index = totals.indexOf(1, month);
+        assertEquals(23, totals.daytimeUsage(index));
+        assertEquals(23, totals.nighttimeUsage(index));
+        assertEquals(23 * 2000, totals.daytimeCost(index));
+        assertEquals(23 * 700, totals.nighttimeCost(index));
+        assertEquals(3, totals.readingCount(index));
+        assertEquals((int) LocalDate.of(2023, 1, 1).toEpochDay(), totals.firstReadingDay(index));
+        assertEquals((int) LocalDate.of(2023, 1, 3).toEpochDay(), totals.lastReadingDay(index));
+
+        Files.writeString(input, "1,04.01.2023,1,1,1,1,A,,\n");
+        state.apply(state.plan(input), readings("1,04.01.2023,1,1,1,1,A,,"));
+        state.save();
+        totals = UsageStateStore.load(stateFile, after).getTotals();
+        index = totals.indexOf(1, month);
+        assertEquals(25, totals.daytimeUsage(index));
+        assertEquals(4, totals.readingCount(index));
+    }
+
+    @Test
+    void testOnlyChangedBucketsAreRenderedAgain() throws IOException {
+        Path stateFile = directory.resolve("usage.state");
+        Path first = directory.resolve("input-1.txt");
+        Path second = directory.resolve("input-2.txt");
+        int month = DateCodec.monthIndex(2023, 1);
+        TariffEngine tariff = tariff("0.10", "0.05");
+
+        Files.writeString(first, "1,01.01.2023,1,2,3,4,A,,\n2,01.01.2023,1,2,3,4,A,,\n");
+        UsageStateStore state = UsageStateStore.load(stateFile, tariff);
+        state.apply(state.plan(first), readings("1,01.01.2023,1,2,3,4,A,,", "2,01.01.2023,1,2,3,4,A,,"));
+        assertEquals(2, state.getChangedTotals().size());
+        state.markRendered(List.of("2"));
+        state.save();
+
+        // The failed bill stays changed across runs; the second drop changes only customer 1
+        Files.writeString(second, "1,02.01.2023,5,6,7,8,A,,\n");
+        state = UsageStateStore.load(stateFile, tariff);
+        UsageStore changed = state.getChangedTotals();
+        assertEquals(1, changed.size());
+        assertEquals(2, changed.customerId(0));
+        state.apply(state.plan(second), readings("1,02.01.2023,5,6,7,8,A,,"));
+        changed = state.getChangedTotals();
+        assertEquals(2, changed.size());
+        int index = changed.indexOf(1, month);
+        assertEquals(18, changed.daytimeUsage(index));
+        assertEquals(2, changed.readingCount(index));
+        state.markRendered(List.of());
+        state.save();
+
+        // A drop delivered again unchanged changes no bill
+        state = UsageStateStore.load(stateFile, tariff);
+        state.apply(state.plan(second), new UsageStore());
+        assertEquals(0, state.getChangedTotals().size());
+        state.save();
+
+        // A tariff change changes every bill
+        state = UsageStateStore.load(stateFile, tariff("0.20", "0.07"));
+        changed = state.getChangedTotals();
+        assertEquals(2, changed.size());
+        assertEquals(18 * 2000, changed.daytimeCost(changed.indexOf(1, month)));
+    }
+
+    @Test
+    void testTariffChangeWithoutDailyUsageStopsTheRun() throws IOException {
+        Path stateFile = directory.resolve("usage.state");
+        Path input = directory.resolve("input.txt");
+        Files.writeString(input, "1,01.01.2023,1,2,3,4,A,,\n");
+        UsageStateStore state = UsageStateStore.load(stateFile, tariff("0.10", "0.05"));
+        state.apply(state.plan(input), usage(1, LocalDate.of(2023, 1, 1), 5, 5));
+        state.save();
+
+        state = UsageStateStore.load(stateFile, tariff("0.20", "0.07"));
+        assertTrue(state.needsFullRecompute());
+        assertEquals(1, state.getDropCount());
+        assertEquals(5, state.getTotals().daytimeUsage(state.getTotals().indexOf(1, DateCodec.monthIndex(2023, 1))));
+        assertThrows(IOException.class, () -> UsageStateStore.load(stateFile, tariff("0.20", "0.07")).plan(input));
+
+        // The same tariff needs no repricing
+        assertFalse(UsageStateStore.load(stateFile, tariff("0.10", "0.05")).needsFullRecompute());
+    }
+}
@@ -0,0 +1,103 @@
+import org.example.invoiceapp.billing.UsageStore;
+import org.example.invoiceapp.data.CustomerUsage;
+import org.example.invoiceapp.util.DateCodec;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsageStoreTest {
+
+    @Test
+    void testAddAccumulatesPerCustomer() {
+        UsageStore store = new UsageStore(16, false);
+        store.add(123, 10, 5);
+        store.add(69, 1, 2);
+        store.add(123, 20, 15);
+
+        assertEquals(2, store.size());
+        int index = store.indexOf(123, DateCodec.NO_MONTH);
+        assertEquals(30, store.daytimeUsage(index));
+        assertEquals(20, store.nighttimeUsage(index));
+        assertEquals(-1, store.indexOf(999, DateCodec.NO_MONTH));
+    }
+
+    @Test
+    void testGrowsBeyondInitialCapacityOffHeap() {
+        UsageStore store = new UsageStore(16, true);
+        for (int round = 0; round < 3; round++) {
+            for (long id = 0; id < 10_000; id++) {
+                store.add(id, id, 1);
+            }
+        }
+
+        assertEquals(10_000, store.size());
+        for (long id = 0; id < 10_000; id++) {
+            int index = store.indexOf(id, DateCodec.NO_MONTH);
+            assertEquals(id, store.customerId(index));
+            assertEquals(3 * id, store.daytimeUsage(index));
+            assertEquals(3, store.nighttimeUsage(index));
+        }
+    }
+
+    @Test
+    void testIndexesIssueDateAndReadingRange() {
+        UsageStore store = new UsageStore(16, false);
+        store.recordIssueDay(123, 100);
+        store.recordIssueDay(123, 104);
+        store.add(123, 104, 1, 1);
+        store.add(123, 102, 1, 1);
+        store.recordIssueDay(5, 101);
+
+        int index = store.indexOf(123, DateCodec.monthIndex(1970, 4));
+        assertEquals(100, store.issueDay(index));
+        assertEquals(102, store.firstReadingDay(index));
+        assertEquals(104, store.lastReadingDay(index));
+        assertEquals(2, store.readingCount(index));
+        assertEquals(0, store.readingCount(store.indexOf(5, DateCodec.monthIndex(1970, 4))));
+        assertFalse(store.toMap().containsKey("5"));
+    }
+
+    @Test
+    void testBucketsUsagePerCustomerAndMonth() {
+        UsageStore store = new UsageStore(16, false);
+        long january = DateCodec.toEpochDay(2019, 1, 31);
+        long february = DateCodec.toEpochDay(2019, 2, 1);
+        store.recordIssueDay(123, january);
+        store.add(123, january, 10, 5, 1000, 250);
+        store.recordIssueDay(123, february);
+        store.add(123, february, 1, 2, 100, 100);
+        store.add(123, january, 10, 5, 1000, 250);
+
+        assertEquals(2, store.size());
+        int jan = store.indexOf(123, DateCodec.monthIndex(2019, 1));
+        int feb = store.indexOf(123, DateCodec.monthIndex(2019, 2));
+        assertEquals(DateCodec.monthIndex(2019, 1), store.month(jan));
+        assertEquals(20, store.daytimeUsage(jan));
+        assertEquals(2, store.readingCount(jan));
+        assertEquals(2000, store.daytimeCost(jan));
+        assertEquals(february, store.issueDay(feb));
+        assertEquals(february, store.firstReadingDay(feb));
+        assertEquals(2, store.nighttimeUsage(feb));
+
+        CustomerUsage total = store.toMap().get("123");
+        assertEquals(21, total.getDaytimeUsage());
+        assertEquals(2100, total.getDaytimeCost());
+    }
+
+    @Test
+    void testMergeKeepsInsertionOrder() {
+        UsageStore first = new UsageStore(16, false);
+        first.add(5, 1, 1);
+        UsageStore second = new UsageStore(16, false);
+        second.add(7, 2, 2);
+        second.add(5, 3, 3);
+
+        first.mergeFrom(second);
+
+        assertEquals(5, first.customerId(0));
+        assertEquals(7, first.customerId(1));
+        CustomerUsage usage = first.toCustomerUsage(0);
+        assertEquals(4, usage.getDaytimeUsage());
+        assertEquals(4, usage.getNighttimeUsage());
+    }
+}
@@ -0,0 +1,51 @@
+import org.example.invoiceapp.data.ConsumptionRecord;
+import org.example.invoiceapp.data.ValidationRules;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidationRulesTest {
+
+    @Test
+    void testFirstFailingRuleClassifiesTheRecord() {
+        ValidationRules rules = ValidationRules.compile("flagged(75):4075, quality(AE):4001, usage(1):4002, maxUsage(1000):4003");
+        assertEquals(4, rules.size());
+        assertEquals("quality", rules.name(1));
+
+        assertEquals(-1, rules.firstFailure(ConsumptionRecord.of("1,01.08.2023,1,2,3,4,A,,")));
+        assertEquals(-1, rules.firstFailure(ConsumptionRecord.of("1,01.08.2023,1,2,3,4,E,76,")));
+        assertEquals(0, rules.firstFailure(ConsumptionRecord.of("1,01.08.2023,0,0,0,0,C,75,meter tamper alarm")));
+        assertEquals(1, rules.firstFailure(ConsumptionRecord.of("1,01.08.2023,0,0,0,0,C,,")));
+        assertEquals(2, rules.firstFailure(ConsumptionRecord.of("1,01.08.2023,0,2,3,4,A")));
+        assertEquals(3, rules.firstFailure(ConsumptionRecord.of("1,01.08.2023,1,2,3,4000,A")));
+
+        long before = rules.rejectedCount(2);
+        rules.firstFailure(ConsumptionRecord.of("2,01.08.2023,1,-2,3,4,E"));
+        assertEquals(before + 1, rules.rejectedCount(2));
+        assertEquals(4002, rules.errorCode(2));
+    }
+
+    @Test
+    void testDescriptionIncludesTheCodeCarriedByTheLine() {
+        ValidationRules rules = ValidationRules.compile("usage:1002");
+        ConsumptionRecord tamper = ConsumptionRecord.of("123,01.01.2019,0,0,0,0,E,75,meter tamper alarm");
+        assertEquals("Usage below 1 (75 meter tamper alarm)", rules.errorDescription(rules.firstFailure(tamper), tamper));
+        ConsumptionRecord coded = ConsumptionRecord.of("123,01.01.2019,0,0,0,0,E,76,");
+        assertEquals("Usage below 1 (76)", rules.errorDescription(0, coded));
+        ConsumptionRecord plain = ConsumptionRecord.of("123,01.01.2019,0,0,0,0,A,,");
+        assertEquals("Usage below 1", rules.errorDescription(0, plain));
+        assertTrue(ValidationRules.compile("flagged:9").accepts(plain));
+        assertFalse(ValidationRules.compile("flagged:9").accepts(coded));
+    }
+
+    @Test
+    void testRejectsInvalidSpecifications() {
+        assertThrows(IllegalArgumentException.class, () -> ValidationRules.compile(""));
+        assertThrows(IllegalArgumentException.class, () -> ValidationRules.compile("quality(AE)"));
+        assertThrows(IllegalArgumentException.class, () -> ValidationRules.compile("colour:1"));
+        assertThrows(IllegalArgumentException.class, () -> ValidationRules.compile("usage(x):1"));
+        assertThrows(IllegalArgumentException.class, () -> ValidationRules.compile("maxUsage:1"));
+        assertThrows(IllegalArgumentException.class, () -> ValidationRules.compile("usage(1:1"));
+        assertThrows(IllegalArgumentException.class, () -> ValidationRules.compile("usage:-1"));
+    }
+}